@@ -0,0 +1,14 @@
+package co.bitsquared.vanitygenerator.core.exceptions;
+
+/**
+ * UnreachableQueryException is raised when a query can never match an address on the version byte it is searched on,
+ * for example a begins query whose first character can never follow the leading character, or a query longer than an
+ * address. Searching for such a query would keep every searching thread busy forever.
+ */
+public class UnreachableQueryException extends RuntimeException {
+
+    public UnreachableQueryException(String pattern, int version) {
+        super(pattern + " can never match an address with version byte " + version + ".");
+    }
+
+}
@@ -0,0 +1,14 @@
+package co.bitsquared.vanitygenerator.core.exceptions;
+
+/**
+ * UnsupportedPatternException is raised when a regular expression uses a construct that RegexParser does not
+ * understand, such as lookarounds or back references. The pattern is still valid for java.util.regex, which is used to
+ * match it instead.
+ */
+public class UnsupportedPatternException extends RuntimeException {
+
+    public UnsupportedPatternException(String pattern, int index, String reason) {
+        super("Unsupported pattern " + pattern + " at index " + index + ": " + reason);
+    }
+
+}
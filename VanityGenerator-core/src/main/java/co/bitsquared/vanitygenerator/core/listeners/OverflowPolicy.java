@@ -0,0 +1,29 @@
+package co.bitsquared.vanitygenerator.core.listeners;
+
+/**
+ * OverflowPolicy decides what a {@link SearchEventDispatcher} does with a progress event
+ * ({@link BaseSearchListener#updateBurstGenerated(long, long, long)}) when its queue is full or listeners are falling
+ * behind. Found addresses and completed tasks are never dropped, regardless of the policy.
+ *
+ * @since v1.4.0
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The searching thread waits until there is room in the queue. Every progress event is delivered, but slow listeners
+     * will slow down searching.
+     */
+    BLOCK,
+
+    /**
+     * Progress events are discarded while the queue is full. Searching is never slowed down by listeners.
+     */
+    DROP,
+
+    /**
+     * Only the latest progress event is kept while listeners have not caught up yet. Since progress events carry totals,
+     * listeners only miss intermediate values. This is the default policy.
+     */
+    COALESCE;
+
+}
@@ -0,0 +1,426 @@
+package co.bitsquared.vanitygenerator.core.listeners;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.query.RegexQuery;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.bitcoinj.core.ECKey;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * SearchEventDispatcher delivers search events to {@link BaseSearchListener}s off the searching threads. Events are
+ * queued in a bounded ring buffer and delivered by a small, fixed amount of consumer threads, so a searching thread
+ * never waits on a listener and no thread is created per event.
+ * <p>What happens to a progress event when listeners fall behind is decided by the {@link OverflowPolicy}. Found
+ * addresses and completed tasks are never dropped: when the queue is full the searching thread waits for room, and once
+ * the dispatcher has been shut down they are delivered on the calling thread.
+ * <p>Consumer threads are started when events arrive and stop after being idle for a while, so an idle dispatcher does
+ * not keep the JVM alive while pending events are still guaranteed to be delivered before it exits.
+ * <p>Each event is delivered to the listeners that were registered when the event was queued. Events are delivered in
+ * order when there is one consumer thread, which is the default.
+ *
+ * @since v1.4.0
+ */
+public class SearchEventDispatcher {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int DEFAULT_CONSUMERS = 1;
+    public static final OverflowPolicy DEFAULT_POLICY = OverflowPolicy.COALESCE;
+
+    private static final Logger LOGGER = LogManager.getLogger(SearchEventDispatcher.class);
+    private static final AtomicInteger DISPATCHER_IDS = new AtomicInteger();
+    private static final BaseSearchListener[] NO_LISTENERS = new BaseSearchListener[0];
+    private static final long KEEP_ALIVE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int ADDRESS_FOUND = 0;
+    private static final int BURST_GENERATED = 1;
+    private static final int TASK_COMPLETED = 2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition terminated = lock.newCondition();
+    private final Event[] ring;
+    private final int maxConsumers;
+    private final String threadName;
+    private final Object listenerLock = new Object();
+    private volatile BaseSearchListener[] listeners = NO_LISTENERS;
+    private volatile OverflowPolicy policy;
+    private int head;
+    private int count;
+    private Event pendingProgress;
+    private int consumers;
+    private int threadIds;
+    private boolean shutdown;
+
+    /**
+     * Creates a dispatcher with a capacity of 1024 events, one consumer thread and the COALESCE policy.
+     */
+    public SearchEventDispatcher() {
+        this(DEFAULT_CAPACITY, DEFAULT_CONSUMERS, DEFAULT_POLICY);
+    }
+
+    /**
+     * @param capacity the maximum amount of queued events.
+     * @param consumers the amount of threads delivering events. Events are only delivered in order with one consumer.
+     * @param policy the policy used for progress events when listeners fall behind.
+     * @throws IllegalArgumentException if capacity or consumers is not positive.
+     * @throws NullPointerException if policy is null.
+     */
+    public SearchEventDispatcher(int capacity, int consumers, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        if (consumers <= 0) {
+            throw new IllegalArgumentException("Consumers must be positive: " + consumers);
+        }
+        Utils.checkNotNull(policy, "OverflowPolicy cannot be null.");
+        ring = new Event[capacity];
+        maxConsumers = consumers;
+        this.policy = policy;
+        threadName = "VanityGenerator-dispatcher-" + DISPATCHER_IDS.incrementAndGet() + "-";
+    }
+
+    /**
+     * Registers a listener to receive the events queued from now on. Registering the same listener twice has no effect.
+     */
+    public void registerListener(BaseSearchListener listener) {
+        if (listener == null) {
+            return;
+        }
+        synchronized (listenerLock) {
+            for (BaseSearchListener registered: listeners) {
+                if (registered == listener) {
+                    return;
+                }
+            }
+            BaseSearchListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+            updated[updated.length - 1] = listener;
+            listeners = updated;
+        }
+    }
+
+    /**
+     * Unregisters a listener. Events that were queued before this call may still be delivered to it.
+     */
+    public void unregisterListener(BaseSearchListener listener) {
+        synchronized (listenerLock) {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == listener) {
+                    BaseSearchListener[] updated = new BaseSearchListener[listeners.length - 1];
+                    System.arraycopy(listeners, 0, updated, 0, i);
+                    System.arraycopy(listeners, i + 1, updated, i, updated.length - i);
+                    listeners = updated;
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Unregisters every listener.
+     */
+    public void clearListeners() {
+        synchronized (listenerLock) {
+            listeners = NO_LISTENERS;
+        }
+    }
+
+    public boolean hasListeners() {
+        return listeners.length > 0;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return policy;
+    }
+
+    /**
+     * @throws NullPointerException if policy is null.
+     */
+    public void setOverflowPolicy(OverflowPolicy policy) {
+        Utils.checkNotNull(policy, "OverflowPolicy cannot be null.");
+        this.policy = policy;
+    }
+
+    /**
+     * Queues {@link BaseSearchListener#onAddressFound(ECKey, GlobalNetParams, long, long, RegexQuery)}. This event is
+     * never dropped.
+     */
+    public void addressFound(ECKey key, GlobalNetParams netParams, long amountGenerated, long speedPerSecond, RegexQuery query) {
+        Event event = newEvent(ADDRESS_FOUND);
+        if (event != null) {
+            event.key = key;
+            event.netParams = netParams;
+            event.generated = amountGenerated;
+            event.speed = speedPerSecond;
+            event.query = query;
+            enqueueReliably(event);
+        }
+    }
+
+    /**
+     * Queues {@link BaseSearchListener#updateBurstGenerated(long, long, long)} according to the overflow policy.
+     */
+    public void burstGenerated(long totalGenerated, long burstGenerated, long speedPerSecond) {
+        Event event = newEvent(BURST_GENERATED);
+        if (event != null) {
+            event.generated = totalGenerated;
+            event.burst = burstGenerated;
+            event.speed = speedPerSecond;
+            enqueueProgress(event);
+        }
+    }
+
+    /**
+     * Queues {@link BaseSearchListener#onTaskCompleted(long, long)}. This event is never dropped.
+     */
+    public void taskCompleted(long totalGenerated, long speedPerSecond) {
+        Event event = newEvent(TASK_COMPLETED);
+        if (event != null) {
+            event.generated = totalGenerated;
+            event.speed = speedPerSecond;
+            enqueueReliably(event);
+        }
+    }
+
+    /**
+     * Stops accepting progress events. Queued events are still delivered, after which the consumer threads exit. Found
+     * addresses and completed tasks reported after this call are delivered on the calling thread.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            shutdown = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+            if (consumers == 0) {
+                terminated.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for every queued event to be delivered after {@link #shutdown()}.
+     * @return true if every event was delivered, false if the timeout elapsed first.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (!shutdown || consumers > 0) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = terminated.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isShutdown() {
+        lock.lock();
+        try {
+            return shutdown;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Event newEvent(int type) {
+        BaseSearchListener[] current = listeners;
+        return current.length == 0 ? null : new Event(type, current);
+    }
+
+    private void enqueueReliably(Event event) {
+        lock.lock();
+        try {
+            while (count == ring.length && !shutdown) {
+                notFull.awaitUninterruptibly();
+            }
+            if (!shutdown) {
+                queuePendingProgress(event.type == TASK_COMPLETED);
+                push(event);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        deliver(event);
+    }
+
+    private void enqueueProgress(Event event) {
+        lock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            switch (policy) {
+                case COALESCE:
+                    if (pendingProgress == null) {
+                        startConsumerIfNeeded();
+                        notEmpty.signal();
+                    }
+                    pendingProgress = event;
+                    return;
+                case DROP:
+                    if (count < ring.length) {
+                        // A coalesced progress event is superseded by this one.
+                        pendingProgress = null;
+                        push(event);
+                    }
+                    return;
+                case BLOCK:
+                    while (count == ring.length && !shutdown) {
+                        notFull.await();
+                    }
+                    if (!shutdown) {
+                        pendingProgress = null;
+                        push(event);
+                    }
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves a coalesced progress event to the tail of the ring before another event is pushed after it, so that it is
+     * not delivered after events queued later. It is dropped instead when the task completed, since listeners must not
+     * hear of progress after completion, or when the ring has no room left for both events. Must hold lock.
+     */
+    private void queuePendingProgress(boolean drop) {
+        if (pendingProgress != null) {
+            if (!drop && count < ring.length - 1) {
+                push(pendingProgress);
+            }
+            pendingProgress = null;
+        }
+    }
+
+    // Must hold lock.
+    private void push(Event event) {
+        ring[(head + count) % ring.length] = event;
+        count++;
+        startConsumerIfNeeded();
+        notEmpty.signal();
+    }
+
+    // Must hold lock.
+    private void startConsumerIfNeeded() {
+        if (consumers < maxConsumers) {
+            consumers++;
+            Thread thread = new Thread(new Consumer(), threadName + (++threadIds));
+            // Events are usually pushed from daemon search threads; a consumer must not inherit that, or the JVM could
+            // exit with found addresses still queued.
+            thread.setDaemon(false);
+            thread.start();
+        }
+    }
+
+    /**
+     * Takes the next event, waiting for one until the consumer has been idle for too long.
+     * @return the next event, or null if the consumer should exit.
+     */
+    private Event take() {
+        lock.lock();
+        try {
+            long nanos = KEEP_ALIVE_NANOS;
+            while (count == 0 && pendingProgress == null) {
+                if (shutdown || nanos <= 0) {
+                    consumerExited();
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            Event event;
+            if (count > 0) {
+                event = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                count--;
+                notFull.signal();
+            } else {
+                event = pendingProgress;
+                pendingProgress = null;
+            }
+            return event;
+        } catch (InterruptedException e) {
+            consumerExited();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Must hold lock.
+    private void consumerExited() {
+        consumers--;
+        if (consumers == 0 && shutdown) {
+            terminated.signalAll();
+        }
+    }
+
+    private static void deliver(Event event) {
+        for (BaseSearchListener listener: event.listeners) {
+            try {
+                switch (event.type) {
+                    case ADDRESS_FOUND:
+                        listener.onAddressFound(event.key, event.netParams, event.generated, event.speed, event.query);
+                        break;
+                    case BURST_GENERATED:
+                        listener.updateBurstGenerated(event.generated, event.burst, event.speed);
+                        break;
+                    case TASK_COMPLETED:
+                        listener.onTaskCompleted(event.generated, event.speed);
+                        break;
+                }
+            } catch (RuntimeException e) {
+                LOGGER.error("BaseSearchListener " + listener + " threw while handling an event.", e);
+            }
+        }
+    }
+
+    private class Consumer implements Runnable {
+
+        @Override
+        public void run() {
+            Event event;
+            while ((event = take()) != null) {
+                deliver(event);
+            }
+        }
+
+    }
+
+    private static class Event {
+
+        private final int type;
+        private final BaseSearchListener[] listeners;
+        private ECKey key;
+        private GlobalNetParams netParams;
+        private RegexQuery query;
+        private long generated;
+        private long burst;
+        private long speed;
+
+        Event(int type, BaseSearchListener[] listeners) {
+            this.type = type;
+            this.listeners = listeners;
+        }
+
+    }
+
+}
@@ -8,6 +8,11 @@ import org.bitcoinj.utils.MonetaryFormat;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -19,13 +24,26 @@ import java.util.ArrayList;
  * different networks, so this does not contain items such as port configuration.
  * <p><strong>NOTE</strong>: This class is similar to org.bitcoinj.core.Context in bitcoinj 0.13+ but Context will not be used since this
  * class was under development before Context's debut, and it is not readily available for use.
+ * <p>The instances returned by get() are interned: there is one per Network and one per custom set of headers, and
+ * they are safe to share between threads.
  *
  * @see org.bitcoinj.core.ECKey
  * @see org.bitcoinj.core.Address
  */
 public class GlobalNetParams extends NetworkParameters {
 
-    private static GlobalNetParams instance = null;
+    private static final Map<Network, GlobalNetParams> BY_NETWORK;
+    private static final ConcurrentMap<Integer, GlobalNetParams> BY_HEADERS = new ConcurrentHashMap<Integer, GlobalNetParams>();
+
+    static {
+        Map<Network, GlobalNetParams> byNetwork = new EnumMap<Network, GlobalNetParams>(Network.class);
+        for (Network network: Network.values()) {
+            byNetwork.put(network, new GlobalNetParams(network));
+        }
+        BY_NETWORK = Collections.unmodifiableMap(byNetwork);
+    }
+
+    private static volatile GlobalNetParams instance = null;
     private Network network;
 
     public GlobalNetParams(Network network) {
@@ -61,33 +79,49 @@ public class GlobalNetParams extends NetworkParameters {
     }
 
     /**
-     * Creates a shared instance from a Network.
+     * Returns the shared instance of a Network. Every call with the same Network returns the same instance, no matter
+     * which other networks are requested in between or from which thread.
      */
     public static GlobalNetParams get(Network network) {
-        if (instance == null || instance.getNetwork() != network) {
-            instance = new GlobalNetParams(network);
-        }
-        return instance;
+        GlobalNetParams netParams = interned(network);
+        instance = netParams;
+        return netParams;
     }
 
     /**
-     * Creates a shared instance from a custom set of headers.
+     * Returns the shared instance of a custom set of headers. Every call with the same headers returns the same
+     * instance.
+     * @throws IllegalDecimalVersionException if a header is out of range.
      */
     public static GlobalNetParams get(int addressHeader, int privateKeyHeader, int p2shHeader) {
-        if (instance == null) {
-            instance = new GlobalNetParams(addressHeader, privateKeyHeader, p2shHeader);
-        } else if (instance.addressHeader != addressHeader || instance.dumpedPrivateKeyHeader != privateKeyHeader
-                || instance.p2shHeader != p2shHeader) {
-            instance = new GlobalNetParams(addressHeader, privateKeyHeader, p2shHeader);
+        checkDecimal(addressHeader);
+        checkDecimal(privateKeyHeader);
+        checkDecimal(p2shHeader);
+        Integer key = (((addressHeader << 8) | privateKeyHeader) << 8) | p2shHeader;
+        GlobalNetParams netParams = BY_HEADERS.get(key);
+        if (netParams == null) {
+            GlobalNetParams created = new GlobalNetParams(addressHeader, privateKeyHeader, p2shHeader);
+            netParams = BY_HEADERS.putIfAbsent(key, created);
+            if (netParams == null) {
+                netParams = created;
+            }
         }
-        return instance;
+        instance = netParams;
+        return netParams;
+    }
+
+    /**
+     * Returns the shared instance of a Network without making it the latest shared instance.
+     */
+    static GlobalNetParams interned(Network network) {
+        return BY_NETWORK.get(network);
     }
 
     /**
      * Gets the latest shared instance. Instance will be null if it was not instantiated via get().
      */
     @Nullable
-    public static synchronized GlobalNetParams getInstance() {
+    public static GlobalNetParams getInstance() {
         return instance;
     }
 
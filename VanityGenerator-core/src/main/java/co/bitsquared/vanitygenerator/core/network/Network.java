@@ -5,10 +5,15 @@ import co.bitsquared.vanitygenerator.core.tools.Utils;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Network is a collection of defined crypto currencies with their pre-configured address header, private key
  * headers, and an optional P2SH header.
+ * <p>Networks are looked up by their headers from tables that are built once when the enum is loaded. When two networks
+ * share headers, the one declared first is returned.
  */
 public enum Network {
 
@@ -20,8 +25,32 @@ public enum Network {
     @Deprecated
     MULTI(2, 0);
 
-    private int addressHeader;
-    private int privateKeyHeader;
+    private static final Network[] BY_ADDRESS_HEADER = new Network[256];
+    private static final Map<Integer, Network> BY_HEADER_PAIR;
+    private static final Map<Integer, Network> BY_HEADER_TRIPLE;
+
+    static {
+        Map<Integer, Network> byPair = new HashMap<Integer, Network>();
+        Map<Integer, Network> byTriple = new HashMap<Integer, Network>();
+        for (Network network: values()) {
+            if (BY_ADDRESS_HEADER[network.addressHeader] == null) {
+                BY_ADDRESS_HEADER[network.addressHeader] = network;
+            }
+            Integer pair = pairKey(network.addressHeader, network.privateKeyHeader);
+            if (!byPair.containsKey(pair)) {
+                byPair.put(pair, network);
+            }
+            Integer triple = tripleKey(network.addressHeader, network.privateKeyHeader, network.p2shHeader);
+            if (!byTriple.containsKey(triple)) {
+                byTriple.put(triple, network);
+            }
+        }
+        BY_HEADER_PAIR = Collections.unmodifiableMap(byPair);
+        BY_HEADER_TRIPLE = Collections.unmodifiableMap(byTriple);
+    }
+
+    private final int addressHeader;
+    private final int privateKeyHeader;
     private int p2shHeader = -1;
 
     Network(int addressHeader, int p2shHeader, int privateKeyHeader) {
@@ -67,14 +96,7 @@ public enum Network {
 
     @Nullable
     public static Network networkFromAddressHeader(int addressHeader) {
-        Network network = null;
-        for (Network nw: values()) {
-            if (nw.addressHeader == addressHeader) {
-                network = nw;
-                break;
-            }
-        }
-        return network;
+        return addressHeader >= 0 && addressHeader < BY_ADDRESS_HEADER.length ? BY_ADDRESS_HEADER[addressHeader] : null;
     }
 
     /**
@@ -82,30 +104,45 @@ public enum Network {
      */
     @Nullable
     public static Network deriveFrom(int addressHeader, int privateKeyHeader) {
-        Network network = null;
-        for (Network nw: values()) {
-            if (nw.addressHeader == addressHeader && nw.privateKeyHeader == privateKeyHeader) {
-                network = nw;
-                break;
-            }
+        if (!isHeader(addressHeader) || !isHeader(privateKeyHeader)) {
+            return null;
         }
-        return network;
+        return BY_HEADER_PAIR.get(pairKey(addressHeader, privateKeyHeader));
     }
 
+    /**
+     * Derives a Network from an addressHeader, a privateKeyHeader and a p2shHeader. Returns null if the triple does not
+     * exist.
+     */
     @Nullable
     public static Network deriveFrom(int addressHeader, int privateKeyHeader, int p2shHeader) {
-        Network network = null;
-        for (Network nw: values()) {
-            if (nw.addressHeader == addressHeader && nw.privateKeyHeader == privateKeyHeader && p2shHeader == nw.p2shHeader) {
-                network = nw;
-                break;
-            }
+        if (!isHeader(addressHeader) || !isHeader(privateKeyHeader) || (p2shHeader != -1 && !isHeader(p2shHeader))) {
+            return null;
         }
-        return network;
+        return BY_HEADER_TRIPLE.get(tripleKey(addressHeader, privateKeyHeader, p2shHeader));
     }
 
+    /**
+     * Returns the GlobalNetParams of this network. The same instance is returned on every call and can be shared
+     * between threads.
+     */
     public GlobalNetParams toGlobalNetParams() {
-        return new GlobalNetParams(this);
+        return GlobalNetParams.interned(this);
+    }
+
+    private static boolean isHeader(int header) {
+        return header >= 0 && header <= 255;
+    }
+
+    private static Integer pairKey(int addressHeader, int privateKeyHeader) {
+        return (addressHeader << 8) | privateKeyHeader;
+    }
+
+    /**
+     * The p2shHeader is shifted by one so that networks without one (-1) get a key of their own.
+     */
+    private static Integer tripleKey(int addressHeader, int privateKeyHeader, int p2shHeader) {
+        return (((addressHeader << 8) | privateKeyHeader) << 9) | (p2shHeader + 1);
     }
 
 }
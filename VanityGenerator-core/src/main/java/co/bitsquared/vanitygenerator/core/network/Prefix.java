@@ -6,10 +6,13 @@ import co.bitsquared.vanitygenerator.core.tools.Utils;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Prefix is a compiled list of address headers based off of the Base58 wrapped in an enum.
  * See https://en.bitcoin.it/wiki/List_of_address_prefixes for more information.
+ * <p>Lookups by version byte and by character are answered from tables that are built once when the enum is loaded.
  */
 public enum Prefix {
 
@@ -78,7 +81,30 @@ public enum Prefix {
     y(2, 139, 140, 141),
     z(2, 141, 142, 143, 144);
 
-    private short[] versions;
+    private static final Prefix[][] BY_VERSION = new Prefix[256][];
+    private static final Prefix[] BY_CHARACTER = new Prefix[128];
+
+    static {
+        List<List<Prefix>> byVersion = new ArrayList<List<Prefix>>(BY_VERSION.length);
+        for (int i = 0; i < BY_VERSION.length; i++) {
+            byVersion.add(new ArrayList<Prefix>());
+        }
+        for (Prefix prefix: values()) {
+            for (short version: prefix.versions) {
+                byVersion.get(version).add(prefix);
+            }
+            if (BY_CHARACTER[prefix.character] == null) {
+                BY_CHARACTER[prefix.character] = prefix;
+            }
+        }
+        for (int i = 0; i < BY_VERSION.length; i++) {
+            BY_VERSION[i] = byVersion.get(i).toArray(new Prefix[byVersion.get(i).size()]);
+        }
+    }
+
+    private final short[] versions;
+    private final char character;
+    private final String value;
 
     Prefix(int... intDecimals) {
         versions = new short[intDecimals.length];
@@ -86,6 +112,9 @@ public enum Prefix {
             Utils.checkIfValidDecimal(intDecimals[i]);
             versions[i] = (short) intDecimals[i];
         }
+        // The first nine Prefix's are the digits 1 through 9, every other Prefix is named after its letter.
+        character = ordinal() < 9 ? (char) ('1' + ordinal()) : name().charAt(0);
+        value = String.valueOf(character);
     }
 
     /**
@@ -95,28 +124,6 @@ public enum Prefix {
      */
     @Override
     public String toString() {
-        String value;
-        if (this == ONE) {
-            value = "1";
-        } else if (this == TWO) {
-            value = "2";
-        } else if (this == THREE) {
-            value = "3";
-        } else if (this == FOUR) {
-            value = "4";
-        } else if (this == FIVE) {
-            value = "5";
-        } else if (this == SIX) {
-            value = "6";
-        } else if (this == SEVEN) {
-            value = "7";
-        } else if (this == EIGHT) {
-            value = "8";
-        } else if (this == NINE) {
-            value = "9";
-        } else {
-            value = name();
-        }
         return value;
     }
 
@@ -162,15 +169,7 @@ public enum Prefix {
      * @return a list of Prefixes that contain value
      */
     protected static ArrayList<Prefix> getConfirmedAddressPrefixes(int value) {
-        ArrayList<Prefix> values = new ArrayList<Prefix>();
-        for (Prefix prefix: values()) {
-            for (int decimal: prefix.versions) {
-                if (value == decimal) {
-                    values.add(prefix);
-                }
-            }
-        }
-        return values;
+        return new ArrayList<Prefix>(Arrays.asList(BY_VERSION[value]));
     }
 
     /**
@@ -180,14 +179,7 @@ public enum Prefix {
      */
     @Nullable
     public static Prefix fromCharacter(char c) {
-        Prefix prefix = null;
-        for (Prefix p: values()) {
-            if (p.toString().charAt(0) == c) {
-                prefix = p;
-                break;
-            }
-        }
-        return prefix;
+        return c < BY_CHARACTER.length ? BY_CHARACTER[c] : null;
     }
 
 }
@@ -0,0 +1,338 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.tools.Base58Encoder;
+import org.bitcoinj.core.ECKey;
+import org.spongycastle.util.BigIntegers;
+import org.spongycastle.crypto.digests.RIPEMD160Digest;
+import org.spongycastle.math.ec.ECPoint;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * AddressView is a per candidate view of an ECKey that every query in a pool can match against. Each piece of derived
+ * data (the compressed hash160, the uncompressed hash160 and the Base58 address for each version byte) is computed
+ * lazily and at most once per candidate, so the SHA-256, RIPEMD-160 and Base58 work is shared across all queries
+ * instead of being repeated by each one. Compressed and uncompressed queries are matched against the same candidate.
+ * <p>A candidate can be given as a public point, in which case the point is serialized straight into the 33 byte
+ * compressed and 65 byte uncompressed buffers of this view, without building an ECKey or decompressing one. Both
+ * forms are hashed by a SHA-256 and a RIPEMD-160 digest owned by this view into hash buffers that are reused for
+ * every candidate.
+ * <p>A candidate can also be given as a compressed public key and its affine y coordinate in buffers owned by the caller,
+ * such as the ones filled by {@link co.bitsquared.vanitygenerator.core.search.BatchKeyGenerator}. The compressed form is
+ * then hashed straight from the caller's buffer, and the uncompressed form is written from the same bytes, with y
+ * subtracted from the field prime when its parity does not agree with the prefix byte. Neither needs an ECPoint.
+ * <p>P2SH addresses are built from the same hash160 as the regular address, only with the P2SH header of the network
+ * as the version byte.
+ * <p>The 25 byte payload (version byte | hash160 | checksum) of each version byte is also kept, so matchers that only
+ * need the payload, such as the suffix check of an ends {@link Query}, skip the Base58 encoding, and the encoding
+ * reuses the checksum.
+ * <p>Addresses are encoded by a {@link Base58Encoder} into char buffers owned by this view, so matchers that work on
+ * {@link #getAddressChars(int, boolean)} don't allocate. A String is only built when {@link #getAddress(int, boolean)}
+ * is called, such as for a regular expression.
+ * <p>An AddressView is meant to be reused by a single searching thread through
+ * {@link #reset(byte[], int, byte[], int)}, {@link #reset(ECPoint)} or {@link #reset(ECKey)}.
+ * <strong>NOTE</strong>: This class is not thread safe.
+ *
+ * @see RegexQuery#matches(AddressView, co.bitsquared.vanitygenerator.core.network.GlobalNetParams)
+ * @see QueryPool#matches(AddressView, co.bitsquared.vanitygenerator.core.network.GlobalNetParams)
+ * @since v1.4.0
+ */
+public class AddressView {
+
+    private static final int VERSIONS = 256;
+    private static final int COORDINATE_LENGTH = 32;
+    private static final int COMPRESSED_KEY_LENGTH = 1 + COORDINATE_LENGTH;
+    private static final int UNCOMPRESSED_KEY_LENGTH = 1 + 2 * COORDINATE_LENGTH;
+    private static final ThreadLocal<AddressView> SPARE_VIEWS = new ThreadLocal<AddressView>();
+    private static final byte[] FIELD_PRIME =
+            BigIntegers.asUnsignedByteArray(COORDINATE_LENGTH, ECKey.CURVE.getCurve().getField().getCharacteristic());
+
+    private final Base58Encoder encoder = new Base58Encoder();
+    private final MessageDigest sha256;
+    private final RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+    private final byte[] digest = new byte[32];
+    private final byte[] publicKey = new byte[UNCOMPRESSED_KEY_LENGTH];
+    private final byte[] compressedHash = new byte[Base58Encoder.HASH_LENGTH];
+    private final byte[] uncompressedHash = new byte[Base58Encoder.HASH_LENGTH];
+    private boolean compressedHashed;
+    private boolean uncompressedHashed;
+    private ECKey key;
+    private ECPoint point;
+    private byte[] compressedKey;
+    private int keyOffset;
+    private byte[] yCoords;
+    private int yOffset;
+    private final char[][] addressChars = new char[VERSIONS * 2][];
+    private final int[] addressLengths = new int[VERSIONS * 2];
+    private final int[] addressGenerations = new int[VERSIONS * 2];
+    private final byte[][] payloads = new byte[VERSIONS * 2][];
+    private final int[] payloadGenerations = new int[VERSIONS * 2];
+    private final String[] addresses = new String[VERSIONS * 2];
+    private final int[] stringGenerations = new int[VERSIONS * 2];
+    private int generation = 1;
+
+    public AddressView() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public AddressView(ECKey key) {
+        this();
+        reset(key);
+    }
+
+    /**
+     * Takes the spare view of the calling thread and points it at a key, so that matching a single ECKey does not build
+     * a view every time. A new view is built if the spare one is already taken. The view must be handed back with
+     * release(AddressView) once matching is done.
+     */
+    static AddressView acquire(ECKey key) {
+        AddressView view = SPARE_VIEWS.get();
+        if (view == null) {
+            view = new AddressView();
+        } else {
+            SPARE_VIEWS.set(null);
+        }
+        return view.reset(key);
+    }
+
+    /**
+     * Hands a view taken with acquire(ECKey) back to the calling thread. The view lets go of its key so that it does
+     * not keep it reachable.
+     */
+    static void release(AddressView view) {
+        view.key = null;
+        view.point = null;
+        view.compressedKey = null;
+        view.yCoords = null;
+        SPARE_VIEWS.set(view);
+    }
+
+    /**
+     * Points this view at a new candidate key and drops everything that was computed for the previous key.
+     */
+    public AddressView reset(ECKey key) {
+        this.key = key;
+        point = null;
+        compressedKey = null;
+        yCoords = null;
+        return nextCandidate();
+    }
+
+    /**
+     * Points this view at a new candidate public point and drops everything that was computed for the previous key. The
+     * point is normalized if it is not already, and is only turned into an ECKey if {@link #getKey()} is called.
+     * @since v1.4.0
+     */
+    public AddressView reset(ECPoint point) {
+        this.point = point.normalize();
+        key = null;
+        compressedKey = null;
+        yCoords = null;
+        return nextCandidate();
+    }
+
+    /**
+     * Points this view at a new candidate given as a serialized compressed public key and the affine y coordinate of
+     * the point, or of its negation, and drops everything that was computed for the previous key. The buffers are read
+     * in place and must not change until the next reset.
+     * @param compressedKey the buffer holding the 33 byte compressed public key.
+     * @param keyOffset the offset of the key in compressedKey.
+     * @param yCoords the buffer holding the 32 byte big endian y coordinate, of either sign.
+     * @param yOffset the offset of y in yCoords.
+     * @since v1.4.0
+     */
+    public AddressView reset(byte[] compressedKey, int keyOffset, byte[] yCoords, int yOffset) {
+        this.compressedKey = compressedKey;
+        this.keyOffset = keyOffset;
+        this.yCoords = yCoords;
+        this.yOffset = yOffset;
+        key = null;
+        point = null;
+        return nextCandidate();
+    }
+
+    private AddressView nextCandidate() {
+        compressedHashed = false;
+        uncompressedHashed = false;
+        if (++generation == 0) {
+            // Wrapped around; make sure no stale address can carry the current generation.
+            Arrays.fill(addressGenerations, 0);
+            Arrays.fill(payloadGenerations, 0);
+            Arrays.fill(stringGenerations, 0);
+            generation = 1;
+        }
+        return this;
+    }
+
+    /**
+     * Returns the candidate key this view was built from. A view built from a point builds a public only, compressed
+     * ECKey the first time this is called.
+     */
+    public ECKey getKey() {
+        if (key == null && point != null) {
+            key = ECKey.fromPublicOnly(ECKey.compressPoint(point));
+        } else if (key == null && compressedKey != null) {
+            key = ECKey.fromPublicOnly(Arrays.copyOfRange(compressedKey, keyOffset, keyOffset + COMPRESSED_KEY_LENGTH));
+        }
+        return key;
+    }
+
+    /**
+     * Returns the hash160 (RIPEMD-160 of SHA-256) of the compressed or uncompressed public key of this candidate. The
+     * returned array is reused for the next candidate and must not be modified.
+     */
+    public byte[] getHash160(boolean compressed) {
+        if (compressed) {
+            if (!compressedHashed) {
+                if (compressedKey != null) {
+                    hash160(compressedKey, keyOffset, COMPRESSED_KEY_LENGTH, compressedHash);
+                } else {
+                    hash160(publicKey, 0, serialize(true), compressedHash);
+                }
+                compressedHashed = true;
+            }
+            return compressedHash;
+        }
+        if (!uncompressedHashed) {
+            hash160(publicKey, 0, serialize(false), uncompressedHash);
+            uncompressedHashed = true;
+        }
+        return uncompressedHash;
+    }
+
+    /**
+     * Serializes the public key of this candidate into the public key buffer. An ECKey in the other form is turned
+     * into a point first, which only decompresses it for the uncompressed form.
+     * @return the length of the serialized key.
+     */
+    private int serialize(boolean compressed) {
+        if (compressedKey != null) {
+            return serializeUncompressed();
+        }
+        if (point == null && key.isCompressed() == compressed) {
+            byte[] encoded = key.getPubKey();
+            System.arraycopy(encoded, 0, publicKey, 0, encoded.length);
+            return encoded.length;
+        }
+        ECPoint candidate = point != null ? point : key.getPubKeyPoint().normalize();
+        byte[] x = candidate.getAffineXCoord().getEncoded();
+        System.arraycopy(x, 0, publicKey, 1 + COORDINATE_LENGTH - x.length, x.length);
+        if (compressed) {
+            publicKey[0] = (byte) (candidate.getAffineYCoord().testBitZero() ? 0x03 : 0x02);
+            return COMPRESSED_KEY_LENGTH;
+        }
+        byte[] y = candidate.getAffineYCoord().getEncoded();
+        publicKey[0] = 0x04;
+        System.arraycopy(y, 0, publicKey, UNCOMPRESSED_KEY_LENGTH - y.length, y.length);
+        return UNCOMPRESSED_KEY_LENGTH;
+    }
+
+    /**
+     * Writes the uncompressed form of a candidate given by reset(byte[], int, byte[], int) into the public key buffer.
+     * The prefix of the compressed key holds the parity of y, so y is replaced with p - y when the given y has the
+     * other parity. p is odd, so the two always have different parities.
+     * @return the length of the serialized key.
+     */
+    private int serializeUncompressed() {
+        publicKey[0] = 0x04;
+        System.arraycopy(compressedKey, keyOffset + 1, publicKey, 1, COORDINATE_LENGTH);
+        System.arraycopy(yCoords, yOffset, publicKey, COMPRESSED_KEY_LENGTH, COORDINATE_LENGTH);
+        boolean odd = compressedKey[keyOffset] == 0x03;
+        if (((publicKey[UNCOMPRESSED_KEY_LENGTH - 1] & 1) == 1) != odd) {
+            int borrow = 0;
+            for (int i = COORDINATE_LENGTH - 1; i >= 0; i--) {
+                int difference = (FIELD_PRIME[i] & 0xFF) - (publicKey[COMPRESSED_KEY_LENGTH + i] & 0xFF) - borrow;
+                publicKey[COMPRESSED_KEY_LENGTH + i] = (byte) difference;
+                borrow = (difference >> 8) & 1;
+            }
+        }
+        return UNCOMPRESSED_KEY_LENGTH;
+    }
+
+    private void hash160(byte[] input, int offset, int length, byte[] out) {
+        sha256.update(input, offset, length);
+        try {
+            sha256.digest(digest, 0, digest.length);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+        ripemd160.update(digest, 0, digest.length);
+        ripemd160.doFinal(out, 0);
+    }
+
+    /**
+     * Returns the 25 byte payload (version byte | hash160 | checksum) of this candidate for a version byte. The returned
+     * array is reused for the next candidate and must not be modified.
+     * @param version the version byte (address header or P2SH header) in range [0, 255].
+     * @param compressed whether the compressed or uncompressed public key is hashed.
+     */
+    public byte[] getPayload(int version, boolean compressed) {
+        int slot = version * 2 + (compressed ? 1 : 0);
+        if (payloadGenerations[slot] != generation) {
+            if (payloads[slot] == null) {
+                payloads[slot] = new byte[Base58Encoder.PAYLOAD_LENGTH];
+            }
+            encoder.fillPayload(version, getHash160(compressed), 0);
+            System.arraycopy(encoder.getPayload(), 0, payloads[slot], 0, Base58Encoder.PAYLOAD_LENGTH);
+            payloadGenerations[slot] = generation;
+        }
+        return payloads[slot];
+    }
+
+    /**
+     * Returns the Base58Check address of this candidate for a version byte.
+     * @param version the version byte (address header or P2SH header) in range [0, 255].
+     * @param compressed whether the compressed or uncompressed public key is hashed.
+     * @return the Base58 encoded address.
+     */
+    public String getAddress(int version, boolean compressed) {
+        int slot = encode(version, compressed);
+        if (stringGenerations[slot] != generation) {
+            addresses[slot] = new String(addressChars[slot], 0, addressLengths[slot]);
+            stringGenerations[slot] = generation;
+        }
+        return addresses[slot];
+    }
+
+    /**
+     * Returns the buffer holding the Base58Check address of this candidate for a version byte. Only the first
+     * {@link #getAddressLength(int, boolean)} characters are part of the address. The buffer is reused for the next
+     * candidate and must not be modified.
+     * @param version the version byte (address header or P2SH header) in range [0, 255].
+     * @param compressed whether the compressed or uncompressed public key is hashed.
+     */
+    public char[] getAddressChars(int version, boolean compressed) {
+        return addressChars[encode(version, compressed)];
+    }
+
+    /**
+     * Returns the length of the Base58Check address of this candidate for a version byte.
+     */
+    public int getAddressLength(int version, boolean compressed) {
+        return addressLengths[encode(version, compressed)];
+    }
+
+    /**
+     * Encodes the address for a version byte and compression if it has not been encoded for this candidate yet.
+     * @return the slot of the address.
+     */
+    private int encode(int version, boolean compressed) {
+        int slot = version * 2 + (compressed ? 1 : 0);
+        if (addressGenerations[slot] != generation) {
+            if (addressChars[slot] == null) {
+                addressChars[slot] = new char[Base58Encoder.MAX_ADDRESS_LENGTH];
+            }
+            addressLengths[slot] = encoder.encodePayload(getPayload(version, compressed), addressChars[slot]);
+            addressGenerations[slot] = generation;
+        }
+        return slot;
+    }
+
+}
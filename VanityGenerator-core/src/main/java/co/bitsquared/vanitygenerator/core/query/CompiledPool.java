@@ -0,0 +1,92 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * CompiledPool is the matching form of the queries in a {@link QueryPool} for one GlobalNetParams. Case sensitive begins
+ * queries go into a {@link PrefixIndex}, ends queries go into a {@link SuffixIndex}, contains queries go into a
+ * {@link ContainsIndex}, in compiled regex mode the
+ * remaining queries go into a {@link RegexIndex} when their patterns can be compiled, and every other query is checked
+ * one at a time. A candidate is checked in that order and the first matching query is returned.
+ * <p>A CompiledPool is immutable once built and is rebuilt by QueryPool whenever the pool changes.
+ *
+ * @since v1.4.0
+ */
+class CompiledPool {
+
+    private final PrefixIndex prefixes;
+    private final SuffixIndex suffixes;
+    private final ContainsIndex contains;
+    private final RegexIndex regexes;
+    private final RegexQuery[] others;
+
+    private CompiledPool(PrefixIndex prefixes, SuffixIndex suffixes, ContainsIndex contains, RegexIndex regexes, RegexQuery[] others) {
+        this.prefixes = prefixes;
+        this.suffixes = suffixes;
+        this.contains = contains;
+        this.regexes = regexes;
+        this.others = others;
+    }
+
+    /**
+     * Compiles a collection of queries.
+     * @param queries the queries of the pool in the order they should be checked.
+     * @param netParams the GlobalNetParams used for queries that don't define their own.
+     * @param compiledRegex whether the remaining queries are compiled into DFAs.
+     * @param previous the compiled pool this one replaces, whose unchanged DFAs are reused, or null if there is none.
+     */
+    static CompiledPool build(Collection<RegexQuery> queries, GlobalNetParams netParams, boolean compiledRegex,
+                              CompiledPool previous) {
+        List<RegexQuery> prefixQueries = new ArrayList<RegexQuery>();
+        List<RegexQuery> suffixQueries = new ArrayList<RegexQuery>();
+        List<RegexQuery> containsQueries = new ArrayList<RegexQuery>();
+        List<RegexQuery> regexQueries = new ArrayList<RegexQuery>();
+        List<RegexQuery> others = new ArrayList<RegexQuery>();
+        for (RegexQuery query: queries) {
+            if (PrefixIndex.isIndexable(query)) {
+                prefixQueries.add(query);
+            } else if (SuffixIndex.isIndexable(query)) {
+                suffixQueries.add(query);
+            } else if (ContainsIndex.isIndexable(query)) {
+                containsQueries.add(query);
+            } else if (compiledRegex && RegexIndex.isIndexable(query)) {
+                regexQueries.add(query);
+            } else {
+                others.add(query);
+            }
+        }
+        RegexIndex regexes = RegexIndex.build(regexQueries, netParams, others, previous == null ? null : previous.regexes);
+        return new CompiledPool(PrefixIndex.build(prefixQueries, netParams), SuffixIndex.build(suffixQueries, netParams),
+                ContainsIndex.build(containsQueries, netParams), regexes, others.toArray(new RegexQuery[others.size()]));
+    }
+
+    /**
+     * Returns the first query that matches the candidate, or null if none does.
+     */
+    RegexQuery matches(AddressView view, GlobalNetParams netParams) {
+        RegexQuery query = prefixes.matches(view, netParams);
+        if (query == null) {
+            query = suffixes.matches(view, netParams);
+        }
+        if (query == null) {
+            query = contains.matches(view);
+        }
+        if (query == null) {
+            query = regexes.matches(view);
+        }
+        if (query != null) {
+            return query;
+        }
+        for (RegexQuery other: others) {
+            if (other.matches(view, netParams)) {
+                return other;
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,144 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.tools.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ContainsIndex holds every contains {@link Query} of a pool inside Aho-Corasick automatons. Queries are grouped by the
+ * address they are matched against (version byte and compression), and each group has one automaton for case
+ * sensitive queries and one for case insensitive queries. Each address is then scanned once per automaton instead of
+ * once per query.
+ * <p>A ContainsIndex is immutable once built and is rebuilt by {@link QueryPool} whenever the pool changes.
+ *
+ * @see AhoCorasick
+ * @since v1.4.0
+ */
+class ContainsIndex {
+
+    private final Group[] groups;
+
+    private ContainsIndex(Group[] groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Builds an index from contains queries.
+     * @param queries queries that are accepted by isIndexable(RegexQuery).
+     * @param netParams the GlobalNetParams used for queries that don't define their own.
+     */
+    static ContainsIndex build(Collection<RegexQuery> queries, GlobalNetParams netParams) {
+        List<GroupBuilder> builders = new ArrayList<GroupBuilder>();
+        for (RegexQuery query: queries) {
+            GlobalNetParams params = query.getNetworkParameters(netParams);
+            int version = query.isP2SH() ? params.getP2SHHeader() : params.getAddressHeader();
+            GroupBuilder builder = null;
+            for (GroupBuilder existing: builders) {
+                if (existing.version == version && existing.compressed == query.isCompressed()) {
+                    builder = existing;
+                    break;
+                }
+            }
+            if (builder == null) {
+                builder = new GroupBuilder(version, query.isCompressed());
+                builders.add(builder);
+            }
+            Query containsQuery = (Query) query;
+            if (containsQuery.isMatchCase()) {
+                builder.matchCase.add(containsQuery);
+            } else {
+                builder.ignoreCase.add(containsQuery);
+            }
+        }
+        Group[] groups = new Group[builders.size()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = builders.get(i).build();
+        }
+        return new ContainsIndex(groups);
+    }
+
+    static boolean isIndexable(RegexQuery query) {
+        return query instanceof Query && !((Query) query).isBegins() && !((Query) query).isEnds();
+    }
+
+    /**
+     * Returns the first query whose string occurs in the candidate address, or null if none does.
+     */
+    RegexQuery matches(AddressView view) {
+        for (Group group: groups) {
+            char[] address = view.getAddressChars(group.version, group.compressed);
+            RegexQuery query = group.find(address, view.getAddressLength(group.version, group.compressed));
+            if (query != null) {
+                return query;
+            }
+        }
+        return null;
+    }
+
+    private static class Group {
+
+        private final int version;
+        private final boolean compressed;
+        private final Query[] matchCase;
+        private final AhoCorasick matchCaseAutomaton;
+        private final Query[] ignoreCase;
+        private final AhoCorasick ignoreCaseAutomaton;
+
+        Group(int version, boolean compressed, Query[] matchCase, Query[] ignoreCase) {
+            this.version = version;
+            this.compressed = compressed;
+            this.matchCase = matchCase;
+            this.ignoreCase = ignoreCase;
+            matchCaseAutomaton = matchCase.length == 0 ? null : new AhoCorasick(plainQueries(matchCase), false);
+            ignoreCaseAutomaton = ignoreCase.length == 0 ? null : new AhoCorasick(plainQueries(ignoreCase), true);
+        }
+
+        RegexQuery find(char[] address, int length) {
+            if (matchCaseAutomaton != null) {
+                int id = matchCaseAutomaton.find(address, 0, length);
+                if (id >= 0) {
+                    return matchCase[id];
+                }
+            }
+            if (ignoreCaseAutomaton != null) {
+                int id = ignoreCaseAutomaton.find(address, 0, length);
+                if (id >= 0) {
+                    return ignoreCase[id];
+                }
+            }
+            return null;
+        }
+
+        private static String[] plainQueries(Query[] queries) {
+            String[] plainQueries = new String[queries.length];
+            for (int i = 0; i < queries.length; i++) {
+                plainQueries[i] = queries[i].getPlainQuery();
+            }
+            return plainQueries;
+        }
+
+    }
+
+    private static class GroupBuilder {
+
+        private final int version;
+        private final boolean compressed;
+        private final List<Query> matchCase = new ArrayList<Query>();
+        private final List<Query> ignoreCase = new ArrayList<Query>();
+
+        GroupBuilder(int version, boolean compressed) {
+            this.version = version;
+            this.compressed = compressed;
+        }
+
+        Group build() {
+            return new Group(version, compressed, matchCase.toArray(new Query[matchCase.size()]),
+                    ignoreCase.toArray(new Query[ignoreCase.size()]));
+        }
+
+    }
+
+}
@@ -0,0 +1,287 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * HashRangeSet is a sorted set of disjoint, inclusive hash160 ranges. A "begins with" query on a fixed version byte
+ * maps to one contiguous range of the 25 byte payload (version byte | hash160 | checksum) for each possible address
+ * length, so checking whether a candidate can begin with a query is a comparison on its raw 20 byte hash instead of a
+ * Base58 encoding.
+ * <p>Range edges are rounded outward to whole hash160 values since the checksum is not known until it is computed.
+ * A hash inside the set is therefore only a candidate and must still be confirmed against the encoded address; a hash
+ * outside of the set can never begin with the query.
+ * <p>The upper 64 bits of each bound are kept in primitive arrays (with the sign bit flipped so signed comparisons
+ * order them as unsigned) and the full 20 bytes are only compared when those are equal.
+ *
+ * @see Query
+ * @since v1.4.0
+ */
+public class HashRangeSet {
+
+    public static final int HASH_LENGTH = 20;
+
+    private static final int PAYLOAD_LENGTH = 25;
+    private static final int CHECKSUM_BITS = 32;
+    private static final int MAX_ADDRESS_LENGTH = 35;
+    private static final BigInteger BASE = BigInteger.valueOf(Utils.BASE);
+    private static final BigInteger BYTE = BigInteger.valueOf(256);
+    private static final double HASH_SPACE = Math.pow(2, HASH_LENGTH * 8);
+    private static final HashRangeSet EMPTY = new HashRangeSet(-1, new byte[0][], new byte[0][]);
+
+    private final int version;
+    private final long[] lowTops;
+    private final long[] highTops;
+    private final byte[][] lows;
+    private final byte[][] highs;
+    private final double probability;
+
+    private HashRangeSet(int version, byte[][] lows, byte[][] highs) {
+        this.version = version;
+        this.lows = lows;
+        this.highs = highs;
+        lowTops = new long[lows.length];
+        highTops = new long[highs.length];
+        for (int i = 0; i < lows.length; i++) {
+            lowTops[i] = top(lows[i], 0);
+            highTops[i] = top(highs[i], 0);
+        }
+        BigInteger width = BigInteger.ZERO;
+        for (int i = 0; i < lows.length; i++) {
+            width = width.add(new BigInteger(1, highs[i]).subtract(new BigInteger(1, lows[i])).add(BigInteger.ONE));
+        }
+        probability = width.doubleValue() / HASH_SPACE;
+    }
+
+    /**
+     * Compiles the set of hash160 ranges whose addresses on a version byte begin with any character followed by query,
+     * which is the placement of a begins {@link Query} with a matching case. The first character of the address is not
+     * part of query.
+     * @param query a Base58 string.
+     * @param version the version byte of the address in range [0, 255].
+     * @return the compiled set, which is empty if no address on this version byte can begin with query.
+     */
+    public static HashRangeSet forBeginsQuery(String query, int version) {
+        Utils.checkBase58(query);
+        Utils.checkIfValidDecimal(version);
+        BigInteger versionLow = BigInteger.valueOf(version).shiftLeft((PAYLOAD_LENGTH - 1) * 8);
+        BigInteger versionHigh = BigInteger.valueOf(version + 1).shiftLeft((PAYLOAD_LENGTH - 1) * 8);
+        List<BigInteger[]> ranges = new ArrayList<BigInteger[]>();
+        if (version != 0) {
+            addRangesWithoutLeadingOnes(query, versionLow, versionHigh, ranges);
+        } else {
+            // Each leading zero byte of the payload is written as a leading '1'; the first one is the version byte.
+            for (int zeros = 1; zeros < PAYLOAD_LENGTH; zeros++) {
+                BigInteger low = BYTE.pow(PAYLOAD_LENGTH - 1 - zeros);
+                BigInteger high = BYTE.pow(PAYLOAD_LENGTH - zeros);
+                addRangesAfterLeadingOnes(query, zeros, low, high, ranges);
+            }
+        }
+        return fromPayloadRanges(version, versionLow, ranges);
+    }
+
+    /**
+     * Returns an empty set that contains no hash.
+     */
+    public static HashRangeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the version byte this set was compiled for, or -1 if it is the shared empty set.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the amount of disjoint ranges in this set.
+     */
+    public int size() {
+        return lows.length;
+    }
+
+    /**
+     * Returns the fraction of all hash160 values that lie inside of this set, which is the probability that a random
+     * key falls inside of it.
+     * @since v1.4.0
+     */
+    public double getProbability() {
+        return probability;
+    }
+
+    public boolean isEmpty() {
+        return lows.length == 0;
+    }
+
+    /**
+     * Returns the inclusive lower bound of the range at index. The returned array must not be modified.
+     */
+    public byte[] getLow(int index) {
+        return lows[index];
+    }
+
+    /**
+     * Returns the inclusive upper bound of the range at index. The returned array must not be modified.
+     */
+    public byte[] getHigh(int index) {
+        return highs[index];
+    }
+
+    /**
+     * Determines if a hash160 lies inside any range of this set.
+     */
+    public boolean contains(byte[] hash) {
+        long hashTop = top(hash, 0);
+        int low = 0, high = lows.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compare(hashTop, hash, lowTops[middle], lows[middle]) < 0) {
+                high = middle - 1;
+            } else if (compare(hashTop, hash, highTops[middle], highs[middle]) > 0) {
+                low = middle + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the upper 64 bits of a 20 byte hash starting at offset with the sign bit flipped, so that signed
+     * comparison of two results orders them as unsigned values.
+     */
+    static long top(byte[] hash, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (hash[offset + i] & 0xff);
+        }
+        return value ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Compares two hashes by their flipped upper 64 bits first and their remaining bytes only when those are equal.
+     */
+    static int compare(long leftTop, byte[] left, long rightTop, byte[] right) {
+        if (leftTop != rightTop) {
+            return leftTop < rightTop ? -1 : 1;
+        }
+        for (int i = 8; i < HASH_LENGTH; i++) {
+            int difference = (left[i] & 0xff) - (right[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * The address is only the Base58 digits of the payload: any first digit followed by query.
+     */
+    private static void addRangesWithoutLeadingOnes(String query, BigInteger low, BigInteger high, List<BigInteger[]> ranges) {
+        BigInteger queryValue = valueOf(query);
+        BigInteger queryScale = BASE.pow(query.length());
+        for (int digits = query.length() + 1; digits <= MAX_ADDRESS_LENGTH; digits++) {
+            BigInteger unit = BASE.pow(digits - 1);
+            BigInteger firstLow = low.divide(unit).max(BigInteger.ONE);
+            BigInteger firstHigh = high.subtract(BigInteger.ONE).divide(unit).min(BASE.subtract(BigInteger.ONE));
+            BigInteger scale = BASE.pow(digits - 1 - query.length());
+            for (BigInteger first = firstLow; first.compareTo(firstHigh) <= 0; first = first.add(BigInteger.ONE)) {
+                BigInteger start = first.multiply(queryScale).add(queryValue).multiply(scale);
+                addIntersection(start, start.add(scale), low, high, ranges);
+            }
+        }
+    }
+
+    /**
+     * The address is zeros '1' characters followed by the Base58 digits of the payload, whose leading digit is never
+     * '1'. The first '1' is the first character of the address, so only zeros - 1 of them are compared against query.
+     */
+    private static void addRangesAfterLeadingOnes(String query, int zeros, BigInteger low, BigInteger high, List<BigInteger[]> ranges) {
+        int comparedOnes = Math.min(zeros - 1, query.length());
+        for (int i = 0; i < comparedOnes; i++) {
+            if (query.charAt(i) != '1') {
+                return;
+            }
+        }
+        String remaining = query.substring(comparedOnes);
+        if (remaining.isEmpty()) {
+            addIntersection(low, high, low, high, ranges);
+            return;
+        }
+        if (remaining.charAt(0) == '1') {
+            return;
+        }
+        BigInteger remainingValue = valueOf(remaining);
+        for (int digits = remaining.length(); digits <= MAX_ADDRESS_LENGTH; digits++) {
+            BigInteger scale = BASE.pow(digits - remaining.length());
+            BigInteger start = remainingValue.multiply(scale);
+            addIntersection(start, start.add(scale), low, high, ranges);
+        }
+    }
+
+    private static void addIntersection(BigInteger start, BigInteger end, BigInteger low, BigInteger high, List<BigInteger[]> ranges) {
+        start = start.max(low);
+        end = end.min(high);
+        if (start.compareTo(end) < 0) {
+            ranges.add(new BigInteger[] {start, end});
+        }
+    }
+
+    /**
+     * Turns half open payload ranges into merged, inclusive hash160 ranges by dropping the version byte and rounding
+     * the checksum outward.
+     */
+    private static HashRangeSet fromPayloadRanges(int version, BigInteger versionLow, List<BigInteger[]> ranges) {
+        List<BigInteger[]> hashRanges = new ArrayList<BigInteger[]>();
+        for (BigInteger[] range: ranges) {
+            BigInteger low = range[0].subtract(versionLow).shiftRight(CHECKSUM_BITS);
+            BigInteger high = range[1].subtract(BigInteger.ONE).subtract(versionLow).shiftRight(CHECKSUM_BITS);
+            hashRanges.add(new BigInteger[] {low, high});
+        }
+        Collections.sort(hashRanges, new Comparator<BigInteger[]>() {
+            @Override
+            public int compare(BigInteger[] left, BigInteger[] right) {
+                return left[0].compareTo(right[0]);
+            }
+        });
+        List<BigInteger[]> merged = new ArrayList<BigInteger[]>();
+        for (BigInteger[] range: hashRanges) {
+            BigInteger[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0].compareTo(last[1].add(BigInteger.ONE)) <= 0) {
+                last[1] = last[1].max(range[1]);
+            } else {
+                merged.add(new BigInteger[] {range[0], range[1]});
+            }
+        }
+        byte[][] lows = new byte[merged.size()][];
+        byte[][] highs = new byte[merged.size()][];
+        for (int i = 0; i < merged.size(); i++) {
+            lows[i] = toHash(merged.get(i)[0]);
+            highs[i] = toHash(merged.get(i)[1]);
+        }
+        return new HashRangeSet(version, lows, highs);
+    }
+
+    private static BigInteger valueOf(String base58) {
+        BigInteger value = BigInteger.ZERO;
+        for (int i = 0; i < base58.length(); i++) {
+            value = value.multiply(BASE).add(BigInteger.valueOf(Utils.indexOfBase58(base58.charAt(i))));
+        }
+        return value;
+    }
+
+    private static byte[] toHash(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] hash = new byte[HASH_LENGTH];
+        int length = Math.min(bytes.length, HASH_LENGTH);
+        System.arraycopy(bytes, bytes.length - length, hash, HASH_LENGTH - length, length);
+        return hash;
+    }
+
+}
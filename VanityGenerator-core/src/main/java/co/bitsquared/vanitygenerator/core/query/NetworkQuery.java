@@ -32,6 +32,7 @@ public class NetworkQuery extends RegexQuery {
 
     @Override
     public void updateNetParams(GlobalNetParams netParams) {
+        checkNotPooled();
         this.netParams = netParams;
         updatePattern();
     }
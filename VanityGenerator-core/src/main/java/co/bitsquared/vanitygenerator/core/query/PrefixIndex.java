@@ -0,0 +1,204 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * PrefixIndex holds every case sensitive begins {@link Query} of a pool as sorted, merged hash160 intervals. Each
+ * merged interval maps back to the ids of the queries whose ranges overlap it, so a candidate hash takes one binary
+ * search no matter how many prefixes are loaded. Queries found through an interval still confirm the hit with
+ * {@link Query#matches(AddressView, GlobalNetParams)}.
+ * <p>Since a hash160 is the same for every version byte, the ranges of all networks are merged together and there is
+ * one set of intervals for compressed and one for uncompressed keys.
+ * <p>A PrefixIndex is immutable once built and is rebuilt by {@link QueryPool} whenever the pool changes.
+ *
+ * @see HashRangeSet
+ * @since v1.4.0
+ */
+class PrefixIndex {
+
+    private final RegexQuery[] indexed;
+    private final Intervals compressed;
+    private final Intervals uncompressed;
+
+    private PrefixIndex(RegexQuery[] indexed, Intervals compressed, Intervals uncompressed) {
+        this.indexed = indexed;
+        this.compressed = compressed;
+        this.uncompressed = uncompressed;
+    }
+
+    /**
+     * Builds an index from begins queries.
+     * @param queries queries that are accepted by isIndexable(RegexQuery).
+     * @param netParams the GlobalNetParams used for queries that don't define their own.
+     */
+    static PrefixIndex build(Collection<RegexQuery> queries, GlobalNetParams netParams) {
+        List<RegexQuery> indexed = new ArrayList<RegexQuery>();
+        List<Interval> compressedIntervals = new ArrayList<Interval>();
+        List<Interval> uncompressedIntervals = new ArrayList<Interval>();
+        for (RegexQuery query: queries) {
+            int id = indexed.size();
+            indexed.add(query);
+            GlobalNetParams params = query.getNetworkParameters(netParams);
+            int version = query.isP2SH() ? params.getP2SHHeader() : params.getAddressHeader();
+            HashRangeSet ranges = ((Query) query).getHashRanges(version);
+            List<Interval> target = query.isCompressed() ? compressedIntervals : uncompressedIntervals;
+            for (int i = 0; i < ranges.size(); i++) {
+                target.add(new Interval(ranges.getLow(i), ranges.getHigh(i), id));
+            }
+        }
+        return new PrefixIndex(indexed.toArray(new RegexQuery[indexed.size()]),
+                Intervals.merge(compressedIntervals), Intervals.merge(uncompressedIntervals));
+    }
+
+    static boolean isIndexable(RegexQuery query) {
+        return query instanceof Query && ((Query) query).isBegins() && ((Query) query).isMatchCase();
+    }
+
+    /**
+     * Returns the first query that matches the candidate, or null if none does.
+     */
+    RegexQuery matches(AddressView view, GlobalNetParams netParams) {
+        RegexQuery query = compressed.matches(view, true, indexed, netParams);
+        if (query == null) {
+            query = uncompressed.matches(view, false, indexed, netParams);
+        }
+        return query;
+    }
+
+    /**
+     * Returns the amount of queries that are held in the hash160 intervals.
+     */
+    int getIndexedCount() {
+        return indexed.length;
+    }
+
+    private static class Interval {
+
+        private final byte[] low;
+        private final byte[] high;
+        private final int id;
+
+        Interval(byte[] low, byte[] high, int id) {
+            this.low = low;
+            this.high = high;
+            this.id = id;
+        }
+
+    }
+
+    private static class Intervals {
+
+        private final long[] lowTops;
+        private final long[] highTops;
+        private final byte[][] lows;
+        private final byte[][] highs;
+        private final int[][] ids;
+
+        private Intervals(byte[][] lows, byte[][] highs, int[][] ids) {
+            this.lows = lows;
+            this.highs = highs;
+            this.ids = ids;
+            lowTops = new long[lows.length];
+            highTops = new long[highs.length];
+            for (int i = 0; i < lows.length; i++) {
+                lowTops[i] = HashRangeSet.top(lows[i], 0);
+                highTops[i] = HashRangeSet.top(highs[i], 0);
+            }
+        }
+
+        static Intervals merge(List<Interval> intervals) {
+            Collections.sort(intervals, new Comparator<Interval>() {
+                @Override
+                public int compare(Interval left, Interval right) {
+                    return compareHashes(left.low, right.low);
+                }
+            });
+            List<byte[]> lows = new ArrayList<byte[]>();
+            List<byte[]> highs = new ArrayList<byte[]>();
+            List<int[]> ids = new ArrayList<int[]>();
+            int i = 0;
+            while (i < intervals.size()) {
+                Interval current = intervals.get(i);
+                byte[] high = current.high;
+                List<Integer> currentIds = new ArrayList<Integer>();
+                currentIds.add(current.id);
+                int j = i + 1;
+                while (j < intervals.size() && compareHashes(intervals.get(j).low, high) <= 0) {
+                    Interval next = intervals.get(j);
+                    if (compareHashes(next.high, high) > 0) {
+                        high = next.high;
+                    }
+                    currentIds.add(next.id);
+                    j++;
+                }
+                lows.add(current.low);
+                highs.add(high);
+                ids.add(distinct(currentIds));
+                i = j;
+            }
+            return new Intervals(lows.toArray(new byte[lows.size()][]), highs.toArray(new byte[highs.size()][]),
+                    ids.toArray(new int[ids.size()][]));
+        }
+
+        private static int[] distinct(List<Integer> values) {
+            int[] sorted = new int[values.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = values.get(i);
+            }
+            Arrays.sort(sorted);
+            int length = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (length == 0 || sorted[length - 1] != sorted[i]) {
+                    sorted[length++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, length);
+        }
+
+        RegexQuery matches(AddressView view, boolean compressed, RegexQuery[] queries, GlobalNetParams netParams) {
+            if (lows.length == 0) {
+                return null;
+            }
+            byte[] hash = view.getHash160(compressed);
+            int interval = find(hash);
+            if (interval < 0) {
+                return null;
+            }
+            for (int id: ids[interval]) {
+                if (queries[id].matches(view, netParams)) {
+                    return queries[id];
+                }
+            }
+            return null;
+        }
+
+        private int find(byte[] hash) {
+            long hashTop = HashRangeSet.top(hash, 0);
+            int low = 0, high = lows.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (HashRangeSet.compare(hashTop, hash, lowTops[middle], lows[middle]) < 0) {
+                    high = middle - 1;
+                } else if (HashRangeSet.compare(hashTop, hash, highTops[middle], highs[middle]) > 0) {
+                    low = middle + 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -1;
+        }
+
+        private static int compareHashes(byte[] left, byte[] right) {
+            return HashRangeSet.compare(HashRangeSet.top(left, 0), left, HashRangeSet.top(right, 0), right);
+        }
+
+    }
+
+}
@@ -2,6 +2,7 @@ package co.bitsquared.vanitygenerator.core.query;
 
 import co.bitsquared.vanitygenerator.core.exceptions.Base58FormatException;
 import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.network.Network;
 import co.bitsquared.vanitygenerator.core.tools.Utils;
 
 import javax.annotation.Nonnull;
@@ -20,29 +21,62 @@ public class Query extends RegexQuery implements Comparable<RegexQuery> {
 
     private String query;
     private boolean begins;
+    private boolean ends;
     private boolean matchCase;
+    private volatile HashRangeSet hashRanges;
+    private volatile SuffixSet suffixes;
+    private QueryMatcher matcher;
+    private volatile Probability probability;
+    private volatile Probability orderProbability;
+    private double difficulty;
 
     protected Query(QueryBuilder builder) {
         super(builder.compressed, builder.findUnlimited, builder.searchForP2SH);
+        checkPlacement(builder.beginsWith, builder.endsWith);
         this.begins = builder.beginsWith;
+        this.ends = builder.endsWith;
         this.matchCase = builder.matchCase;
         this.query = builder.query;
         this.netParams = builder.netParams;
         updatePattern();
     }
 
+    /**
+     * @throws IllegalStateException if this query is in a QueryPool.
+     */
     public void updateQuery(String query) throws Base58FormatException {
+        checkNotPooled();
         Utils.checkBase58(query);
         this.query = query;
         updatePattern();
     }
 
+    /**
+     * @throws IllegalStateException if this query is in a QueryPool.
+     */
     public void updatePlacement(boolean begins) {
+        updatePlacement(begins, false);
+    }
+
+    /**
+     * Updates where the query is placed in an address: at the beginning, at the end, or anywhere if both are false.
+     * @throws IllegalArgumentException if both begins and ends are true.
+     * @throws IllegalStateException if this query is in a QueryPool.
+     * @since v1.4.0
+     */
+    public void updatePlacement(boolean begins, boolean ends) {
+        checkNotPooled();
+        checkPlacement(begins, ends);
         this.begins = begins;
+        this.ends = ends;
         updatePattern();
     }
 
+    /**
+     * @throws IllegalStateException if this query is in a QueryPool.
+     */
     public void updateMatchCase(boolean matchCase) {
+        checkNotPooled();
         this.matchCase = matchCase;
         updatePattern();
     }
@@ -55,77 +89,269 @@ public class Query extends RegexQuery implements Comparable<RegexQuery> {
         return begins;
     }
 
+    /**
+     * @since v1.4.0
+     */
+    public boolean isEnds() {
+        return ends;
+    }
+
     public boolean isMatchCase() {
         return matchCase;
     }
 
+    /**
+     * A begins Query with a matching case is first checked as a numeric range of the raw hash160 so the Base58 encoding
+     * only runs to confirm a candidate that falls inside of the range.
+     * An ends Query is checked on the payload modulo 58^k, and only a query longer than SuffixSet.MAX_DIGITS is
+     * confirmed against the encoded address.
+     * The encoded address is compared by the QueryMatcher of this query instead of the regular expression.
+     * @see HashRangeSet
+     * @see SuffixSet
+     * @see QueryMatcher
+     */
+    @Override
+    public boolean matches(AddressView view, GlobalNetParams netParams) {
+        if (begins && matchCase) {
+            if (!getHashRanges(getVersion(netParams)).contains(view.getHash160(compressed))) {
+                return false;
+            }
+        } else if (ends) {
+            SuffixSet suffixSet = getSuffixes();
+            if (!suffixSet.contains(SuffixSet.residueOf(view.getPayload(getVersion(netParams), compressed)))) {
+                return false;
+            }
+            if (suffixSet.isExact()) {
+                return true;
+            }
+        }
+        int version = getVersion(netParams);
+        return matcher.matches(view.getAddressChars(version, compressed), view.getAddressLength(version, compressed));
+    }
+
+    /**
+     * Determines if an address matches this query with its QueryMatcher. The pattern of this query matches the same
+     * addresses.
+     */
+    @Override
+    public boolean matches(String input) {
+        return matcher.matches(input);
+    }
+
+    /**
+     * Returns the matcher this query is compiled into. It is rebuilt whenever the query, placement or case changes.
+     * @since v1.4.0
+     */
+    public QueryMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Returns the hash160 ranges of this query for a version byte. The ranges are compiled once and kept until the
+     * version byte or the query changes.
+     * @see HashRangeSet#forBeginsQuery(String, int)
+     */
+    public HashRangeSet getHashRanges(int version) {
+        HashRangeSet ranges = hashRanges;
+        if (ranges == null || ranges.getVersion() != version) {
+            ranges = HashRangeSet.forBeginsQuery(query, version);
+            hashRanges = ranges;
+        }
+        return ranges;
+    }
+
+    /**
+     * Returns the suffixes of this query. The suffixes are compiled once and kept until the query changes.
+     * @see SuffixSet#forEndsQuery(String, boolean)
+     * @since v1.4.0
+     */
+    public SuffixSet getSuffixes() {
+        SuffixSet suffixSet = suffixes;
+        if (suffixSet == null) {
+            suffixSet = SuffixSet.forEndsQuery(query, matchCase);
+            suffixes = suffixSet;
+        }
+        return suffixSet;
+    }
+
+    /**
+     * Returns the pseudo odds of this query. An ends query sits at a fixed position of the address just like a begins
+     * query, so it has the same odds.
+     */
     public BigInteger getOdds() {
-        return Utils.getOdds(query, begins, matchCase);
+        return Utils.getOdds(query, begins || ends, matchCase);
+    }
+
+    /**
+     * Returns the exact probability that a random key matches this query on the version byte of a network. The
+     * probability is computed once and kept until the version byte or the query changes.
+     * @param netParams the GlobalNetParams to use if this Query doesn't define one.
+     * @see QueryProbability
+     * @since v1.4.0
+     */
+    @Override
+    public double getProbability(GlobalNetParams netParams) {
+        int version = getVersion(netParams);
+        Probability cached = probability;
+        if (cached == null || cached.version != version) {
+            cached = new Probability(version, QueryProbability.of(query, begins, ends, matchCase, version));
+            probability = cached;
+        }
+        return cached.value;
+    }
+
+    /**
+     * Determines if this query can match any address on the version byte of a network. A begins query can only be
+     * reached if its hash160 ranges are not empty, and no query longer than an address can be reached.
+     * @param netParams the GlobalNetParams to use if this Query doesn't define one.
+     * @since v1.4.0
+     */
+    @Override
+    public boolean isReachable(GlobalNetParams netParams) {
+        return getProbability(netParams) > 0;
     }
 
     @Override
     public int hashCode() {
         int hash = 17;
-        hash *= 23 + (begins ? 1 : 0);
-        hash *= 23 + (matchCase ? 1 : 0);
-        hash *= 23 + (compressed ? 1 : 0);
-        hash *= 23 + (findUnlimited ? 1 : 0);
-        hash *= 23 + (searchForP2SH ? 1 : 0);
-        hash *= 23 + query.hashCode();
+        hash = hash * 23 + (begins ? 1 : 0);
+        hash = hash * 23 + (ends ? 1 : 0);
+        hash = hash * 23 + (matchCase ? 1 : 0);
+        hash = hash * 23 + (compressed ? 1 : 0);
+        hash = hash * 23 + (findUnlimited ? 1 : 0);
+        hash = hash * 23 + (searchForP2SH ? 1 : 0);
+        hash = hash * 23 + query.hashCode();
         return hash;
     }
 
     @Override
     public boolean equals(Object other) {
-        return other instanceof Query && other.hashCode() == hashCode();
+        if (!(other instanceof Query)) {
+            return false;
+        }
+        Query otherQuery = (Query) other;
+        return begins == otherQuery.begins && ends == otherQuery.ends && matchCase == otherQuery.matchCase && compressed == otherQuery.compressed
+                && findUnlimited == otherQuery.findUnlimited && searchForP2SH == otherQuery.searchForP2SH
+                && query.equals(otherQuery.query);
     }
 
     private void updatePattern() {
-        pattern = Pattern.compile("^" + (begins ? "." : ".*") + (matchCase ? "" : "(?i)") + query + ".*$");
+        hashRanges = null;
+        suffixes = null;
+        probability = null;
+        orderProbability = null;
+        difficulty = getDifficulty().doubleValue();
+        matcher = QueryMatcher.of(query, begins, ends, matchCase);
+        pattern = Pattern.compile("^" + (begins ? "." : ".*") + (matchCase ? "" : "(?i)") + query + (ends ? "$" : ".*$"));
+    }
+
+    private static void checkPlacement(boolean begins, boolean ends) {
+        if (begins && ends) {
+            throw new IllegalArgumentException("A Query can not be placed at both the beginning and the end of an address.");
+        }
+    }
+
+    /**
+     * Ranks the placements from the easiest to the hardest: contains, ends, begins.
+     */
+    private int placementRank() {
+        return begins ? 2 : ends ? 1 : 0;
     }
 
     /**
      * This method compares this Query with another Query and the sorting output should represent the easiest to hardest
      * searching order on a collection of Query's (i.e., the smallest value is the easiest to find).
-     * Sorting depends on these properties in order:
-     * Query Length -> Compression -> Begins -> MatchCase
+     * Like every RegexQuery, Query's are first ordered by their probability on Bitcoin's version bytes, the more likely
+     * query being the easier one. A Query comes before any other RegexQuery of the same probability; see
+     * RegexQuery.compareTo(RegexQuery). Query's of the same probability are sorted by these properties in order:
+     * Query Length -> Compression -> Placement -> MatchCase
      * Query Length:
      *      Match: Check Compression
      *      Don't match: return difficulty comparison
      * Compression:
-     *      Match: Check Begins
+     *      Match: Check Placement
      *      Don't match: if this compression is true, return -1 since searching for compressed addresses is faster. Otherwise return 1.
-     * Begins:
+     * Placement:
      *      Match: Check MatchCase
-     *      Don't match: if this query is begins, return 1 since it is harder to find a query that begins with an expression. Otherwise return -1.
+     *      Don't match: contains is the easiest, then ends, then begins since the leading characters of an address are the least evenly spread.
      * MatchCase:
-     *      Match: return 0 since these Query's are identical in the greater sense.
+     *      Match: return the tie break comparison since these Query's are identical in the greater sense.
      *      Don't match: if this query is match case, return 1 since it is harder to find a query matching exact letter casing. Otherwise return -1.
+     * Tie Break:
+     *      Query strings, then P2SH, then findUnlimited are compared so that distinct Query's of equal difficulty can
+     *      share a sorted collection such as QueryPool.
      */
     @Override
     public int compareTo(@Nonnull RegexQuery other) {
-        if (!(other instanceof Query)) return 0;
+        if (equals(other)) return 0;
+        int probabilityDifference = Double.compare(other.orderProbability(), orderProbability());
+        if (probabilityDifference != 0) {
+            return probabilityDifference;
+        }
+        if (!(other instanceof Query)) return -1;
         Query otherQuery = (Query) other;
-        if (hashCode() == otherQuery.hashCode()) return 0;
         int lengthDifference = query.length() - otherQuery.query.length();
         if (lengthDifference == 0) {
             if (compressed == otherQuery.compressed) {
-                if (begins == otherQuery.begins) {
+                if (placementRank() == otherQuery.placementRank()) {
                     if (matchCase == otherQuery.matchCase) {
-                        return 0;
+                        return compareTieBreak(otherQuery);
                     }
                     return matchCase ? 1 : -1;
                 }
-                return begins ? 1 : -1;
+                return placementRank() - otherQuery.placementRank();
             }
             return compressed ? -1 : 1;
         } else {
-            return getDifficulty().compareTo(otherQuery.getDifficulty());
+            int difficultyDifference = Double.compare(difficulty, otherQuery.difficulty);
+            return difficultyDifference != 0 ? difficultyDifference : compareTieBreak(otherQuery);
+        }
+    }
+
+    private int compareTieBreak(Query otherQuery) {
+        int queryDifference = query.compareTo(otherQuery.query);
+        if (queryDifference != 0) {
+            return queryDifference;
+        }
+        if (searchForP2SH != otherQuery.searchForP2SH) {
+            return searchForP2SH ? 1 : -1;
         }
+        if (findUnlimited != otherQuery.findUnlimited) {
+            return findUnlimited ? 1 : -1;
+        }
+        return 0;
     }
 
     public BigInteger getDifficulty() {
-        return Utils.getOdds(query, begins, matchCase);
+        return Utils.getOdds(query, begins || ends, matchCase);
+    }
+
+    /**
+     * Returns the probability of this query on Bitcoin's version bytes, which Query's are ordered by. It is kept apart
+     * from the probability on the network of the pool, so that neither is thrown away when the other is asked for.
+     */
+    @Override
+    double orderProbability() {
+        Network network = Network.BITCOIN;
+        int version = searchForP2SH ? network.getP2SHHeader() : network.getAddressHeader();
+        Probability cached = orderProbability;
+        if (cached == null || cached.version != version) {
+            cached = new Probability(version, QueryProbability.of(query, begins, ends, matchCase, version));
+            orderProbability = cached;
+        }
+        return cached.value;
+    }
+
+    private static class Probability {
+
+        private final int version;
+        private final double value;
+
+        Probability(int version, double value) {
+            this.version = version;
+            this.value = value;
+        }
+
     }
 
     public static class QueryBuilder {
@@ -134,6 +360,7 @@ public class Query extends RegexQuery implements Comparable<RegexQuery> {
         private boolean compressed = true;
         private boolean findUnlimited = false;
         private boolean beginsWith = false;
+        private boolean endsWith = false;
         private boolean matchCase = true;
         private boolean searchForP2SH = false;
         private GlobalNetParams netParams;
@@ -194,6 +421,21 @@ public class Query extends RegexQuery implements Comparable<RegexQuery> {
             return this;
         }
 
+        /**
+         * Indicates whether the matching should be restricted to the end of an address.
+         * <br/>Example: query = test. Found = 1...test
+         * <br/>The last characters of an address are checked on its payload without encoding it, which makes an ends
+         * query as cheap to check as a begins query. An ends query can not also be a begins query. Default is set to
+         * false.
+         * @param endsWith determines whether the query should be found at the end of an address.
+         * @return the instance of this QueryBuilder.
+         * @since v1.4.0
+         */
+        public QueryBuilder ends(boolean endsWith) {
+            this.endsWith = endsWith;
+            return this;
+        }
+
         /**
          * Determines the case sensitivity when searching.
          * <br/>Set to true means that a query must match the case in which it was provided. ABC == ABC in this case.
@@ -230,6 +472,7 @@ public class Query extends RegexQuery implements Comparable<RegexQuery> {
         /**
          * Build this QueryBuilder into a Query
          * @return the Query from this QueryBuilder.
+         * @throws IllegalArgumentException if the query is set to both begins and ends.
          */
         public Query build() {
             return new Query(this);
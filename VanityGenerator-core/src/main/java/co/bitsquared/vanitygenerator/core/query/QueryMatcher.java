@@ -0,0 +1,151 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+/**
+ * QueryMatcher is the compiled form of a {@link Query}: a direct comparison of the address characters instead of the
+ * regular expression built by Query, whose leading and trailing {@code .*} make the regular expression engine scan and
+ * backtrack over the whole address.
+ * <p>A begins query is compared at offset 1, right after the leading character, an ends query is compared against the
+ * last characters of the address, and a contains query is found with a Boyer-Moore-Horspool scan. A query that ignores
+ * case is folded to lower case once, and each address character is folded through a 128 entry table; a query that
+ * matches case uses an identity table, so both are compared by the same loop. Like {@code (?i)} without
+ * {@link java.util.regex.Pattern#UNICODE_CASE}, only ASCII letters are folded.
+ * <p>A QueryMatcher is immutable and can be shared between threads.
+ *
+ * @see Query#getMatcher()
+ * @since v1.4.0
+ */
+public abstract class QueryMatcher {
+
+    private static final int ASCII = 128;
+    private static final char[] IDENTITY = new char[ASCII];
+    private static final char[] FOLD = new char[ASCII];
+
+    static {
+        for (char c = 0; c < ASCII; c++) {
+            IDENTITY[c] = c;
+            FOLD[c] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+    }
+
+    final char[] query;
+    final char[] table;
+
+    private QueryMatcher(String query, boolean matchCase) {
+        this.table = matchCase ? IDENTITY : FOLD;
+        this.query = new char[query.length()];
+        for (int i = 0; i < query.length(); i++) {
+            this.query[i] = fold(query.charAt(i));
+        }
+    }
+
+    /**
+     * Compiles a query into a matcher for its placement.
+     * @param query the plain Base58 query.
+     * @param begins whether the query is placed right after the leading character.
+     * @param ends whether the query is placed at the end of the address.
+     * @param matchCase whether the case of each letter must match.
+     */
+    public static QueryMatcher of(String query, boolean begins, boolean ends, boolean matchCase) {
+        if (begins) {
+            return new Begins(query, matchCase);
+        }
+        return ends ? new Ends(query, matchCase) : new Contains(query, matchCase);
+    }
+
+    /**
+     * Determines if an address matches the query.
+     * @param address a buffer holding the address.
+     * @param length the length of the address in the buffer.
+     */
+    public abstract boolean matches(char[] address, int length);
+
+    public boolean matches(String address) {
+        return matches(address.toCharArray(), address.length());
+    }
+
+    final char fold(char c) {
+        return c < ASCII ? table[c] : c;
+    }
+
+    /**
+     * Compares the query against the address starting at an offset.
+     */
+    final boolean regionMatches(char[] address, int offset) {
+        for (int i = 0; i < query.length; i++) {
+            if (fold(address[offset + i]) != query[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Begins extends QueryMatcher {
+
+        Begins(String query, boolean matchCase) {
+            super(query, matchCase);
+        }
+
+        @Override
+        public boolean matches(char[] address, int length) {
+            return length > query.length && regionMatches(address, 1);
+        }
+
+    }
+
+    private static final class Ends extends QueryMatcher {
+
+        Ends(String query, boolean matchCase) {
+            super(query, matchCase);
+        }
+
+        @Override
+        public boolean matches(char[] address, int length) {
+            return length >= query.length && regionMatches(address, length - query.length);
+        }
+
+    }
+
+    /**
+     * Contains runs a Boyer-Moore-Horspool scan: the query is compared from its last character, and on a mismatch the
+     * scan skips ahead by the distance from the last occurrence of the address character in the query to its end.
+     */
+    private static final class Contains extends QueryMatcher {
+
+        private final int[] shifts = new int[ASCII];
+
+        Contains(String query, boolean matchCase) {
+            super(query, matchCase);
+            int last = this.query.length - 1;
+            for (int c = 0; c < ASCII; c++) {
+                shifts[c] = this.query.length;
+            }
+            for (int i = 0; i < last; i++) {
+                if (this.query[i] < ASCII) {
+                    shifts[this.query[i]] = last - i;
+                }
+            }
+        }
+
+        @Override
+        public boolean matches(char[] address, int length) {
+            int last = query.length - 1;
+            if (last < 0) {
+                return true;
+            }
+            for (int end = last; end < length; ) {
+                int i = last;
+                while (fold(address[end - last + i]) == query[i]) {
+                    if (i == 0) {
+                        return true;
+                    }
+                    i--;
+                }
+                char c = fold(address[end]);
+                end += c < ASCII ? shifts[c] : query.length;
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -1,33 +1,84 @@
 package co.bitsquared.vanitygenerator.core.query;
 
 import co.bitsquared.vanitygenerator.core.exceptions.IllegalDecimalVersionException;
+import co.bitsquared.vanitygenerator.core.exceptions.UnreachableQueryException;
 import co.bitsquared.vanitygenerator.core.listeners.QueryPoolListener;
 import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
 import co.bitsquared.vanitygenerator.core.network.Network;
 import co.bitsquared.vanitygenerator.core.search.PoolSearch;
+import co.bitsquared.vanitygenerator.core.search.SearchSession;
 import co.bitsquared.vanitygenerator.core.tools.Utils;
 import org.bitcoinj.core.ECKey;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
- * QueryPool is collection of Query's defined by the user that can be accessed anywhere by calling getInstance().
+ * QueryPool is collection of Query's defined by the user that can be accessed anywhere by calling getInstance(), or
+ * that is owned by one search when created with newInstance(Network).
  * General usage is to create threads that rely on the Query's within QueryPool and to add / update / delete
  * accordingly. RegexQuery's are not included in this class since each RQ can contain multiple sub-queries which cannot
  * be easily handled and removed when a match is found.
+ * <p>Every change to the queries increments the epoch of the pool. Searching threads compare the epoch once per batch to
+ * notice changes, instead of being notified. QueryPoolListeners are notified in order on a separate thread.
+ * <p>Queries are kept sorted by difficulty, by expected amount of keys until found, and queries of type Query also by
+ * length, so the easiest, hardest, quickest, shortest and longest queries are all found in O(log n). Since the sorted
+ * sets and the compiled indexes depend on what each query matches, a query can not be changed while it is in a pool;
+ * it throws an IllegalStateException instead. The pool only changes the network of its queries itself.
  * @see PoolSearch to see usage of QueryPool.
  */
 public class QueryPool {
 
     private Network network;
     private final TreeSet<RegexQuery> queries;
+    private final TreeSet<Query> queriesByLength = new TreeSet<Query>(LENGTH_ORDER);
+    private final TreeSet<RegexQuery> queriesByExpectedKeys = new TreeSet<RegexQuery>(new Comparator<RegexQuery>() {
+        @Override
+        public int compare(RegexQuery first, RegexQuery second) {
+            int difference = Double.compare(first.getExpectedKeys(orderParams), second.getExpectedKeys(orderParams));
+            return difference != 0 ? difference : first.compareTo(second);
+        }
+    });
     private GlobalNetParams netParams;
-    private final ArrayList<QueryPoolListener> listeners = new ArrayList<QueryPoolListener>();
+    private GlobalNetParams orderParams;
+    private final CopyOnWriteArrayList<QueryPoolListener> listeners = new CopyOnWriteArrayList<QueryPoolListener>();
+    private final AtomicReference<QuerySnapshot> snapshot;
+    private final ExecutorService listenerExecutor = new ThreadPoolExecutor(0, 1, 1L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "VanityGenerator-pool-listener");
+                }
+            });
+    private long epoch = 0;
+    private boolean compiledRegex = false;
+    private SearchSession defaultSession;
 
     private static QueryPool instance;
 
+    /**
+     * Orders queries by length, then by their natural order so that queries of the same length are not merged.
+     */
+    private static final Comparator<Query> LENGTH_ORDER = new Comparator<Query>() {
+        @Override
+        public int compare(Query first, Query second) {
+            int lengthDifference = first.getPlainQuery().length() - second.getPlainQuery().length();
+            return lengthDifference != 0 ? lengthDifference : first.compareTo(second);
+        }
+    };
+
     /**
      * Tries to return the instance of QueryPool. If it doesn't exist, an exception is thrown.
      * @return instance of QueryPool.
@@ -54,25 +105,84 @@ public class QueryPool {
         return instance;
     }
 
+    /**
+     * Creates a QueryPool that is independent from the instance returned by getInstance(). Each SearchSession can own
+     * its own pool this way.
+     * @param network - The network to create the QueryPool with.
+     * @throws NullPointerException if network is null.
+     * @since v1.4.0
+     */
+    public static QueryPool newInstance(Network network) {
+        Utils.checkNotNull(network, "Network cannot be null.");
+        return new QueryPool(network);
+    }
+
     private QueryPool(Network network) {
         queries = new TreeSet<RegexQuery>();
-        netParams = new GlobalNetParams(network);
+        netParams = network.toGlobalNetParams();
+        orderParams = netParams;
+        snapshot = new AtomicReference<QuerySnapshot>(new QuerySnapshot(queries, epoch, compiledRegex, null));
         this.network = network;
     }
 
     private QueryPool(int publicKeyHeader, int p2shHeader, int privateKeyHeader) throws IllegalDecimalVersionException {
         queries = new TreeSet<RegexQuery>();
-        netParams = new GlobalNetParams(publicKeyHeader, p2shHeader, privateKeyHeader);
+        netParams = GlobalNetParams.get(publicKeyHeader, privateKeyHeader, p2shHeader);
+        orderParams = netParams;
+        snapshot = new AtomicReference<QuerySnapshot>(new QuerySnapshot(queries, epoch, compiledRegex, null));
     }
 
+    /**
+     * Adds a query to the pool if it is not already in it.
+     * @throws UnreachableQueryException if the query can never match an address on the network of this pool, since
+     * searching for it would never finish.
+     */
     public synchronized <T extends RegexQuery> void addQuery(T query) {
         synchronized (queries) {
             if (queries.contains(query)) return;
+            checkReachable(query);
             queries.add(query);
+            query.addedToPool();
+            queriesByExpectedKeys.add(query);
+            if (query instanceof Query) {
+                queriesByLength.add((Query) query);
+            }
+            publishSnapshot();
             updateListenersAdded(query);
         }
     }
 
+    /**
+     * Adds every query of a collection that is not already in the pool. The pool changes once for the whole
+     * collection, so adding many queries this way is much cheaper than adding them one by one.
+     * @throws UnreachableQueryException if one of the queries can never match an address on the network of this pool,
+     * in which case none of them are added.
+     * @since v1.4.0
+     */
+    public synchronized void addQueries(Collection<? extends RegexQuery> queries) {
+        synchronized (this.queries) {
+            for (RegexQuery query: queries) {
+                checkReachable(query);
+            }
+            List<RegexQuery> added = new ArrayList<RegexQuery>(queries.size());
+            for (RegexQuery query: queries) {
+                if (this.queries.add(query)) {
+                    query.addedToPool();
+                    queriesByExpectedKeys.add(query);
+                    if (query instanceof Query) {
+                        queriesByLength.add((Query) query);
+                    }
+                    added.add(query);
+                }
+            }
+            if (added.isEmpty()) return;
+            publishSnapshot();
+            for (RegexQuery query: added) {
+                updateListenersAdded(query);
+            }
+        }
+    }
+
     /**
      * Removes a query based off of its original hashcode.
      * @since v1.0.0
@@ -95,21 +205,51 @@ public class QueryPool {
      * @since v1.0.0
      */
     public synchronized void removeQuery(RegexQuery query) {
-        if (query == null) return;
+        tryRemoveQuery(query);
+    }
+
+    /**
+     * Removes a query from the pool and tells whether it was there. When several threads find the same query, only the
+     * one removing it gets true.
+     * @return true if the query was in the pool.
+     * @since v1.4.0
+     */
+    public synchronized boolean tryRemoveQuery(RegexQuery query) {
+        if (query == null) return false;
         synchronized (queries) {
-            if (queries.remove(query)) {
-                updateListenersRemoved(query);
+            // The pool holds its own instance, which may not be the one passed in.
+            RegexQuery pooled = queries.ceiling(query);
+            if (pooled == null || pooled.compareTo(query) != 0) {
+                return false;
             }
+            remove(pooled);
+            publishSnapshot();
+            updateListenersRemoved(pooled);
+            return true;
+        }
+    }
+
+    /**
+     * Removes a query this pool holds from every sorted set. Must be called while holding the queries lock.
+     */
+    private void remove(RegexQuery pooled) {
+        queries.remove(pooled);
+        queriesByExpectedKeys.remove(pooled);
+        if (pooled instanceof Query) {
+            queriesByLength.remove(pooled);
         }
+        pooled.removedFromPool();
     }
 
     /**
      * Updates an old query based on the original hashcode.
+     * @throws UnreachableQueryException if the new query can never match an address on the network of this pool.
      * @since v1.0.0
      */
     public synchronized void updateQuery(RegexQuery newQuery, int originalHashCode) {
         if (newQuery == null || newQuery.hashCode() == originalHashCode || contains(newQuery)) return;
         synchronized (queries) {
+            checkReachable(newQuery);
             RegexQuery queryToRemove = null;
             for (RegexQuery query: queries) {
                 if (query.hashCode() == originalHashCode) {
@@ -120,6 +260,40 @@ public class QueryPool {
             if (queryToRemove == null) return;
             queries.remove(queryToRemove);
             queries.add(newQuery);
+            queryToRemove.removedFromPool();
+            newQuery.addedToPool();
+            queriesByExpectedKeys.remove(queryToRemove);
+            queriesByExpectedKeys.add(newQuery);
+            if (queryToRemove instanceof Query) {
+                queriesByLength.remove(queryToRemove);
+            }
+            if (newQuery instanceof Query) {
+                queriesByLength.add((Query) newQuery);
+            }
+            publishSnapshot();
+        }
+    }
+
+    private void checkReachable(RegexQuery query) {
+        if (!query.isReachable(orderParams)) {
+            throw new UnreachableQueryException(query.getPattern().pattern(), query.getVersion(orderParams));
+        }
+    }
+
+    /**
+     * Removes the queries that can never match an address on the current network of this pool, since searching for
+     * them would never finish. Listeners are told each one was removed. Must be called while holding the queries lock.
+     */
+    private void removeUnreachable() {
+        List<RegexQuery> unreachable = new ArrayList<RegexQuery>();
+        for (RegexQuery query: queries) {
+            if (!query.isReachable(orderParams)) {
+                unreachable.add(query);
+            }
+        }
+        for (RegexQuery query: unreachable) {
+            remove(query);
+            updateListenersRemoved(query);
         }
     }
 
@@ -148,12 +322,13 @@ public class QueryPool {
      * @since v1.0.0
      */
     public boolean containsQueries() {
-        return getAmountOfQueries() > 0;
+        return snapshot.get().size() > 0;
     }
 
     /**
      * When a user decides to change the Network they are searching on, all of the queries need to be updated with
-     * the new updated Network
+     * the new updated Network. Queries that can never match an address on the new Network are removed from the pool,
+     * and listeners are told through QueryPoolListener.onQueryRemoved(RegexQuery).
      * @param network - Network that is going to replace the old Network.
      * @since v1.0.0
      */
@@ -161,32 +336,54 @@ public class QueryPool {
         if (this.network != network) {
             this.network = network;
             synchronized (queries) {
+                netParams = network.toGlobalNetParams();
                 for (RegexQuery query: queries) {
-                    query.updateNetwork(network);
+                    query.updateNetworkFromPool(network);
                 }
+                reorderByExpectedKeys(network.toGlobalNetParams());
+                removeUnreachable();
+                publishSnapshot();
             }
         }
     }
 
     /**
      * When a user decides to change the GlobalNetParams they are searching on, all of the queries need to be updated
-     * with the new GNP. This method is used over updateNetwork(Network) when the networks module is excluded.
+     * with the new GNP. This method is used over updateNetwork(Network) when the networks module is excluded. Queries
+     * that can never match an address on the new GNP are removed from the pool, and listeners are told through
+     * QueryPoolListener.onQueryRemoved(RegexQuery).
      * @param netParams - GNP that is going to replace the old GNP.
      * @deprecated since v1.3.0. Just use updateNetwork(Network)
      */
     public void updateNetwork(GlobalNetParams netParams) {
         if (this.netParams.getAddressHeader() != netParams.getAddressHeader()) {
-            this.netParams = netParams;
             synchronized (queries) {
+                this.netParams = netParams;
                 for (RegexQuery query: queries) {
                     if (query instanceof NetworkQuery) {
-                        query.updateNetParams(netParams);
+                        query.updateNetParamsFromPool(netParams);
                     }
                 }
+                reorderByExpectedKeys(netParams);
+                removeUnreachable();
+                publishSnapshot();
             }
         }
     }
 
+    /**
+     * Returns the SearchSession shared by every PoolSearch of this pool that was not given a session of its own. It is
+     * created the first time it is needed and belongs to this pool, so it lives exactly as long as the pool does.
+     * @see SearchSession#getDefault(QueryPool)
+     * @since v1.4.0
+     */
+    public synchronized SearchSession getDefaultSession() {
+        if (defaultSession == null) {
+            defaultSession = new SearchSession(this);
+        }
+        return defaultSession;
+    }
+
     /**
      * Returns the specified network to search on.
      * @since v1.0.0
@@ -200,14 +397,89 @@ public class QueryPool {
      * @since v1.0.0
      */
     public RegexQuery matches(ECKey key, GlobalNetParams netParams) {
+        AddressView view = AddressView.acquire(key);
+        try {
+            return matches(view, netParams);
+        } finally {
+            AddressView.release(view);
+        }
+    }
+
+    /**
+     * Determines if a candidate matches any query in the pool. The hashes and addresses of the candidate are computed
+     * at most once and shared across every query. If so, the matched query is returned. Otherwise, null is returned.
+     * This does not lock the pool; the candidate is matched against the latest published snapshot of the queries.
+     * @since v1.4.0
+     */
+    public RegexQuery matches(AddressView view, GlobalNetParams netParams) {
+        CompiledPool compiledPool = snapshot.get().getCompiled(netParams);
+        if (compiledPool == null) {
+            compiledPool = compile(netParams);
+        }
+        return compiledPool.matches(view, netParams);
+    }
+
+    /**
+     * Compiles the current snapshot for a GlobalNetParams the first time the snapshot is matched with it. This is done
+     * once under the queries lock, so searching threads wait for the same compiled pool instead of each compiling their
+     * own.
+     */
+    private CompiledPool compile(GlobalNetParams netParams) {
         synchronized (queries) {
-            for (RegexQuery query: queries) {
-                if (query.matches(key, netParams)) {
-                    return query;
-                }
+            QuerySnapshot current = snapshot.get();
+            CompiledPool compiledPool = current.getCompiled(netParams);
+            if (compiledPool == null) {
+                current = current.compile(netParams);
+                snapshot.set(current);
+                compiledPool = current.getCompiled(netParams);
+            }
+            return compiledPool;
+        }
+    }
+
+    /**
+     * Publishes an immutable snapshot of the queries for searching threads to match against. Searching threads never
+     * lock the pool, except to compile a snapshot the first time it is matched. Compiling waits until then, so a pool
+     * that changes many times in a row, such as while queries are being added, is compiled once instead of once per
+     * change. Begins queries are looked up with one binary search over their hash160 intervals and contains queries
+     * with one Aho-Corasick scan per address, regardless of how many there are. Must be called while holding the
+     * queries lock.
+     */
+    private void publishSnapshot() {
+        snapshot.set(new QuerySnapshot(queries, ++epoch, compiledRegex, snapshot.get()));
+    }
+
+    /**
+     * Sets whether the RegexQuery's of this pool are compiled into DFAs. In compiled mode, every pattern RegexParser
+     * supports is compiled, along with the other patterns of the same address, into one deterministic automaton that
+     * matches an address with one table lookup per character. Matching then costs the same no matter how many
+     * patterns there are and never backtracks. Patterns that are not supported are still matched with
+     * java.util.regex. Default is set to false, since compiling takes time and memory every time the pool changes.
+     * @see co.bitsquared.vanitygenerator.core.regex.RegexDfa
+     * @since v1.4.0
+     */
+    public void setCompiledRegex(boolean compiledRegex) {
+        synchronized (queries) {
+            if (this.compiledRegex != compiledRegex) {
+                this.compiledRegex = compiledRegex;
+                publishSnapshot();
             }
         }
-        return null;
+    }
+
+    public boolean isCompiledRegex() {
+        synchronized (queries) {
+            return compiledRegex;
+        }
+    }
+
+    /**
+     * Returns the epoch of the pool, which changes every time a query is added, removed or updated. Reading the epoch
+     * does not lock the pool and is cheap enough to be done once per batch of candidates.
+     * @since v1.4.0
+     */
+    public long getEpoch() {
+        return snapshot.get().getEpoch();
     }
 
     /**
@@ -236,26 +508,30 @@ public class QueryPool {
         }
     }
 
+    /**
+     * Returns the query expected to be found after the fewest keys if there is one. Otherwise, returns null. Queries
+     * whose probability is not known come last.
+     * @see RegexQuery#getExpectedKeys(GlobalNetParams)
+     * @since v1.4.0
+     */
+    public RegexQuery getQuickestQuery() {
+        synchronized (queries) {
+            if (queriesByExpectedKeys.isEmpty()) {
+                return null;
+            }
+            return queriesByExpectedKeys.first();
+        }
+    }
+
     /**
      * Returns the shortest query in terms of length of type Query.
      */
     public RegexQuery getShortestQuery() {
         synchronized (queries) {
-            if (queries.isEmpty()) {
+            if (queriesByLength.isEmpty()) {
                 return null;
             }
-            RegexQuery shortest = null;
-            int shortestLength = Integer.MAX_VALUE, tempLength;
-            for (RegexQuery query: queries) {
-                if (query instanceof Query) {
-                    tempLength = ((Query) query).getPlainQuery().length();
-                    if (tempLength < shortestLength) {
-                        shortest = query;
-                        shortestLength = tempLength;
-                    }
-                }
-            }
-            return shortest;
+            return queriesByLength.first();
         }
     }
 
@@ -264,36 +540,89 @@ public class QueryPool {
      */
     public RegexQuery getLongestQuery() {
         synchronized (queries) {
-            if (queries.isEmpty()) {
+            if (queriesByLength.isEmpty()) {
                 return null;
             }
-            RegexQuery longest = null;
-            int longestLength = 0, tempLength;
-            for (RegexQuery query: queries) {
-                if (query instanceof Query) {
-                    tempLength = ((Query) query).getPlainQuery().length();
-                    if (tempLength > longestLength) {
-                        longest = query;
-                        longestLength = tempLength;
-                    }
-                }
-            }
-            return longest;
+            return queriesByLength.last();
+        }
+    }
+
+    /**
+     * Returns up to limit queries from easiest to hardest.
+     * @since v1.4.0
+     */
+    public List<RegexQuery> getEasiestQueries(int limit) {
+        synchronized (queries) {
+            return firstOf(queries.iterator(), limit);
+        }
+    }
+
+    /**
+     * Returns up to limit queries from hardest to easiest.
+     * @since v1.4.0
+     */
+    public List<RegexQuery> getHardestQueries(int limit) {
+        synchronized (queries) {
+            return firstOf(queries.descendingIterator(), limit);
+        }
+    }
+
+    /**
+     * Returns up to limit queries from the fewest to the most expected keys until found.
+     * @since v1.4.0
+     */
+    public List<RegexQuery> getQuickestQueries(int limit) {
+        synchronized (queries) {
+            return firstOf(queriesByExpectedKeys.iterator(), limit);
+        }
+    }
+
+    /**
+     * Returns up to limit queries of type Query from shortest to longest.
+     * @since v1.4.0
+     */
+    public List<RegexQuery> getShortestQueries(int limit) {
+        synchronized (queries) {
+            return firstOf(queriesByLength.iterator(), limit);
+        }
+    }
+
+    /**
+     * Returns up to limit queries of type Query from longest to shortest.
+     * @since v1.4.0
+     */
+    public List<RegexQuery> getLongestQueries(int limit) {
+        synchronized (queries) {
+            return firstOf(queriesByLength.descendingIterator(), limit);
+        }
+    }
+
+    /**
+     * Sorts the queries again by their expected amount of keys on a new network, since probabilities depend on the
+     * version byte. Must be called while holding the queries lock.
+     */
+    private void reorderByExpectedKeys(GlobalNetParams orderParams) {
+        queriesByExpectedKeys.clear();
+        this.orderParams = orderParams;
+        queriesByExpectedKeys.addAll(queries);
+    }
+
+    private static List<RegexQuery> firstOf(Iterator<? extends RegexQuery> iterator, int limit) {
+        List<RegexQuery> first = new ArrayList<RegexQuery>(Math.max(0, limit));
+        while (first.size() < limit && iterator.hasNext()) {
+            first.add(iterator.next());
         }
+        return first;
     }
 
     public void registerListener(QueryPoolListener listener) {
-        synchronized (listeners) {
-            if (listener != null && !listeners.contains(listener)) {
-                listeners.add(listener);
-            }
+        if (listener != null) {
+            listeners.addIfAbsent(listener);
         }
     }
 
     public void unregisterListener(QueryPoolListener listener) {
-        synchronized (listeners) {
-            listeners.remove(listener);
-        }
+        listeners.remove(listener);
     }
 
     private void updateListenersAdded(final RegexQuery query) {
@@ -320,8 +649,12 @@ public class QueryPool {
         }
     }
 
+    /**
+     * Runs a listener callback on the listener thread of this pool, so that callbacks neither hold the pool's locks nor
+     * block the thread that changed the pool. Callbacks run in the order the changes were made.
+     */
     private void runOnThread(Runnable runnable) {
-        new Thread(runnable).run();
+        listenerExecutor.execute(runnable);
     }
 
 }
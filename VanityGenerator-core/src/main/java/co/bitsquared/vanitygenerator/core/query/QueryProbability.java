@@ -0,0 +1,153 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.tools.Base58Encoder;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * QueryProbability computes the probability that a random key produces an address matching a {@link Query} on a
+ * version byte. Unlike {@link Utils#getOdds(String, boolean, boolean)} this accounts for the uneven distribution of the
+ * leading characters of an address, which is where most of the difference between two queries of the same length lies.
+ * <p>A begins query is the exact width of its {@link HashRangeSet} over the 2^160 possible hashes. A contains query is
+ * a plain regular expression, so its probability is computed exactly by {@link RegexProbability}, which accounts for
+ * the leading characters, the length of each address and overlapping occurrences of the query. Should its DFA not be
+ * built, the query is combined over the positions it can start at instead: right after the leading character it is
+ * the begins probability, and further down the address the digits are uniform so each position matches with
+ * 58^-length. Positions are then treated as independent, so the query is missed only if it is missed at every one of
+ * them, and the misses are multiplied in log space so that the probability of a long query does not round to 0.
+ * <p>An ends query is the payload modulo 58^length, and since the checksum makes the low digits of the payload uniform
+ * it matches with 58^-length, unless it is longer than every address.
+ * <p>The length of the longest address of each version byte is kept in a table that is filled in the first time a
+ * version byte is used. Since building a DFA and summing its blocks costs far more than the other two kinds, the
+ * probabilities of contains queries are cached by query, case and version byte, so that queries built again from the
+ * same string, or moved back to a network they were on, don't compute it again.
+ * <p>Ignoring case only changes the leading character's distribution for the first character of a begins query; every other
+ * character multiplies the probability by its amount of Base58 case variants.
+ *
+ * @see Query#getProbability(co.bitsquared.vanitygenerator.core.network.GlobalNetParams)
+ * @since v1.4.0
+ */
+final class QueryProbability {
+
+    private static final AddressShape[] SHAPES = new AddressShape[256];
+    private static final ConcurrentHashMap<String, Double> CONTAINS = new ConcurrentHashMap<String, Double>();
+
+    private QueryProbability() {
+    }
+
+    /**
+     * Returns the probability that a random hash160 on a version byte gives an address matching a query.
+     */
+    static double of(String query, boolean begins, boolean ends, boolean matchCase, int version) {
+        if (begins) {
+            return beginsProbability(query, matchCase, version);
+        }
+        return ends ? endsProbability(query, matchCase, version) : containsProbability(query, matchCase, version);
+    }
+
+    private static double beginsProbability(String query, boolean matchCase, int version) {
+        if (query.isEmpty()) {
+            return 1;
+        }
+        if (matchCase) {
+            return HashRangeSet.forBeginsQuery(query, version).getProbability();
+        }
+        String rest = query.substring(1);
+        double probability = 0;
+        for (char first: caseVariants(query.charAt(0))) {
+            probability += HashRangeSet.forBeginsQuery(first + rest, version).getProbability();
+        }
+        return Math.min(1, probability * caseVariantCount(rest));
+    }
+
+    private static double endsProbability(String query, boolean matchCase, int version) {
+        if (query.length() > shapeOf(version).getLength()) {
+            return 0;
+        }
+        double probability = Math.pow(Utils.BASE, -query.length());
+        return matchCase ? probability : Math.min(1, probability * caseVariantCount(query));
+    }
+
+    private static double containsProbability(String query, boolean matchCase, int version) {
+        if (query.isEmpty()) {
+            return 1;
+        }
+        String key = (matchCase ? "c" : "i") + version + ':' + query;
+        Double cached = CONTAINS.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        double exact = RegexProbability.of(Pattern.compile(query, matchCase ? 0 : Pattern.CASE_INSENSITIVE), version);
+        if (exact != RegexProbability.UNKNOWN) {
+            CONTAINS.put(key, exact);
+            return exact;
+        }
+        AddressShape shape = shapeOf(version);
+        double logMissed = Math.log1p(-beginsProbability(query, matchCase, version));
+        int laterPositions = shape.getLength() - 1 - query.length();
+        if (laterPositions > 0) {
+            double perPosition = Math.pow(Utils.BASE, -query.length());
+            if (!matchCase) {
+                perPosition *= caseVariantCount(query);
+            }
+            logMissed += laterPositions * Math.log1p(-Math.min(1, perPosition));
+        }
+        return -Math.expm1(logMissed);
+    }
+
+    private static AddressShape shapeOf(int version) {
+        AddressShape shape = SHAPES[version];
+        if (shape == null) {
+            shape = new AddressShape(version);
+            SHAPES[version] = shape;
+        }
+        return shape;
+    }
+
+    /**
+     * Returns the Base58 characters equal to c when case is ignored. Some letters such as 'i', 'L' and 'o' have only one
+     * case in Base58.
+     */
+    static char[] caseVariants(char c) {
+        char other = Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c);
+        if (other != c && Utils.ALPHABET.indexOf(other) >= 0) {
+            return new char[] {c, other};
+        }
+        return new char[] {c};
+    }
+
+    private static double caseVariantCount(String query) {
+        double count = 1;
+        for (int i = 0; i < query.length(); i++) {
+            count *= caseVariants(query.charAt(i)).length;
+        }
+        return count;
+    }
+
+    /**
+     * AddressShape holds what every address on one version byte has in common: the length of the longest one. It is
+     * immutable, so a table entry can be shared between threads once filled in.
+     */
+    private static final class AddressShape {
+
+        private final int length;
+
+        AddressShape(int version) {
+            byte[] hash = new byte[Base58Encoder.HASH_LENGTH];
+            Arrays.fill(hash, (byte) 0xff);
+            length = new Base58Encoder().encode(version, hash, 0, new char[Base58Encoder.MAX_ADDRESS_LENGTH]);
+        }
+
+        /**
+         * Returns the length of the longest address on this version byte.
+         */
+        int getLength() {
+            return length;
+        }
+
+    }
+
+}
@@ -0,0 +1,121 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * QuerySnapshot is an immutable copy of the queries in a {@link QueryPool} at one point in time. QueryPool publishes a
+ * new snapshot every time a query is added, removed or updated, and searching threads match against the latest
+ * snapshot without taking any lock. Every published snapshot has a higher epoch than the one it replaced, which lets
+ * searching threads notice that the pool changed with a single read.
+ * <p>The queries are compiled into a {@link CompiledPool} once per GlobalNetParams they are matched with. QueryPool
+ * compiles the current snapshot the first time it is matched with a GlobalNetParams, so snapshots that are replaced
+ * before anything matches them are never compiled. Since a snapshot is immutable, compiling returns a new
+ * snapshot that also holds the compiled pool. A snapshot remembers the compiled pools of the snapshot it replaced, so
+ * compiling it reuses whatever did not change between the two, such as the DFAs of unchanged regular expressions.
+ *
+ * @since v1.4.0
+ */
+class QuerySnapshot {
+
+    private final RegexQuery[] queries;
+    private final long epoch;
+    private final boolean compiledRegex;
+    private final int[] compiledKeys;
+    private final CompiledPool[] compiledPools;
+    private final int[] previousKeys;
+    private final CompiledPool[] previousPools;
+
+    /**
+     * @param compiledRegex whether the compiled pools of this snapshot compile regular expressions into DFAs.
+     * @param previous the snapshot this one replaces, or null if there is none.
+     */
+    QuerySnapshot(Collection<RegexQuery> queries, long epoch, boolean compiledRegex, QuerySnapshot previous) {
+        this.queries = queries.toArray(new RegexQuery[queries.size()]);
+        this.epoch = epoch;
+        this.compiledRegex = compiledRegex;
+        compiledKeys = new int[0];
+        compiledPools = new CompiledPool[0];
+        if (previous == null) {
+            previousKeys = new int[0];
+            previousPools = new CompiledPool[0];
+            return;
+        }
+        // The latest compiled pool for every key, whether the previous snapshot compiled it or inherited it.
+        int[] keys = Arrays.copyOf(previous.compiledKeys, previous.compiledKeys.length + previous.previousKeys.length);
+        CompiledPool[] pools = Arrays.copyOf(previous.compiledPools, keys.length);
+        int count = previous.compiledKeys.length;
+        for (int i = 0; i < previous.previousKeys.length; i++) {
+            if (previous.getCompiled(previous.previousKeys[i]) == null) {
+                keys[count] = previous.previousKeys[i];
+                pools[count++] = previous.previousPools[i];
+            }
+        }
+        previousKeys = Arrays.copyOf(keys, count);
+        previousPools = Arrays.copyOf(pools, count);
+    }
+
+    private QuerySnapshot(QuerySnapshot snapshot, int[] compiledKeys, CompiledPool[] compiledPools) {
+        queries = snapshot.queries;
+        epoch = snapshot.epoch;
+        compiledRegex = snapshot.compiledRegex;
+        previousKeys = snapshot.previousKeys;
+        previousPools = snapshot.previousPools;
+        this.compiledKeys = compiledKeys;
+        this.compiledPools = compiledPools;
+    }
+
+    /**
+     * Returns the compiled pool for a GlobalNetParams, or null if this snapshot has not been compiled for it yet.
+     */
+    CompiledPool getCompiled(GlobalNetParams netParams) {
+        return getCompiled(keyOf(netParams));
+    }
+
+    private CompiledPool getCompiled(int key) {
+        for (int i = 0; i < compiledKeys.length; i++) {
+            if (compiledKeys[i] == key) {
+                return compiledPools[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compiles the queries of this snapshot for a GlobalNetParams.
+     * @return a snapshot holding the same queries along with the new compiled pool.
+     */
+    QuerySnapshot compile(GlobalNetParams netParams) {
+        int key = keyOf(netParams);
+        CompiledPool previous = null;
+        for (int i = 0; i < previousKeys.length; i++) {
+            if (previousKeys[i] == key) {
+                previous = previousPools[i];
+            }
+        }
+        CompiledPool compiledPool = CompiledPool.build(Arrays.asList(queries), netParams, compiledRegex, previous);
+        int[] keys = Arrays.copyOf(compiledKeys, compiledKeys.length + 1);
+        CompiledPool[] pools = Arrays.copyOf(compiledPools, compiledPools.length + 1);
+        keys[keys.length - 1] = key;
+        pools[pools.length - 1] = compiledPool;
+        return new QuerySnapshot(this, keys, pools);
+    }
+
+    /**
+     * Returns the amount of queries in this snapshot.
+     */
+    int size() {
+        return queries.length;
+    }
+
+    long getEpoch() {
+        return epoch;
+    }
+
+    private static int keyOf(GlobalNetParams netParams) {
+        return (netParams.getAddressHeader() << 8) | netParams.getP2SHHeader();
+    }
+
+}
@@ -0,0 +1,320 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.exceptions.UnsupportedPatternException;
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.regex.RegexDfa;
+import co.bitsquared.vanitygenerator.core.regex.RegexNode;
+import co.bitsquared.vanitygenerator.core.regex.RegexParser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * RegexIndex holds the RegexQuery's of a pool that are compiled into {@link RegexDfa}s. Queries are grouped by the
+ * address they are matched against (version byte and compression) like in {@link ContainsIndex}, and the patterns of
+ * each group are compiled into one union DFA. A group whose DFA would grow past MAX_STATES is split in halves until
+ * every part fits; a pattern that does not fit on its own, or that RegexParser does not support, is left out of the
+ * index and matched with java.util.regex instead.
+ * <p>A RegexIndex is immutable once built and is rebuilt by {@link QueryPool} whenever the pool changes. Building the
+ * DFAs is the expensive part, so a rebuild keeps every DFA of the index it replaces whose queries are all still in the
+ * group, and only compiles the queries that are new or whose DFA lost a query. To keep the amount of DFAs per group
+ * logarithmic, the new queries take the smallest kept DFAs with them until those are larger than they are, like the
+ * carry of a binary counter. Parts that are known not to fit are split right away instead of being compiled again.
+ * <p>Within a group, the DFAs are checked in the order of their first query in the pool.
+ *
+ * @see QueryPool#setCompiledRegex(boolean)
+ * @since v1.4.0
+ */
+class RegexIndex {
+
+    static final int MAX_STATES = 4096;
+
+    private final Group[] groups;
+    private final Set<Part> tooLarge;
+
+    private RegexIndex(Group[] groups, Set<Part> tooLarge) {
+        this.groups = groups;
+        this.tooLarge = tooLarge;
+    }
+
+    /**
+     * Builds an index from queries.
+     * @param queries queries that are accepted by isIndexable(RegexQuery).
+     * @param netParams the GlobalNetParams used for queries that don't define their own.
+     * @param rejected receives the queries that could not be compiled.
+     * @param previous the index this one replaces, whose unchanged DFAs are reused, or null if there is none.
+     */
+    static RegexIndex build(Collection<RegexQuery> queries, GlobalNetParams netParams, List<RegexQuery> rejected,
+                            RegexIndex previous) {
+        Map<RegexQuery, Group> previousGroups = new IdentityHashMap<RegexQuery, Group>();
+        Set<Part> knownTooLarge = Collections.emptySet();
+        if (previous != null) {
+            for (Group group: previous.groups) {
+                for (RegexQuery query: group.part.queries) {
+                    previousGroups.put(query, group);
+                }
+            }
+            knownTooLarge = previous.tooLarge;
+        }
+        List<GroupBuilder> builders = new ArrayList<GroupBuilder>();
+        for (RegexQuery query: queries) {
+            RegexNode node;
+            try {
+                node = RegexParser.parse(query.getPattern());
+            } catch (UnsupportedPatternException e) {
+                rejected.add(query);
+                continue;
+            }
+            GlobalNetParams params = query.getNetworkParameters(netParams);
+            int version = query.isP2SH() ? params.getP2SHHeader() : params.getAddressHeader();
+            GroupBuilder builder = null;
+            for (GroupBuilder existing: builders) {
+                if (existing.version == version && existing.compressed == query.isCompressed()) {
+                    builder = existing;
+                    break;
+                }
+            }
+            if (builder == null) {
+                builder = new GroupBuilder(version, query.isCompressed());
+                builders.add(builder);
+            }
+            builder.queries.add(query);
+            builder.nodes.add(node);
+        }
+        List<Group> groups = new ArrayList<Group>();
+        Set<Part> tooLarge = new HashSet<Part>();
+        for (GroupBuilder builder: builders) {
+            builder.build(previousGroups, knownTooLarge, groups, tooLarge, rejected);
+        }
+        return new RegexIndex(groups.toArray(new Group[groups.size()]), tooLarge);
+    }
+
+    /**
+     * Determines if a query can be matched by its pattern alone. Subclasses that match differently than their pattern
+     * are never indexed.
+     */
+    static boolean isIndexable(RegexQuery query) {
+        if (query.getPattern() == null) {
+            return false;
+        }
+        try {
+            Class<?> declaring = query.getClass().getMethod("matches", AddressView.class, GlobalNetParams.class).getDeclaringClass();
+            return declaring == RegexQuery.class || declaring == Query.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the first query whose pattern matches the candidate address, or null if none does.
+     */
+    RegexQuery matches(AddressView view) {
+        for (Group group: groups) {
+            Part part = group.part;
+            char[] address = view.getAddressChars(part.version, part.compressed);
+            int id = group.dfa.firstMatch(address, view.getAddressLength(part.version, part.compressed));
+            if (id != RegexDfa.NO_MATCH) {
+                return part.queries[id];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the amount of DFAs in this index.
+     */
+    int size() {
+        return groups.length;
+    }
+
+    private static class Group {
+
+        private final Part part;
+        private final RegexDfa dfa;
+
+        Group(Part part, RegexDfa dfa) {
+            this.part = part;
+            this.dfa = dfa;
+        }
+
+        /**
+         * Returns the position of the first query of this group in the pool.
+         */
+        int firstPosition(Map<RegexQuery, Integer> positions) {
+            int first = Integer.MAX_VALUE;
+            for (RegexQuery query: part.queries) {
+                first = Math.min(first, positions.get(query));
+            }
+            return first;
+        }
+
+    }
+
+    /**
+     * Part is a list of queries compiled into one DFA, along with the address they are matched against. Two parts are
+     * equal when they hold the same query instances with the same Pattern instances in the same order, in which case
+     * they compile into the same DFA.
+     */
+    private static final class Part {
+
+        private final int version;
+        private final boolean compressed;
+        private final RegexQuery[] queries;
+        private final Pattern[] patterns;
+        private final int hash;
+
+        Part(int version, boolean compressed, List<RegexQuery> queries) {
+            this.version = version;
+            this.compressed = compressed;
+            this.queries = queries.toArray(new RegexQuery[queries.size()]);
+            patterns = new Pattern[this.queries.length];
+            int hash = version * 2 + (compressed ? 1 : 0);
+            for (int i = 0; i < patterns.length; i++) {
+                patterns[i] = this.queries[i].getPattern();
+                hash = hash * 31 + System.identityHashCode(this.queries[i]);
+                hash = hash * 31 + System.identityHashCode(patterns[i]);
+            }
+            this.hash = hash;
+        }
+
+        /**
+         * Determines if every query of this part is still in a group on the same address, with the same pattern.
+         */
+        boolean isIntact(int version, boolean compressed, Map<RegexQuery, Integer> positions) {
+            if (this.version != version || this.compressed != compressed) {
+                return false;
+            }
+            for (int i = 0; i < queries.length; i++) {
+                if (!positions.containsKey(queries[i]) || queries[i].getPattern() != patterns[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Part)) {
+                return false;
+            }
+            Part part = (Part) other;
+            if (version != part.version || compressed != part.compressed || queries.length != part.queries.length) {
+                return false;
+            }
+            for (int i = 0; i < queries.length; i++) {
+                if (queries[i] != part.queries[i] || patterns[i] != part.patterns[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+    private static class GroupBuilder {
+
+        private final int version;
+        private final boolean compressed;
+        private final List<RegexQuery> queries = new ArrayList<RegexQuery>();
+        private final List<RegexNode> nodes = new ArrayList<RegexNode>();
+
+        GroupBuilder(int version, boolean compressed) {
+            this.version = version;
+            this.compressed = compressed;
+        }
+
+        /**
+         * Compiles the group, keeping the DFAs of the previous index that still hold only queries of this group.
+         */
+        void build(Map<RegexQuery, Group> previousGroups, Set<Part> knownTooLarge, List<Group> groups, Set<Part> tooLarge,
+                   List<RegexQuery> rejected) {
+            final Map<RegexQuery, Integer> positions = new IdentityHashMap<RegexQuery, Integer>();
+            for (int i = 0; i < queries.size(); i++) {
+                positions.put(queries.get(i), i);
+            }
+            List<Group> kept = new ArrayList<Group>();
+            Set<Group> seen = new HashSet<Group>();
+            int fresh = queries.size();
+            for (RegexQuery query: queries) {
+                Group group = previousGroups.get(query);
+                if (group != null && seen.add(group) && group.part.isIntact(version, compressed, positions)) {
+                    kept.add(group);
+                    fresh -= group.part.queries.length;
+                }
+            }
+            Collections.sort(kept, new Comparator<Group>() {
+                @Override
+                public int compare(Group a, Group b) {
+                    return a.part.queries.length - b.part.queries.length;
+                }
+            });
+            int carried = 0;
+            while (fresh > 0 && carried < kept.size() && kept.get(carried).part.queries.length <= fresh) {
+                fresh += kept.get(carried++).part.queries.length;
+            }
+            kept = kept.subList(carried, kept.size());
+            Set<RegexQuery> keptQueries = Collections.newSetFromMap(new IdentityHashMap<RegexQuery, Boolean>());
+            for (Group group: kept) {
+                Collections.addAll(keptQueries, group.part.queries);
+            }
+            List<RegexQuery> part = new ArrayList<RegexQuery>();
+            List<RegexNode> partNodes = new ArrayList<RegexNode>();
+            for (int i = 0; i < queries.size(); i++) {
+                if (!keptQueries.contains(queries.get(i))) {
+                    part.add(queries.get(i));
+                    partNodes.add(nodes.get(i));
+                }
+            }
+            List<Group> built = new ArrayList<Group>(kept);
+            if (!part.isEmpty()) {
+                build(part, partNodes, knownTooLarge, built, tooLarge, rejected);
+            }
+            Collections.sort(built, new Comparator<Group>() {
+                @Override
+                public int compare(Group a, Group b) {
+                    return a.firstPosition(positions) - b.firstPosition(positions);
+                }
+            });
+            groups.addAll(built);
+        }
+
+        /**
+         * Compiles a part of the group into one DFA, or into two halves if it does not fit.
+         */
+        private void build(List<RegexQuery> part, List<RegexNode> partNodes, Set<Part> knownTooLarge, List<Group> groups,
+                           Set<Part> tooLarge, List<RegexQuery> rejected) {
+            Part key = new Part(version, compressed, part);
+            if (!knownTooLarge.contains(key)) {
+                RegexDfa dfa = RegexDfa.build(partNodes, MAX_STATES);
+                if (dfa != null) {
+                    groups.add(new Group(key, dfa));
+                    return;
+                }
+            }
+            tooLarge.add(key);
+            if (part.size() == 1) {
+                rejected.add(part.get(0));
+            } else {
+                int middle = part.size() / 2;
+                build(part.subList(0, middle), partNodes.subList(0, middle), knownTooLarge, groups, tooLarge, rejected);
+                build(part.subList(middle, part.size()), partNodes.subList(middle, part.size()), knownTooLarge, groups,
+                        tooLarge, rejected);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,237 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.exceptions.UnsupportedPatternException;
+import co.bitsquared.vanitygenerator.core.regex.RegexDfa;
+import co.bitsquared.vanitygenerator.core.regex.RegexParser;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * RegexProbability computes the probability that a random key produces an address matching a regular expression on a
+ * version byte. The pattern is compiled into a {@link RegexDfa}, and the probability that the DFA accepts a random
+ * address is summed up by dynamic programming over the characters of the address.
+ * <p>The 25 byte payload (version byte | hash160 | checksum) of a random key is uniform over the payloads of its
+ * version byte. That interval of integers is cut into aligned blocks, each of which is every address of one length
+ * that starts with a fixed string followed by a given amount of free Base58 digits. Each free digit is uniform within
+ * a block, so a block matches with the probability that the DFA accepts after reading its fixed string and then that
+ * many uniform symbols. Summing the blocks by their width gives the exact probability, including the uneven
+ * distribution of the leading characters and the lengths of the addresses. Version byte 0 is cut by its amount of
+ * leading zero bytes first, since each of them is written as a leading '1'.
+ * <p>The blocks of each version byte are kept in a table that is filled in the first time a version byte is used. They
+ * are kept in the order they were cut, where each block mostly shares its fixed string with the block before it, so
+ * the DFA only reads the symbols that differ. Most blocks are the narrow ones left over at the ends of an interval,
+ * and together they weigh less than 10^-37. The wide blocks are summed first, and the narrow ones only when their
+ * whole weight could still change the result by more than a rounding error.
+ *
+ * @see RegexQuery#getProbability(co.bitsquared.vanitygenerator.core.network.GlobalNetParams)
+ * @see QueryProbability
+ * @since v1.4.0
+ */
+final class RegexProbability {
+
+    static final double UNKNOWN = -1;
+
+    private static final int PAYLOAD_LENGTH = 25;
+    private static final int MAX_ADDRESS_LENGTH = 35;
+    private static final BigInteger BASE = BigInteger.valueOf(Utils.BASE);
+    private static final BigInteger BYTE = BigInteger.valueOf(256);
+    private static final BigInteger[] POWERS = new BigInteger[MAX_ADDRESS_LENGTH + 1];
+    private static final double PAYLOAD_SPACE = BYTE.pow(PAYLOAD_LENGTH - 1).doubleValue();
+    private static final AddressBlocks[] BLOCKS = new AddressBlocks[256];
+    private static final double NARROW_WEIGHT = 1e-40;
+
+    static {
+        POWERS[0] = BigInteger.ONE;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1].multiply(BASE);
+        }
+    }
+
+    private RegexProbability() {
+    }
+
+    /**
+     * Returns the probability that a random hash160 on a version byte gives an address matching a pattern, or UNKNOWN
+     * if the pattern is not supported by RegexParser or its DFA is too large.
+     */
+    static double of(Pattern pattern, int version) {
+        RegexDfa dfa;
+        try {
+            dfa = RegexDfa.build(Collections.singletonList(RegexParser.parse(pattern)), RegexIndex.MAX_STATES);
+        } catch (UnsupportedPatternException e) {
+            return UNKNOWN;
+        }
+        if (dfa == null) {
+            return UNKNOWN;
+        }
+        AddressBlocks blocks = blocksOf(version);
+        double[][] accepted = acceptedAfter(dfa, blocks.maxFree);
+        double probability = sum(dfa, accepted, blocks.wide);
+        if (blocks.narrowWeight > probability * Math.ulp(1.0)) {
+            probability = sum(dfa, accepted, blocks.blocks);
+        }
+        return Math.min(1, probability);
+    }
+
+    /**
+     * Sums the probability that the DFA accepts an address of each block, weighted by the width of the block.
+     */
+    private static double sum(RegexDfa dfa, double[][] accepted, Block[] blocks) {
+        // states[i] is the state after reading the first i fixed symbols of the previous block.
+        int[] states = new int[MAX_ADDRESS_LENGTH + 1];
+        states[0] = dfa.getStartState();
+        double probability = 0;
+        for (Block block: blocks) {
+            int[] fixed = block.fixed;
+            for (int i = block.shared; i < fixed.length; i++) {
+                states[i + 1] = dfa.next(states[i], fixed[i]);
+            }
+            probability += block.weight * accepted[block.free][states[fixed.length]];
+        }
+        return probability;
+    }
+
+    /**
+     * Returns the probability that the DFA accepts after reading an amount of uniform symbols, by amount and state.
+     */
+    private static double[][] acceptedAfter(RegexDfa dfa, int maxFree) {
+        int states = dfa.getStateCount();
+        double[][] accepted = new double[maxFree + 1][states];
+        for (int state = 0; state < states; state++) {
+            accepted[0][state] = dfa.getMatch(state) == RegexDfa.NO_MATCH ? 0 : 1;
+        }
+        for (int free = 1; free <= maxFree; free++) {
+            double[] previous = accepted[free - 1];
+            for (int state = 0; state < states; state++) {
+                double sum = 0;
+                for (int symbol = 0; symbol < RegexDfa.SYMBOLS; symbol++) {
+                    sum += previous[dfa.next(state, symbol)];
+                }
+                accepted[free][state] = sum / RegexDfa.SYMBOLS;
+            }
+        }
+        return accepted;
+    }
+
+    private static AddressBlocks blocksOf(int version) {
+        AddressBlocks blocks = BLOCKS[version];
+        if (blocks == null) {
+            blocks = new AddressBlocks(version);
+            BLOCKS[version] = blocks;
+        }
+        return blocks;
+    }
+
+    /**
+     * Block is every address that starts with a fixed string of Base58 symbols followed by free uniform symbols.
+     */
+    private static final class Block {
+
+        private final int[] fixed;
+        private final int free;
+        private final double weight;
+        private int shared;
+
+        Block(int[] fixed, int free, double weight) {
+            this.fixed = fixed;
+            this.free = free;
+            this.weight = weight;
+        }
+
+        Block(Block block) {
+            this(block.fixed, block.free, block.weight);
+        }
+
+    }
+
+    /**
+     * AddressBlocks holds the blocks of every address on one version byte. It is immutable, so a table entry can be
+     * shared between threads once filled in.
+     */
+    private static final class AddressBlocks {
+
+        private final Block[] blocks;
+        private final Block[] wide;
+        private final double narrowWeight;
+        private final int maxFree;
+
+        AddressBlocks(int version) {
+            List<Block> list = new ArrayList<Block>();
+            if (version != 0) {
+                BigInteger low = BigInteger.valueOf(version).shiftLeft((PAYLOAD_LENGTH - 1) * 8);
+                addBlocks(0, low, low.add(BYTE.pow(PAYLOAD_LENGTH - 1)), list);
+            } else {
+                // Each leading zero byte of the payload is written as a leading '1'; the first one is the version byte.
+                for (int zeros = 1; zeros < PAYLOAD_LENGTH; zeros++) {
+                    addBlocks(zeros, BYTE.pow(PAYLOAD_LENGTH - 1 - zeros), BYTE.pow(PAYLOAD_LENGTH - zeros), list);
+                }
+            }
+            List<Block> wideList = new ArrayList<Block>();
+            double narrow = 0;
+            int max = 0;
+            for (Block block: list) {
+                max = Math.max(max, block.free);
+                if (block.weight >= NARROW_WEIGHT) {
+                    wideList.add(new Block(block));
+                } else {
+                    narrow += block.weight;
+                }
+            }
+            blocks = share(list);
+            wide = share(wideList);
+            narrowWeight = narrow;
+            maxFree = max;
+        }
+
+        /**
+         * Sets how many fixed symbols each block shares with the block before it.
+         */
+        private static Block[] share(List<Block> list) {
+            int[] previous = new int[0];
+            for (Block block: list) {
+                int shared = 0;
+                while (shared < previous.length && shared < block.fixed.length && previous[shared] == block.fixed[shared]) {
+                    shared++;
+                }
+                block.shared = shared;
+                previous = block.fixed;
+            }
+            return list.toArray(new Block[list.size()]);
+        }
+
+        /**
+         * Cuts the payloads in [low, high) into aligned blocks of each address length, from the largest blocks that
+         * fit.
+         * @param ones the amount of leading '1' characters written before the digits of the payload.
+         */
+        private static void addBlocks(int ones, BigInteger low, BigInteger high, List<Block> list) {
+            for (int digits = 1; digits <= MAX_ADDRESS_LENGTH - ones; digits++) {
+                BigInteger start = low.max(POWERS[digits - 1]);
+                BigInteger end = high.min(POWERS[digits]);
+                while (start.compareTo(end) < 0) {
+                    int free = 0;
+                    while (free < digits && start.mod(POWERS[free + 1]).signum() == 0
+                            && start.add(POWERS[free + 1]).compareTo(end) <= 0) {
+                        free++;
+                    }
+                    int[] fixed = new int[ones + digits - free];
+                    BigInteger value = start.divide(POWERS[free]);
+                    for (int i = fixed.length - 1; i >= ones; i--) {
+                        BigInteger[] quotientAndDigit = value.divideAndRemainder(BASE);
+                        fixed[i] = quotientAndDigit[1].intValue();
+                        value = quotientAndDigit[0];
+                    }
+                    list.add(new Block(fixed, free, POWERS[free].doubleValue() / PAYLOAD_SPACE));
+                    start = start.add(POWERS[free]);
+                }
+            }
+        }
+
+    }
+
+}
@@ -2,10 +2,11 @@ package co.bitsquared.vanitygenerator.core.query;
 
 import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
 import co.bitsquared.vanitygenerator.core.network.Network;
-import org.bitcoinj.core.Address;
+import co.bitsquared.vanitygenerator.core.regex.LiteralPrefilter;
 import org.bitcoinj.core.ECKey;
 
 import javax.annotation.Nonnull;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
@@ -14,6 +15,8 @@ import java.util.regex.Pattern;
  * This class is not capable of easily enforcing Prefix or Networks and should be used by those who know to use regular
  * expressions. To enforce Prefix / Network restrictions, you should use Query which is a more restricted Query type
  * that extends this class.
+ * <p>A query can not be changed while it is in a {@link QueryPool}, since the pool keeps it sorted and indexed by what
+ * it matches. Remove it from the pool, change it and add it back instead.
  * @see org.bitcoinj.core.ECKey
  * @see org.bitcoinj.core.Address
  * @see Query
@@ -26,6 +29,11 @@ public class RegexQuery implements Comparable<RegexQuery> {
     protected boolean findUnlimited;
     protected boolean searchForP2SH;
     protected GlobalNetParams netParams;
+    private volatile Prefilter prefilter;
+    private volatile Estimate estimate;
+    private volatile Estimate orderEstimate;
+    private final AtomicInteger pools = new AtomicInteger();
+    private boolean poolUpdate;
 
     protected RegexQuery(boolean compressed, boolean findUnlimited, boolean searchForP2SH) {
         this.compressed = compressed;
@@ -44,23 +52,120 @@ public class RegexQuery implements Comparable<RegexQuery> {
         this.searchForP2SH = searchForP2SH;
     }
 
+    /**
+     * Determines if the address of a key matches this query. The key is matched through a view that is reused by the
+     * calling thread.
+     */
     public boolean matches(ECKey key, GlobalNetParams netParams) {
-        if (!compressed) {
-            key = key.decompress();
+        AddressView view = AddressView.acquire(key);
+        try {
+            return matches(view, netParams);
+        } finally {
+            AddressView.release(view);
         }
-        if (searchForP2SH) {
-            return matches(Address.fromP2SHHash(netParams, key.getPubKeyHash()).toString());
+    }
+
+    /**
+     * Determines if the address of a candidate matches this query. The address is taken from the AddressView so that
+     * hashing and encoding are shared with every other query checked against the same candidate. The address is first
+     * checked against the literals the pattern requires, and the regular expression only runs if it contains them.
+     * @param view the candidate to check.
+     * @param netParams the GlobalNetParams to use if this RegexQuery doesn't define one.
+     * @return true if the candidate address matches this query.
+     * @see LiteralPrefilter
+     */
+    public boolean matches(AddressView view, GlobalNetParams netParams) {
+        int version = getVersion(netParams);
+        LiteralPrefilter literals = getPrefilter();
+        if (literals != null && !literals.mayMatch(view.getAddressChars(version, compressed), view.getAddressLength(version, compressed))) {
+            return false;
         }
-        if (this.netParams != null) {
-            return matches(key.toAddress(this.netParams).toString());
+        return matches(view.getAddress(version, compressed));
+    }
+
+    /**
+     * Returns the literal prefilter of the current pattern, or null if the pattern has none. The prefilter is built
+     * the first time it is needed after the pattern changes.
+     * @since v1.4.0
+     */
+    public LiteralPrefilter getPrefilter() {
+        Pattern current = pattern;
+        Prefilter cached = prefilter;
+        if (cached == null || cached.pattern != current) {
+            cached = new Prefilter(current, current == null ? null : LiteralPrefilter.of(current));
+            prefilter = cached;
         }
-        return matches(key.toAddress(netParams).toString());
+        return cached.literals;
     }
 
     public boolean matches(String input) {
         return pattern.matcher(input).find();
     }
 
+    /**
+     * Returns the probability that a random key matches this query, or 0 if it is not known. The probability is exact
+     * for every pattern RegexParser supports, and is computed once and kept until the version byte or the pattern
+     * changes.
+     * @param netParams the GlobalNetParams to use if this RegexQuery doesn't define one.
+     * @see RegexProbability
+     * @since v1.4.0
+     */
+    public double getProbability(GlobalNetParams netParams) {
+        return Math.max(0, estimate(getVersion(netParams), false));
+    }
+
+    /**
+     * Determines if this query can match any address on the version byte of a network. A query whose probability is
+     * not known is assumed to be reachable.
+     * @param netParams the GlobalNetParams to use if this RegexQuery doesn't define one.
+     * @since v1.4.0
+     */
+    public boolean isReachable(GlobalNetParams netParams) {
+        return estimate(getVersion(netParams), false) != 0;
+    }
+
+    /**
+     * Returns the version byte of the addresses this query is matched against.
+     * @param netParams the GlobalNetParams to use if this RegexQuery doesn't define one.
+     * @since v1.4.0
+     */
+    public int getVersion(GlobalNetParams netParams) {
+        GlobalNetParams params = getNetworkParameters(netParams);
+        return searchForP2SH ? params.getP2SHHeader() : params.getAddressHeader();
+    }
+
+    /**
+     * Returns the probability of the current pattern on a version byte, or RegexProbability.UNKNOWN. The estimates
+     * used for ordering are kept apart so that they are not thrown away every time the pool asks for another network.
+     */
+    private double estimate(int version, boolean forOrder) {
+        Pattern current = pattern;
+        if (current == null) {
+            return RegexProbability.UNKNOWN;
+        }
+        Estimate cached = forOrder ? orderEstimate : estimate;
+        if (cached == null || cached.pattern != current || cached.version != version) {
+            cached = new Estimate(current, version, RegexProbability.of(current, version));
+            if (forOrder) {
+                orderEstimate = cached;
+            } else {
+                estimate = cached;
+            }
+        }
+        return cached.value;
+    }
+
+    /**
+     * Returns the expected amount of keys generated before this query is found, or positive infinity if it is not
+     * known.
+     * @see #getProbability(GlobalNetParams)
+     * @since v1.4.0
+     */
+    public double getExpectedKeys(GlobalNetParams netParams) {
+        double probability = getProbability(netParams);
+        return probability > 0 ? 1 / probability : Double.POSITIVE_INFINITY;
+    }
+
     public Pattern getPattern() {
         return pattern;
     }
@@ -77,22 +182,97 @@ public class RegexQuery implements Comparable<RegexQuery> {
         return searchForP2SH;
     }
 
+    /**
+     * @throws IllegalStateException if this query is in a QueryPool.
+     */
     public void setCompression(boolean compression) {
+        checkNotPooled();
         compressed = compression;
     }
 
+    /**
+     * @throws IllegalStateException if this query is in a QueryPool.
+     */
     public void setFindUnlimited(boolean findUnlimited) {
+        checkNotPooled();
         this.findUnlimited = findUnlimited;
     }
 
+    /**
+     * @throws IllegalStateException if this query is in a QueryPool.
+     */
     public void updateNetwork(Network network) {
         updateNetParams(network.toGlobalNetParams());
     }
 
+    /**
+     * @throws IllegalStateException if this query is in a QueryPool.
+     */
     public void updateNetParams(GlobalNetParams netParams) {
+        checkNotPooled();
         this.netParams = netParams;
     }
 
+    /**
+     * Throws if this query is in a QueryPool, unless the pool itself is updating the network of its queries. Every
+     * method that changes what a query matches, its order or its probability must call this first.
+     * @throws IllegalStateException if this query is in a QueryPool.
+     * @since v1.4.0
+     */
+    protected final synchronized void checkNotPooled() {
+        if (pools.get() > 0 && !poolUpdate) {
+            throw new IllegalStateException("A query can not be changed while it is in a QueryPool; remove it first.");
+        }
+    }
+
+    /**
+     * Determines if this query is in at least one QueryPool.
+     * @since v1.4.0
+     */
+    public boolean isPooled() {
+        return pools.get() > 0;
+    }
+
+    /**
+     * Called by a QueryPool once it holds this query.
+     */
+    final void addedToPool() {
+        pools.incrementAndGet();
+    }
+
+    /**
+     * Called by a QueryPool once it no longer holds this query.
+     */
+    final void removedFromPool() {
+        pools.decrementAndGet();
+    }
+
+    /**
+     * Updates the network of this query on behalf of a QueryPool that holds it. The pool re-sorts and re-indexes its
+     * queries afterwards.
+     */
+    final synchronized void updateNetworkFromPool(Network network) {
+        poolUpdate = true;
+        try {
+            updateNetwork(network);
+        } finally {
+            poolUpdate = false;
+        }
+    }
+
+    /**
+     * Updates the GlobalNetParams of this query on behalf of a QueryPool that holds it. The pool re-sorts and re-indexes
+     * its queries afterwards.
+     */
+    final synchronized void updateNetParamsFromPool(GlobalNetParams netParams) {
+        poolUpdate = true;
+        try {
+            updateNetParams(netParams);
+        } finally {
+            poolUpdate = false;
+        }
+    }
+
     /**
      * Get the NetworkParameters associated with this RegexQuery. If there is no NP defined, the NP passed in will be
      * returned.
@@ -119,19 +299,83 @@ public class RegexQuery implements Comparable<RegexQuery> {
     }
 
     /**
-     * Since it is hard to determine what actual query is held within a RegexQuery, we rely on two things:
-     * Compressed -> Pattern
+     * Query's and other RegexQuery's are ordered together by their probability on Bitcoin's version bytes, the more
+     * likely query being the easier one, so that the order does not change with the network of the pool. Patterns
+     * whose probability is not known come last. Since both kinds are compared by probability first, the order stays
+     * consistent for a collection holding both, such as QueryPool.
+     * <p>A Query comes before any other RegexQuery of the same probability, and two Query's of the same probability
+     * are compared by Query.compareTo(RegexQuery). Other RegexQuery's of the same probability are compared by these
+     * things:
+     * Compressed -> Pattern -> P2SH -> findUnlimited
      * Compressed:
-     *      Match: Return the patterns string comparison
+     *      Match: Return the patterns string comparison.
      *      Don't Match: if this compression is true, return -1 since searching for a compressed addresses is faster. Otherwise return 1.
+     * Pattern:
+     *      Match: Return the P2SH comparison, then the findUnlimited comparison.
      */
     @Override
     public int compareTo(@Nonnull RegexQuery other) {
+        int probabilityDifference = Double.compare(other.orderProbability(), orderProbability());
+        if (probabilityDifference != 0) {
+            return probabilityDifference;
+        }
+        if (other instanceof Query) {
+            return 1;
+        }
         if (hashCode() == other.hashCode()) return 0;
-        if (compressed == other.compressed) {
-            return pattern.toString().compareTo(other.toString());
+        if (compressed != other.compressed) {
+            return compressed ? -1 : 1;
         }
-        return compressed ? -1 : 1;
+        int patternDifference = pattern.toString().compareTo(other.pattern.toString());
+        if (patternDifference != 0) {
+            return patternDifference;
+        }
+        if (searchForP2SH != other.searchForP2SH) {
+            return searchForP2SH ? 1 : -1;
+        }
+        return findUnlimited == other.findUnlimited ? 0 : findUnlimited ? 1 : -1;
+    }
+
+    /**
+     * Returns the probability this query is ordered by: its probability on Bitcoin's version bytes, or
+     * RegexProbability.UNKNOWN.
+     */
+    double orderProbability() {
+        Network network = Network.BITCOIN;
+        return estimate(searchForP2SH ? network.getP2SHHeader() : network.getAddressHeader(), true);
+    }
+
+    /**
+     * Estimate holds the probability of a pattern on a version byte.
+     */
+    private static class Estimate {
+
+        private final Pattern pattern;
+        private final int version;
+        private final double value;
+
+        Estimate(Pattern pattern, int version, double value) {
+            this.pattern = pattern;
+            this.version = version;
+            this.value = value;
+        }
+
+    }
+
+    /**
+     * Prefilter holds a LiteralPrefilter along with the pattern it was built for, so that a pattern assigned by a
+     * subclass is noticed.
+     */
+    private static class Prefilter {
+
+        private final Pattern pattern;
+        private final LiteralPrefilter literals;
+
+        Prefilter(Pattern pattern, LiteralPrefilter literals) {
+            this.pattern = pattern;
+            this.literals = literals;
+        }
+
     }
 
 }
@@ -0,0 +1,186 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * SuffixIndex holds every ends {@link Query} of a pool as sorted suffix values. Queries are grouped by the address they
+ * are matched against (version byte and compression) like in {@link ContainsIndex}, and the payload of each group is
+ * reduced modulo 58^9 once per candidate. The suffixes of every query are then looked up with one binary search per
+ * suffix length, no matter how many queries there are, and the address is never Base58 encoded unless a query longer
+ * than SuffixSet.MAX_DIGITS has to be confirmed.
+ * <p>A SuffixIndex is immutable once built and is rebuilt by {@link QueryPool} whenever the pool changes.
+ *
+ * @see SuffixSet
+ * @since v1.4.0
+ */
+class SuffixIndex {
+
+    private final Group[] groups;
+
+    private SuffixIndex(Group[] groups) {
+        this.groups = groups;
+    }
+
+    /**
+     * Builds an index from ends queries.
+     * @param queries queries that are accepted by isIndexable(RegexQuery).
+     * @param netParams the GlobalNetParams used for queries that don't define their own.
+     */
+    static SuffixIndex build(Collection<RegexQuery> queries, GlobalNetParams netParams) {
+        List<GroupBuilder> builders = new ArrayList<GroupBuilder>();
+        for (RegexQuery query: queries) {
+            GlobalNetParams params = query.getNetworkParameters(netParams);
+            int version = query.isP2SH() ? params.getP2SHHeader() : params.getAddressHeader();
+            GroupBuilder builder = null;
+            for (GroupBuilder existing: builders) {
+                if (existing.version == version && existing.compressed == query.isCompressed()) {
+                    builder = existing;
+                    break;
+                }
+            }
+            if (builder == null) {
+                builder = new GroupBuilder(version, query.isCompressed());
+                builders.add(builder);
+            }
+            builder.add((Query) query);
+        }
+        Group[] groups = new Group[builders.size()];
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = builders.get(i).build();
+        }
+        return new SuffixIndex(groups);
+    }
+
+    static boolean isIndexable(RegexQuery query) {
+        return query instanceof Query && ((Query) query).isEnds();
+    }
+
+    /**
+     * Returns the first query whose suffix ends the candidate address, or null if none does.
+     */
+    RegexQuery matches(AddressView view, GlobalNetParams netParams) {
+        for (Group group: groups) {
+            long residue = SuffixSet.residueOf(view.getPayload(group.version, group.compressed));
+            RegexQuery query = group.find(residue, view, netParams);
+            if (query != null) {
+                return query;
+            }
+        }
+        return null;
+    }
+
+    private static class Group {
+
+        private final int version;
+        private final boolean compressed;
+        private final Query[] queries;
+        private final int[] digits;
+        private final long[][] values;
+        private final int[][] ids;
+
+        Group(int version, boolean compressed, Query[] queries, int[] digits, long[][] values, int[][] ids) {
+            this.version = version;
+            this.compressed = compressed;
+            this.queries = queries;
+            this.digits = digits;
+            this.values = values;
+            this.ids = ids;
+        }
+
+        RegexQuery find(long residue, AddressView view, GlobalNetParams netParams) {
+            for (int level = 0; level < digits.length; level++) {
+                long[] levelValues = values[level];
+                long value = residue % SuffixSet.modulusOf(digits[level]);
+                int index = Arrays.binarySearch(levelValues, value);
+                if (index < 0) {
+                    continue;
+                }
+                while (index > 0 && levelValues[index - 1] == value) {
+                    index--;
+                }
+                for (; index < levelValues.length && levelValues[index] == value; index++) {
+                    Query query = queries[ids[level][index]];
+                    if (query.getSuffixes().isExact() || query.matches(view, netParams)) {
+                        return query;
+                    }
+                }
+            }
+            return null;
+        }
+
+    }
+
+    private static class GroupBuilder {
+
+        private final int version;
+        private final boolean compressed;
+        private final List<Query> queries = new ArrayList<Query>();
+        private final List<long[]> entries = new ArrayList<long[]>();
+
+        GroupBuilder(int version, boolean compressed) {
+            this.version = version;
+            this.compressed = compressed;
+        }
+
+        void add(Query query) {
+            int id = queries.size();
+            queries.add(query);
+            SuffixSet suffixSet = query.getSuffixes();
+            for (long value: suffixSet.getValues()) {
+                entries.add(new long[] {suffixSet.getDigits(), value, id});
+            }
+        }
+
+        /**
+         * Sorts the suffixes by length, value and id, and splits them into one level per suffix length.
+         */
+        Group build() {
+            Collections.sort(entries, new Comparator<long[]>() {
+                @Override
+                public int compare(long[] left, long[] right) {
+                    for (int i = 0; i < left.length; i++) {
+                        if (left[i] != right[i]) {
+                            return left[i] < right[i] ? -1 : 1;
+                        }
+                    }
+                    return 0;
+                }
+            });
+            List<int[]> levelIds = new ArrayList<int[]>();
+            List<long[]> levelValues = new ArrayList<long[]>();
+            List<Integer> levelDigits = new ArrayList<Integer>();
+            int start = 0;
+            while (start < entries.size()) {
+                int end = start;
+                while (end < entries.size() && entries.get(end)[0] == entries.get(start)[0]) {
+                    end++;
+                }
+                long[] values = new long[end - start];
+                int[] ids = new int[end - start];
+                for (int i = start; i < end; i++) {
+                    values[i - start] = entries.get(i)[1];
+                    ids[i - start] = (int) entries.get(i)[2];
+                }
+                levelDigits.add((int) entries.get(start)[0]);
+                levelValues.add(values);
+                levelIds.add(ids);
+                start = end;
+            }
+            int[] digits = new int[levelDigits.size()];
+            for (int i = 0; i < digits.length; i++) {
+                digits[i] = levelDigits.get(i);
+            }
+            return new Group(version, compressed, queries.toArray(new Query[queries.size()]), digits,
+                    levelValues.toArray(new long[levelValues.size()][]), levelIds.toArray(new int[levelIds.size()][]));
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.util.Arrays;
+
+/**
+ * SuffixSet is the set of values the last characters of an address can take to match an "ends with" query. The last k
+ * Base58 characters of an address are the last k digits of its 25 byte payload (version byte | hash160 | checksum), so
+ * they are the payload modulo 58^k. Checking a suffix is then one short modular reduction of the payload instead of a
+ * Base58 encoding, and it does not depend on the version byte.
+ * <p>Only the last MAX_DIGITS characters are kept, since 58^9 is the largest power of 58 by which a payload can be
+ * reduced one byte at a time in a long. A query of up to MAX_DIGITS characters is matched exactly by its set; a longer
+ * query is only a candidate when the set contains the address, and must still be confirmed against the encoded
+ * address. A query that ignores case holds every case variant of its characters.
+ *
+ * @see Query
+ * @since v1.4.0
+ */
+public class SuffixSet {
+
+    public static final int MAX_DIGITS = 9;
+
+    private static final long[] POWERS = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * Utils.BASE;
+        }
+    }
+
+    private final int digits;
+    private final long[] values;
+    private final boolean exact;
+
+    private SuffixSet(int digits, long[] values, boolean exact) {
+        this.digits = digits;
+        this.values = values;
+        this.exact = exact;
+    }
+
+    /**
+     * Compiles the set of suffixes matching a query placed at the end of an address.
+     * @param query a Base58 string.
+     * @param matchCase whether the case of each letter must match.
+     */
+    public static SuffixSet forEndsQuery(String query, boolean matchCase) {
+        Utils.checkBase58(query);
+        int digits = Math.min(query.length(), MAX_DIGITS);
+        long[] values = {0};
+        for (int i = query.length() - digits; i < query.length(); i++) {
+            char[] variants = matchCase ? new char[] {query.charAt(i)} : QueryProbability.caseVariants(query.charAt(i));
+            long[] next = new long[values.length * variants.length];
+            int count = 0;
+            for (long value: values) {
+                for (char variant: variants) {
+                    next[count++] = value * Utils.BASE + Utils.indexOfBase58(variant);
+                }
+            }
+            values = next;
+        }
+        Arrays.sort(values);
+        return new SuffixSet(digits, values, query.length() <= MAX_DIGITS);
+    }
+
+    /**
+     * Reduces a payload modulo 58^MAX_DIGITS, which holds the value of the last MAX_DIGITS characters of its address.
+     * @param payload the 25 byte payload of an address.
+     */
+    public static long residueOf(byte[] payload) {
+        long modulus = POWERS[MAX_DIGITS];
+        long residue = 0;
+        for (byte b: payload) {
+            residue = ((residue << 8) | (b & 0xff)) % modulus;
+        }
+        return residue;
+    }
+
+    /**
+     * Determines if the address of a residue ends with one of the suffixes of this set.
+     * @param residue the residue of a payload as returned by residueOf(byte[]).
+     */
+    public boolean contains(long residue) {
+        return Arrays.binarySearch(values, residue % POWERS[digits]) >= 0;
+    }
+
+    /**
+     * Returns the amount of trailing characters this set compares.
+     */
+    public int getDigits() {
+        return digits;
+    }
+
+    /**
+     * Returns the value of each suffix, sorted. The returned array must not be modified.
+     */
+    long[] getValues() {
+        return values;
+    }
+
+    /**
+     * Determines if an address contained by this set always matches the query, which is when the query is no longer
+     * than MAX_DIGITS.
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Returns 58^digits, the modulus that reduces a residue to the value of its last digits characters.
+     */
+    static long modulusOf(int digits) {
+        return POWERS[digits];
+    }
+
+}
@@ -0,0 +1,361 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import co.bitsquared.vanitygenerator.core.exceptions.UnsupportedPatternException;
+import co.bitsquared.vanitygenerator.core.tools.AhoCorasick;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * LiteralPrefilter is a cheap check an address must pass before a regular expression can match it. Most vanity
+ * patterns cannot match unless the address contains one of a few literal strings, for example {@code .*Bitcoin.*}
+ * needs "Bitcoin" and {@code (fun|test).*} needs "fun" or "test". Those literals are found with one
+ * {@link AhoCorasick} scan, and only addresses that contain one of them are handed to the regular expression engine.
+ * <p>A pattern anchored with {@code ^} that starts with a fixed amount of any characters followed by literal
+ * characters, such as {@code ^.abc}, also gets an anchored literal that is compared at its offset before anything
+ * else is done.
+ * <p>The literals are extracted from the syntax tree: every concatenation keeps the set of strings it can be exactly
+ * while that set stays small, and otherwise keeps the best set of strings it requires. When a letter is matched
+ * regardless of case anywhere in the pattern, every literal is folded to lower case and compared regardless of case.
+ * A prefilter never rejects an address the pattern matches; it only lets through some addresses the pattern does not
+ * match.
+ * <p>A LiteralPrefilter only checks Base58 addresses and is immutable once built, so it can be shared between threads.
+ *
+ * @see RegexParser
+ * @since v1.4.0
+ */
+public class LiteralPrefilter {
+
+    private static final int MAX_EXACT = 16;
+
+    private final AhoCorasick literals;
+    private final String[] literalStrings;
+    private final int anchorOffset;
+    private final String anchored;
+    private final boolean ignoreCase;
+
+    private LiteralPrefilter(String[] literalStrings, int anchorOffset, String anchored, boolean ignoreCase) {
+        this.literalStrings = literalStrings;
+        this.literals = literalStrings == null ? null : new AhoCorasick(literalStrings, ignoreCase);
+        this.anchorOffset = anchorOffset;
+        this.anchored = anchored;
+        this.ignoreCase = ignoreCase;
+    }
+
+    /**
+     * Builds the prefilter of a pattern.
+     * @return the prefilter, or null if the pattern is not supported by RegexParser or requires no literal.
+     */
+    public static LiteralPrefilter of(Pattern pattern) {
+        RegexNode root;
+        try {
+            root = RegexParser.parse(pattern);
+        } catch (UnsupportedPatternException e) {
+            return null;
+        }
+        return of(root);
+    }
+
+    /**
+     * Builds the prefilter of a parsed pattern.
+     * @return the prefilter, or null if the pattern requires no literal.
+     */
+    public static LiteralPrefilter of(RegexNode root) {
+        boolean ignoreCase = hasCaseInsensitiveLetter(root);
+        Info info = analyze(root, ignoreCase);
+        Set<String> required = info.required();
+        String[] literalStrings = null;
+        if (required != null && minLength(required) > 0) {
+            List<String> base58 = new ArrayList<String>();
+            for (String literal: required) {
+                // A literal with a character that is not Base58 can never be part of an address.
+                if (isPossible(literal, ignoreCase)) {
+                    base58.add(literal);
+                }
+            }
+            literalStrings = base58.toArray(new String[base58.size()]);
+        }
+        int anchorOffset = -1;
+        String anchored = null;
+        List<RegexNode> sequence = root.getType() == RegexNode.Type.CONCAT ? root.getChildren() : Collections.singletonList(root);
+        if (!sequence.isEmpty() && sequence.get(0).getType() == RegexNode.Type.BEGIN) {
+            int i = 1;
+            while (i < sequence.size() && isAnyBase58(sequence.get(i))) {
+                i++;
+            }
+            int start = i;
+            StringBuilder prefix = new StringBuilder();
+            for (; i < sequence.size() && singleChar(sequence.get(i), ignoreCase) != null; i++) {
+                prefix.append(singleChar(sequence.get(i), ignoreCase));
+            }
+            if (prefix.length() > 0) {
+                anchored = prefix.toString();
+                anchorOffset = start - 1;
+            }
+        }
+        if (literalStrings == null && anchored == null) {
+            return null;
+        }
+        return new LiteralPrefilter(literalStrings, anchorOffset, anchored, ignoreCase);
+    }
+
+    /**
+     * Determines if an address may match the pattern of this prefilter. False means the pattern can never match it.
+     * @param address a buffer holding the Base58 address.
+     * @param length the length of the address in the buffer.
+     */
+    public boolean mayMatch(char[] address, int length) {
+        if (anchored != null) {
+            if (anchorOffset + anchored.length() > length) {
+                return false;
+            }
+            for (int i = 0; i < anchored.length(); i++) {
+                if (fold(address[anchorOffset + i]) != anchored.charAt(i)) {
+                    return false;
+                }
+            }
+        }
+        return literals == null || literals.find(address, 0, length) >= 0;
+    }
+
+    /**
+     * Returns the literals of which an address must contain one, or null if there are none.
+     */
+    public String[] getLiterals() {
+        return literalStrings == null ? null : literalStrings.clone();
+    }
+
+    /**
+     * Returns the literal an address must start with at {@link #getAnchorOffset()}, or null if there is none.
+     */
+    public String getAnchored() {
+        return anchored;
+    }
+
+    public int getAnchorOffset() {
+        return anchorOffset;
+    }
+
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+    private char fold(char c) {
+        return ignoreCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Determines if a literal can be part of a Base58 address, in either case of its letters when ignoring case.
+     */
+    private static boolean isPossible(String literal, boolean ignoreCase) {
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (Utils.indexOfBase58(c) < 0 && (!ignoreCase || Utils.indexOfBase58(Character.toUpperCase(c)) < 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determines if a node matches exactly one character which may be any Base58 character.
+     */
+    private static boolean isAnyBase58(RegexNode node) {
+        if (node.getType() != RegexNode.Type.CHARS) {
+            return false;
+        }
+        for (int i = 0; i < Utils.ALPHABET.length(); i++) {
+            if (!node.matches(Utils.ALPHABET.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the only character a node matches once folded, or null if it matches several.
+     */
+    private static Character singleChar(RegexNode node, boolean ignoreCase) {
+        Set<String> chars = node.getType() == RegexNode.Type.CHARS ? foldedChars(node, ignoreCase) : null;
+        return chars != null && chars.size() == 1 ? chars.iterator().next().charAt(0) : null;
+    }
+
+    private static boolean hasCaseInsensitiveLetter(RegexNode node) {
+        if (node.getType() == RegexNode.Type.CHARS) {
+            for (char c = 'a'; c <= 'z'; c++) {
+                if (node.matches(c) && node.matches(Character.toUpperCase(c)) && node.getCharCount() < 128) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (RegexNode child: node.getChildren()) {
+            if (hasCaseInsensitiveLetter(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the characters of a CHARS node folded to lower case as strings, or null if there are more than MAX_EXACT.
+     */
+    private static Set<String> foldedChars(RegexNode node, boolean ignoreCase) {
+        if (node.getCharCount() > 2 * MAX_EXACT) {
+            return null;
+        }
+        Set<String> chars = new LinkedHashSet<String>();
+        for (char c = 0; c < 128; c++) {
+            if (node.matches(c)) {
+                chars.add(String.valueOf(ignoreCase ? Character.toLowerCase(c) : c));
+            }
+        }
+        return chars.size() <= MAX_EXACT ? chars : null;
+    }
+
+    private static Info analyze(RegexNode node, boolean ignoreCase) {
+        switch (node.getType()) {
+            case CHARS:
+                return new Info(foldedChars(node, ignoreCase), null);
+            case BEGIN:
+            case END:
+                return new Info(Collections.singleton(""), null);
+            case CONCAT:
+                return analyzeConcat(node, ignoreCase);
+            case ALTERNATE:
+                return analyzeAlternate(node, ignoreCase);
+            default:
+                return analyzeRepeat(node, ignoreCase);
+        }
+    }
+
+    /**
+     * Concatenates runs of exact children while their cross product stays small. Every run and every child that is
+     * not exact is a requirement of the concatenation, and the best one is kept.
+     */
+    private static Info analyzeConcat(RegexNode node, boolean ignoreCase) {
+        Set<String> run = Collections.singleton("");
+        Set<String> best = null;
+        boolean exact = true;
+        for (RegexNode child: node.getChildren()) {
+            Info info = analyze(child, ignoreCase);
+            if (info.exact != null && run != null && run.size() * info.exact.size() <= MAX_EXACT) {
+                run = cross(run, info.exact);
+                continue;
+            }
+            best = better(best, run);
+            if (info.exact != null) {
+                run = info.exact;
+            } else {
+                run = Collections.singleton("");
+                best = better(best, info.match);
+            }
+            exact = false;
+        }
+        if (exact) {
+            return new Info(run, null);
+        }
+        return new Info(null, better(best, run));
+    }
+
+    private static Info analyzeAlternate(RegexNode node, boolean ignoreCase) {
+        Set<String> exact = new LinkedHashSet<String>();
+        Set<String> match = new LinkedHashSet<String>();
+        for (RegexNode child: node.getChildren()) {
+            Info info = analyze(child, ignoreCase);
+            if (exact != null && info.exact != null) {
+                exact.addAll(info.exact);
+                if (exact.size() > MAX_EXACT) {
+                    exact = null;
+                }
+            } else {
+                exact = null;
+            }
+            Set<String> required = info.required();
+            if (match != null && required != null) {
+                match.addAll(required);
+            } else {
+                match = null;
+            }
+        }
+        return exact != null ? new Info(exact, null) : new Info(null, match);
+    }
+
+    private static Info analyzeRepeat(RegexNode node, boolean ignoreCase) {
+        Info child = analyze(node.getChild(), ignoreCase);
+        if (node.getMin() == 0) {
+            if (node.getMax() == 1 && child.exact != null && child.exact.size() < MAX_EXACT) {
+                Set<String> exact = new LinkedHashSet<String>(child.exact);
+                exact.add("");
+                return new Info(exact, null);
+            }
+            return new Info(null, null);
+        }
+        if (node.getMin() == 1 && node.getMax() == 1) {
+            return child;
+        }
+        return new Info(null, child.required());
+    }
+
+    private static Set<String> cross(Set<String> left, Set<String> right) {
+        Set<String> product = new LinkedHashSet<String>();
+        for (String first: left) {
+            for (String second: right) {
+                product.add(first + second);
+            }
+        }
+        return product;
+    }
+
+    /**
+     * Returns the requirement that lets fewer addresses through: the one with the longest shortest string, then the
+     * one with fewer strings. A null requirement lets every address through.
+     */
+    private static Set<String> better(Set<String> first, Set<String> second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        int lengthDifference = minLength(first) - minLength(second);
+        if (lengthDifference != 0) {
+            return lengthDifference > 0 ? first : second;
+        }
+        return first.size() <= second.size() ? first : second;
+    }
+
+    private static int minLength(Set<String> strings) {
+        int min = Integer.MAX_VALUE;
+        for (String string: strings) {
+            min = Math.min(min, string.length());
+        }
+        return min;
+    }
+
+    /**
+     * What is known about the strings a node matches: either the exact set of them, or a set of strings one of which
+     * each of them contains. A null match means nothing is required.
+     */
+    private static class Info {
+
+        private final Set<String> exact;
+        private final Set<String> match;
+
+        Info(Set<String> exact, Set<String> match) {
+            this.exact = exact;
+            this.match = match;
+        }
+
+        Set<String> required() {
+            return exact != null ? exact : match;
+        }
+
+    }
+
+}
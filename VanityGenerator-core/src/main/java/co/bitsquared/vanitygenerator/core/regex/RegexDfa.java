@@ -0,0 +1,404 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RegexDfa is a deterministic automaton over the Base58 alphabet that matches several regular expressions at once,
+ * with the same semantics as {@code Pattern.matcher(address).find()} for each of them. Each pattern is turned into a
+ * Thompson NFA, and the union of those NFAs is turned into one DFA by subset construction, ahead of time, into a flat
+ * {@code int[]} transition table. An address is then matched with one table lookup per character, without
+ * backtracking, no matter how many patterns there are.
+ * <p>Since find() matches anywhere, every pattern is restarted at every position of the address. Once a pattern has
+ * matched it stays matched for the rest of the address (accepting is sticky). Only the lowest matching id is
+ * reported, so from then on the NFA states of that pattern and of every pattern with a higher id are dropped, and
+ * they no longer multiply the amount of DFA states. Patterns ending with {@code $} are accepted only after the last
+ * character.
+ * <p>Building gives up and returns null when a pattern repeats too many times or the DFA would need more than a given
+ * amount of states, so callers can split the patterns or fall back to java.util.regex.
+ * <p>A RegexDfa is immutable once built and can be shared between threads.
+ *
+ * @see RegexParser
+ * @since v1.4.0
+ */
+public class RegexDfa {
+
+    public static final int SYMBOLS = Utils.BASE;
+    public static final int NO_MATCH = -1;
+
+    private static final int MAX_REPEAT = 64;
+
+    private final int[] transitions;
+    private final int[] matches;
+    private final int patternCount;
+
+    private RegexDfa(int[] transitions, int[] matches, int patternCount) {
+        this.transitions = transitions;
+        this.matches = matches;
+        this.patternCount = patternCount;
+    }
+
+    /**
+     * Builds one DFA for several parsed patterns.
+     * @param patterns the patterns to match. The index of a pattern is its id.
+     * @param maxStates the largest amount of DFA states to build.
+     * @return the DFA, or null if it would need more than maxStates states or a pattern repeats more than 64 times.
+     */
+    public static RegexDfa build(List<RegexNode> patterns, int maxStates) {
+        Nfa nfa = new Nfa();
+        int[] starts = new int[patterns.size()];
+        for (int id = 0; id < starts.length; id++) {
+            int accept = nfa.add(Nfa.ACCEPT, 0, -1, -1, id);
+            starts[id] = nfa.compile(patterns.get(id), accept, id);
+            if (starts[id] < 0) {
+                return null;
+            }
+        }
+        return new Builder(nfa, starts, maxStates).build();
+    }
+
+    /**
+     * Returns the state the DFA starts in, before the first character of an address.
+     */
+    public int getStartState() {
+        return 0;
+    }
+
+    public int getStateCount() {
+        return matches.length;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * Returns the state after reading a symbol.
+     * @param symbol the index of a character in the Base58 alphabet.
+     */
+    public int next(int state, int symbol) {
+        return transitions[state * SYMBOLS + symbol];
+    }
+
+    /**
+     * Returns the lowest id of the patterns that have matched once the address ends in a state, or NO_MATCH.
+     */
+    public int getMatch(int state) {
+        return matches[state];
+    }
+
+    /**
+     * Matches a Base58 address against every pattern.
+     * @param address a buffer holding the address. Every character must be Base58.
+     * @param length the length of the address in the buffer.
+     * @return the lowest id of the matching patterns, or NO_MATCH.
+     */
+    public int firstMatch(char[] address, int length) {
+        int state = 0;
+        for (int i = 0; i < length; i++) {
+            state = transitions[state * SYMBOLS + Utils.indexOfBase58(address[i])];
+        }
+        return matches[state];
+    }
+
+    /**
+     * Nfa holds the Thompson NFA of every pattern as parallel arrays. Fragments are compiled back to front, so each
+     * state is created after the state it leads to and no patching is needed.
+     */
+    private static class Nfa {
+
+        static final int CHARS = 0;
+        static final int SPLIT = 1;
+        static final int BEGIN = 2;
+        static final int END = 3;
+        static final int ACCEPT = 4;
+
+        private int size = 0;
+        private int[] types = new int[64];
+        private long[] masks = new long[64];
+        private int[] outs = new int[64];
+        private int[] alternatives = new int[64];
+        private int[] owners = new int[64];
+
+        int add(int type, long mask, int out, int alternative, int owner) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                masks = Arrays.copyOf(masks, capacity);
+                outs = Arrays.copyOf(outs, capacity);
+                alternatives = Arrays.copyOf(alternatives, capacity);
+                owners = Arrays.copyOf(owners, capacity);
+            }
+            types[size] = type;
+            masks[size] = mask;
+            outs[size] = out;
+            alternatives[size] = alternative;
+            owners[size] = owner;
+            return size++;
+        }
+
+        /**
+         * Compiles a node that continues with the state next.
+         * @return the first state of the node, or -1 if the node cannot be compiled.
+         */
+        int compile(RegexNode node, int next, int owner) {
+            switch (node.getType()) {
+                case CHARS:
+                    long mask = 0;
+                    for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+                        if (node.matches(Utils.ALPHABET.charAt(symbol))) {
+                            mask |= 1L << symbol;
+                        }
+                    }
+                    return add(CHARS, mask, next, -1, owner);
+                case BEGIN:
+                    return add(BEGIN, 0, next, -1, owner);
+                case END:
+                    return add(END, 0, next, -1, owner);
+                case CONCAT:
+                    List<RegexNode> sequence = node.getChildren();
+                    for (int i = sequence.size() - 1; i >= 0 && next >= 0; i--) {
+                        next = compile(sequence.get(i), next, owner);
+                    }
+                    return next;
+                case ALTERNATE:
+                    List<RegexNode> choices = node.getChildren();
+                    int first = compile(choices.get(choices.size() - 1), next, owner);
+                    for (int i = choices.size() - 2; i >= 0 && first >= 0; i--) {
+                        int alternative = compile(choices.get(i), next, owner);
+                        first = alternative < 0 ? -1 : add(SPLIT, 0, alternative, first, owner);
+                    }
+                    return first;
+                default:
+                    return compileRepeat(node, next, owner);
+            }
+        }
+
+        private int compileRepeat(RegexNode node, int next, int owner) {
+            int min = node.getMin();
+            int max = node.getMax();
+            if (min > MAX_REPEAT || max > MAX_REPEAT) {
+                return -1;
+            }
+            int tail;
+            if (max == RegexNode.UNBOUNDED) {
+                tail = add(SPLIT, 0, -1, next, owner);
+                int body = compile(node.getChild(), tail, owner);
+                if (body < 0) {
+                    return -1;
+                }
+                outs[tail] = body;
+            } else {
+                tail = next;
+                for (int i = min; i < max && tail >= 0; i++) {
+                    int body = compile(node.getChild(), tail, owner);
+                    tail = body < 0 ? -1 : add(SPLIT, 0, body, next, owner);
+                }
+            }
+            for (int i = 0; i < min && tail >= 0; i++) {
+                tail = compile(node.getChild(), tail, owner);
+            }
+            return tail;
+        }
+
+    }
+
+    /**
+     * Builder runs the subset construction. A DFA state is the set of NFA states waiting for a character (or for the
+     * end of the address) along with the lowest id of the patterns that have already matched. Only the patterns with
+     * a lower id than that one keep their NFA states.
+     */
+    private static class Builder {
+
+        private final Nfa nfa;
+        private final int[] starts;
+        private final int maxStates;
+        private final Map<StateKey, Integer> ids = new HashMap<StateKey, Integer>();
+        private final List<StateKey> states = new ArrayList<StateKey>();
+
+        Builder(Nfa nfa, int[] starts, int maxStates) {
+            this.nfa = nfa;
+            this.starts = starts;
+            this.maxStates = maxStates;
+        }
+
+        RegexDfa build() {
+            idOf(closure(new int[0], starts.length, true));
+            int[] transitions = new int[SYMBOLS];
+            for (int state = 0; state < states.size(); state++) {
+                StateKey key = states.get(state);
+                if (transitions.length < states.size() * SYMBOLS) {
+                    transitions = Arrays.copyOf(transitions, Math.min(maxStates, states.size() * 2) * SYMBOLS);
+                }
+                for (int symbol = 0; symbol < SYMBOLS; symbol++) {
+                    int id = idOf(closure(step(key.nfaStates, symbol), key.matched, false));
+                    if (id < 0) {
+                        return null;
+                    }
+                    transitions[state * SYMBOLS + symbol] = id;
+                }
+            }
+            int[] matches = new int[states.size()];
+            for (int state = 0; state < matches.length; state++) {
+                matches[state] = matchAtEnd(states.get(state));
+            }
+            return new RegexDfa(Arrays.copyOf(transitions, states.size() * SYMBOLS), matches, starts.length);
+        }
+
+        private int idOf(StateKey key) {
+            Integer id = ids.get(key);
+            if (id == null) {
+                if (states.size() == maxStates) {
+                    return -1;
+                }
+                id = states.size();
+                ids.put(key, id);
+                states.add(key);
+            }
+            return id;
+        }
+
+        private int[] step(int[] nfaStates, int symbol) {
+            int[] targets = new int[nfaStates.length];
+            int count = 0;
+            for (int state: nfaStates) {
+                if (nfa.types[state] == Nfa.CHARS && (nfa.masks[state] & (1L << symbol)) != 0) {
+                    targets[count++] = nfa.outs[state];
+                }
+            }
+            return Arrays.copyOf(targets, count);
+        }
+
+        /**
+         * Follows every empty transition from a set of states and from the start of every pattern with a lower id than
+         * matched.
+         * @param matched the lowest id of the patterns that have matched so far, or the amount of patterns.
+         * @return the state made of the sorted NFA states waiting for a character or for the end of the address.
+         */
+        private StateKey closure(int[] seeds, int matched, boolean atBegin) {
+            BitSet visited = new BitSet();
+            int[] stack = new int[nfa.size];
+            int top = 0;
+            for (int seed: seeds) {
+                stack = push(stack, top++, seed);
+            }
+            for (int id = 0; id < matched; id++) {
+                stack = push(stack, top++, starts[id]);
+            }
+            while (top > 0) {
+                int state = stack[--top];
+                if (visited.get(state)) {
+                    continue;
+                }
+                visited.set(state);
+                switch (nfa.types[state]) {
+                    case Nfa.SPLIT:
+                        stack = push(stack, top++, nfa.outs[state]);
+                        stack = push(stack, top++, nfa.alternatives[state]);
+                        break;
+                    case Nfa.BEGIN:
+                        if (atBegin) {
+                            stack = push(stack, top++, nfa.outs[state]);
+                        }
+                        break;
+                    case Nfa.ACCEPT:
+                        matched = Math.min(matched, nfa.owners[state]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            int[] waiting = new int[visited.cardinality()];
+            int count = 0;
+            for (int state = visited.nextSetBit(0); state >= 0; state = visited.nextSetBit(state + 1)) {
+                int type = nfa.types[state];
+                if ((type == Nfa.CHARS || type == Nfa.END) && nfa.owners[state] < matched) {
+                    waiting[count++] = state;
+                }
+            }
+            return new StateKey(Arrays.copyOf(waiting, count), matched);
+        }
+
+        /**
+         * Returns the lowest id of the patterns that have matched in a state, including the ones that only match at
+         * the end of the address, or NO_MATCH.
+         */
+        private int matchAtEnd(StateKey key) {
+            int matched = key.matched;
+            BitSet visited = new BitSet();
+            int[] stack = new int[nfa.size];
+            int top = 0;
+            for (int state: key.nfaStates) {
+                if (nfa.types[state] == Nfa.END) {
+                    stack[top++] = state;
+                }
+            }
+            while (top > 0) {
+                int state = stack[--top];
+                if (visited.get(state)) {
+                    continue;
+                }
+                visited.set(state);
+                switch (nfa.types[state]) {
+                    case Nfa.SPLIT:
+                        stack = push(stack, top++, nfa.outs[state]);
+                        stack = push(stack, top++, nfa.alternatives[state]);
+                        break;
+                    case Nfa.END:
+                        stack = push(stack, top++, nfa.outs[state]);
+                        break;
+                    case Nfa.ACCEPT:
+                        matched = Math.min(matched, nfa.owners[state]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return matched == starts.length ? NO_MATCH : matched;
+        }
+
+        private static int[] push(int[] stack, int top, int state) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2 + 1);
+            }
+            stack[top] = state;
+            return stack;
+        }
+
+    }
+
+    private static class StateKey {
+
+        private final int[] nfaStates;
+        private final int matched;
+        private final int hash;
+
+        StateKey(int[] nfaStates, int matched) {
+            this.nfaStates = nfaStates;
+            this.matched = matched;
+            hash = 31 * Arrays.hashCode(nfaStates) + matched;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof StateKey)) {
+                return false;
+            }
+            StateKey otherKey = (StateKey) other;
+            return Arrays.equals(nfaStates, otherKey.nfaStates) && matched == otherKey.matched;
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * RegexNode is one node of the syntax tree of a regular expression as parsed by {@link RegexParser}. Case
+ * insensitivity is already applied by the parser, so a letter matched regardless of case is a node of both cases.
+ * <p>Characters are kept as a table of the 128 ASCII characters along with a flag for every other character, since
+ * addresses only ever contain ASCII characters.
+ * <p>A RegexNode is immutable and can be shared between threads.
+ *
+ * @see RegexParser
+ * @since v1.4.0
+ */
+public final class RegexNode {
+
+    public static final int UNBOUNDED = -1;
+
+    public enum Type {
+        /** Matches one character out of a set. */
+        CHARS,
+        /** Matches its children one after another. */
+        CONCAT,
+        /** Matches any one of its children. */
+        ALTERNATE,
+        /** Matches its only child between min and max times. */
+        REPEAT,
+        /** Matches the empty string at the beginning of the input. */
+        BEGIN,
+        /** Matches the empty string at the end of the input. */
+        END
+    }
+
+    private final Type type;
+    private final boolean[] ascii;
+    private final boolean others;
+    private final List<RegexNode> children;
+    private final int min;
+    private final int max;
+
+    private RegexNode(Type type, boolean[] ascii, boolean others, List<RegexNode> children, int min, int max) {
+        this.type = type;
+        this.ascii = ascii;
+        this.others = others;
+        this.children = children;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Creates a node matching one of a set of characters.
+     * @param ascii which of the 128 ASCII characters match. The array is copied.
+     * @param others whether every character outside of ASCII matches.
+     */
+    public static RegexNode chars(boolean[] ascii, boolean others) {
+        boolean[] copy = new boolean[128];
+        System.arraycopy(ascii, 0, copy, 0, Math.min(ascii.length, copy.length));
+        return new RegexNode(Type.CHARS, copy, others, Collections.<RegexNode>emptyList(), 1, 1);
+    }
+
+    public static RegexNode concat(List<RegexNode> children) {
+        return new RegexNode(Type.CONCAT, null, false, immutableCopy(children), 1, 1);
+    }
+
+    public static RegexNode alternate(List<RegexNode> children) {
+        return new RegexNode(Type.ALTERNATE, null, false, immutableCopy(children), 1, 1);
+    }
+
+    /**
+     * Creates a node matching a child between min and max times.
+     * @param max the largest amount of times, or UNBOUNDED.
+     */
+    public static RegexNode repeat(RegexNode child, int min, int max) {
+        return new RegexNode(Type.REPEAT, null, false, Collections.singletonList(child), min, max);
+    }
+
+    public static RegexNode begin() {
+        return new RegexNode(Type.BEGIN, null, false, Collections.<RegexNode>emptyList(), 1, 1);
+    }
+
+    public static RegexNode end() {
+        return new RegexNode(Type.END, null, false, Collections.<RegexNode>emptyList(), 1, 1);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Determines if a CHARS node matches a character.
+     */
+    public boolean matches(char c) {
+        return c < 128 ? ascii[c] : others;
+    }
+
+    /**
+     * Returns the amount of characters a CHARS node matches, or Integer.MAX_VALUE if it matches characters outside of
+     * ASCII.
+     */
+    public int getCharCount() {
+        if (others) {
+            return Integer.MAX_VALUE;
+        }
+        int count = 0;
+        for (boolean matches: ascii) {
+            if (matches) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public List<RegexNode> getChildren() {
+        return children;
+    }
+
+    public RegexNode getChild() {
+        return children.get(0);
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * Returns the largest amount of repetitions of a REPEAT node, or UNBOUNDED.
+     */
+    public int getMax() {
+        return max;
+    }
+
+    private static List<RegexNode> immutableCopy(List<RegexNode> nodes) {
+        return Collections.unmodifiableList(new ArrayList<RegexNode>(nodes));
+    }
+
+}
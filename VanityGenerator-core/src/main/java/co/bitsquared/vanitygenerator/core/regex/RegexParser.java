@@ -0,0 +1,414 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import co.bitsquared.vanitygenerator.core.exceptions.UnsupportedPatternException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * RegexParser turns a {@link Pattern} into a tree of {@link RegexNode}s. It understands the part of java.util.regex
+ * that vanity patterns are written in: literals and escapes, {@code .}, character classes with ranges and negation,
+ * the predefined classes {@code \d \w \s} and their negations, groups, alternation, the greedy and lazy quantifiers,
+ * {@code ^ $}, and the {@code i} flag either inline or as {@link Pattern#CASE_INSENSITIVE}.
+ * <p>Anything else (lookarounds, back references, possessive quantifiers, nested classes, other flags...) is rejected
+ * with an UnsupportedPatternException, so callers can fall back to java.util.regex for those patterns. Patterns are
+ * assumed to be valid since they were already compiled by {@link Pattern}.
+ *
+ * @since v1.4.0
+ */
+public class RegexParser {
+
+    private static final int SUPPORTED_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+    private final String pattern;
+    private int index = 0;
+    private int depth = 0;
+    private boolean caseInsensitive;
+    private boolean initialFlags = true;
+    private boolean initialFlagsUsed;
+    private boolean initialFlagsUnknown;
+
+    private RegexParser(String pattern, boolean caseInsensitive) {
+        this.pattern = pattern;
+        this.caseInsensitive = caseInsensitive;
+    }
+
+    /**
+     * Parses a compiled Pattern. Pattern.flags() also reports the inline flags found outside of any group, so a pattern
+     * with a letter before such a flag, like {@code a(?i)b}, is not supported since the flags the letter was compiled
+     * with are unknown.
+     * @throws UnsupportedPatternException if the pattern or one of its flags is not supported.
+     */
+    public static RegexNode parse(Pattern pattern) {
+        if ((pattern.flags() & ~SUPPORTED_FLAGS) != 0) {
+            throw new UnsupportedPatternException(pattern.pattern(), 0, "flags " + pattern.flags());
+        }
+        RegexParser parser = new RegexParser(pattern.pattern(), (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0);
+        RegexNode node = parser.parse();
+        if (parser.initialFlagsUnknown) {
+            // Pattern.flags() also holds the inline flags found outside of any group, so the flags the pattern was
+            // compiled with are unknown, and a letter was matched under them.
+            throw new UnsupportedPatternException(pattern.pattern(), 0, "letters before inline flags");
+        }
+        return node;
+    }
+
+    /**
+     * Parses a regular expression.
+     * @param caseInsensitive whether letters match regardless of case until an inline flag says otherwise.
+     * @throws UnsupportedPatternException if the pattern is not supported.
+     */
+    public static RegexNode parse(String pattern, boolean caseInsensitive) {
+        return new RegexParser(pattern, caseInsensitive).parse();
+    }
+
+    private RegexNode parse() {
+        RegexNode node = parseAlternation();
+        if (index < pattern.length()) {
+            throw unsupported("unmatched )");
+        }
+        return node;
+    }
+
+    private RegexNode parseAlternation() {
+        List<RegexNode> alternatives = new ArrayList<RegexNode>();
+        alternatives.add(parseConcat());
+        while (peek('|')) {
+            index++;
+            alternatives.add(parseConcat());
+        }
+        return alternatives.size() == 1 ? alternatives.get(0) : RegexNode.alternate(alternatives);
+    }
+
+    private RegexNode parseConcat() {
+        List<RegexNode> sequence = new ArrayList<RegexNode>();
+        while (index < pattern.length() && !peek('|') && !peek(')')) {
+            if (parseInlineFlags()) {
+                continue;
+            }
+            sequence.add(parseQuantifier(parseAtom()));
+        }
+        return sequence.size() == 1 ? sequence.get(0) : RegexNode.concat(sequence);
+    }
+
+    /**
+     * Parses an inline flag group such as {@code (?i)} which changes the flags until the end of the enclosing group.
+     * @return true if one was parsed.
+     */
+    private boolean parseInlineFlags() {
+        if (!pattern.startsWith("(?", index)) {
+            return false;
+        }
+        int end = index + 2;
+        while (end < pattern.length() && (pattern.charAt(end) == 'i' || pattern.charAt(end) == '-')) {
+            end++;
+        }
+        if (end == index + 2 || end >= pattern.length() || pattern.charAt(end) != ')') {
+            return false;
+        }
+        if (depth == 0 && initialFlags && initialFlagsUsed) {
+            initialFlagsUnknown = true;
+        }
+        caseInsensitive = parseFlags(pattern.substring(index + 2, end));
+        initialFlags = false;
+        index = end + 1;
+        return true;
+    }
+
+    private boolean parseFlags(String flags) {
+        if (flags.equals("i")) {
+            return true;
+        } else if (flags.equals("-i")) {
+            return false;
+        }
+        throw unsupported("flags " + flags);
+    }
+
+    private RegexNode parseAtom() {
+        char c = pattern.charAt(index++);
+        switch (c) {
+            case '(':
+                return parseGroup();
+            case '[':
+                return parseClass();
+            case '.':
+                boolean[] any = new boolean[128];
+                for (int i = 0; i < any.length; i++) {
+                    any[i] = i != '\n' && i != '\r';
+                }
+                // Java's '.' also excludes the Unicode line separators, which never appear in an address.
+                return RegexNode.chars(any, true);
+            case '^':
+                return RegexNode.begin();
+            case '$':
+                return RegexNode.end();
+            case '\\':
+                return parseEscape();
+            case '*':
+            case '+':
+            case '?':
+            case '{':
+                throw unsupported("dangling quantifier " + c);
+            default:
+                return literal(c);
+        }
+    }
+
+    private RegexNode parseGroup() {
+        boolean outerCaseInsensitive = caseInsensitive;
+        boolean outerInitialFlags = initialFlags;
+        if (peek('?')) {
+            int colon = index + 1;
+            while (colon < pattern.length() && (pattern.charAt(colon) == 'i' || pattern.charAt(colon) == '-')) {
+                colon++;
+            }
+            if (colon >= pattern.length() || pattern.charAt(colon) != ':') {
+                throw unsupported("group construct");
+            }
+            if (colon > index + 1) {
+                caseInsensitive = parseFlags(pattern.substring(index + 1, colon));
+                initialFlags = false;
+            }
+            index = colon + 1;
+        }
+        depth++;
+        RegexNode group = parseAlternation();
+        if (!peek(')')) {
+            throw unsupported("unclosed group");
+        }
+        index++;
+        depth--;
+        caseInsensitive = outerCaseInsensitive;
+        initialFlags = outerInitialFlags;
+        return group;
+    }
+
+    private RegexNode parseQuantifier(RegexNode atom) {
+        if (index >= pattern.length()) {
+            return atom;
+        }
+        int min, max;
+        char c = pattern.charAt(index);
+        if (c == '*') {
+            min = 0;
+            max = RegexNode.UNBOUNDED;
+            index++;
+        } else if (c == '+') {
+            min = 1;
+            max = RegexNode.UNBOUNDED;
+            index++;
+        } else if (c == '?') {
+            min = 0;
+            max = 1;
+            index++;
+        } else if (c == '{') {
+            int close = pattern.indexOf('}', index);
+            if (close < 0) {
+                throw unsupported("unclosed quantifier");
+            }
+            String bounds = pattern.substring(index + 1, close);
+            int comma = bounds.indexOf(',');
+            try {
+                if (comma < 0) {
+                    min = Integer.parseInt(bounds);
+                    max = min;
+                } else {
+                    min = Integer.parseInt(bounds.substring(0, comma));
+                    max = comma == bounds.length() - 1 ? RegexNode.UNBOUNDED : Integer.parseInt(bounds.substring(comma + 1));
+                }
+            } catch (NumberFormatException e) {
+                throw unsupported("quantifier {" + bounds + "}");
+            }
+            index = close + 1;
+        } else {
+            return atom;
+        }
+        if (peek('+')) {
+            throw unsupported("possessive quantifier");
+        }
+        if (peek('?')) {
+            // A lazy quantifier matches the same inputs as a greedy one.
+            index++;
+        }
+        return parseQuantifier(RegexNode.repeat(atom, min, max));
+    }
+
+    private RegexNode parseClass() {
+        boolean[] ascii = new boolean[128];
+        boolean others = false;
+        boolean negated = peek('^');
+        if (negated) {
+            index++;
+        }
+        boolean first = true;
+        while (!peek(']') || first) {
+            if (index >= pattern.length()) {
+                throw unsupported("unclosed class");
+            }
+            char c = pattern.charAt(index++);
+            if (c == '[' || (c == '&' && peek('&')) || (c == ']' && first)) {
+                throw unsupported("nested class");
+            }
+            first = false;
+            char low;
+            if (c == '\\') {
+                boolean[] predefined = predefinedClass(pattern.charAt(index));
+                if (predefined != null) {
+                    others |= Character.isUpperCase(pattern.charAt(index));
+                    index++;
+                    or(ascii, predefined);
+                    continue;
+                }
+                low = parseEscapedChar();
+            } else {
+                low = c;
+            }
+            char high = low;
+            if (peek('-') && index + 1 < pattern.length() && pattern.charAt(index + 1) != ']') {
+                index++;
+                char next = pattern.charAt(index++);
+                high = next == '\\' ? parseEscapedChar() : next;
+            }
+            for (char member = low; member <= high && member < 128; member++) {
+                addCased(ascii, member);
+            }
+            if (high >= 128) {
+                throw unsupported("non ASCII class");
+            }
+        }
+        index++;
+        if (negated) {
+            for (int i = 0; i < ascii.length; i++) {
+                ascii[i] = !ascii[i];
+            }
+        }
+        return RegexNode.chars(ascii, negated != others);
+    }
+
+    private RegexNode parseEscape() {
+        if (index >= pattern.length()) {
+            throw unsupported("trailing \\");
+        }
+        boolean[] predefined = predefinedClass(pattern.charAt(index));
+        if (predefined != null) {
+            index++;
+            boolean negated = Character.isUpperCase(pattern.charAt(index - 1));
+            return RegexNode.chars(predefined, negated);
+        }
+        return literal(parseEscapedChar());
+    }
+
+    /**
+     * Returns the ASCII members of a predefined class such as \d, or null if c does not name one.
+     */
+    private static boolean[] predefinedClass(char c) {
+        String members;
+        switch (Character.toLowerCase(c)) {
+            case 'd':
+                members = "0123456789";
+                break;
+            case 'w':
+                members = "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ_";
+                break;
+            case 's':
+                members = " \t\n\u000B\f\r";
+                break;
+            default:
+                return null;
+        }
+        boolean[] ascii = new boolean[128];
+        for (int i = 0; i < members.length(); i++) {
+            ascii[members.charAt(i)] = true;
+        }
+        if (Character.isUpperCase(c)) {
+            for (int i = 0; i < ascii.length; i++) {
+                ascii[i] = !ascii[i];
+            }
+        }
+        return ascii;
+    }
+
+    /**
+     * Parses the character of an escape sequence, right after its backslash.
+     */
+    private char parseEscapedChar() {
+        char c = pattern.charAt(index++);
+        switch (c) {
+            case 't':
+                return '\t';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 'f':
+                return '\f';
+            case 'a':
+                return '\u0007';
+            case 'e':
+                return '\u001B';
+            case 'x':
+                return parseHex(2);
+            case 'u':
+                return parseHex(4);
+            default:
+                if (Character.isLetterOrDigit(c)) {
+                    throw unsupported("escape \\" + c);
+                }
+                return c;
+        }
+    }
+
+    private char parseHex(int digits) {
+        if (index + digits > pattern.length()) {
+            throw unsupported("hex escape");
+        }
+        try {
+            char c = (char) Integer.parseInt(pattern.substring(index, index + digits), 16);
+            index += digits;
+            return c;
+        } catch (NumberFormatException e) {
+            throw unsupported("hex escape");
+        }
+    }
+
+    private RegexNode literal(char c) {
+        if (c >= 128) {
+            // Addresses are ASCII, so a node only needs to tell whether it matches characters outside of it.
+            boolean[] none = new boolean[128];
+            return RegexNode.chars(none, true);
+        }
+        boolean[] ascii = new boolean[128];
+        addCased(ascii, c);
+        return RegexNode.chars(ascii, false);
+    }
+
+    /**
+     * Adds a character to a set, along with its other case when matching regardless of case.
+     */
+    private void addCased(boolean[] ascii, char c) {
+        ascii[c] = true;
+        if (Character.toLowerCase(c) != Character.toUpperCase(c)) {
+            initialFlagsUsed |= initialFlags;
+        }
+        if (caseInsensitive) {
+            ascii[Character.toLowerCase(c)] = true;
+            ascii[Character.toUpperCase(c)] = true;
+        }
+    }
+
+    private static void or(boolean[] target, boolean[] source) {
+        for (int i = 0; i < target.length; i++) {
+            target[i] |= source[i];
+        }
+    }
+
+    private boolean peek(char c) {
+        return index < pattern.length() && pattern.charAt(index) == c;
+    }
+
+    private UnsupportedPatternException unsupported(String reason) {
+        return new UnsupportedPatternException(pattern, index, reason);
+    }
+
+}
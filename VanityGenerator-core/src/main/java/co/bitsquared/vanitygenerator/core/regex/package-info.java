@@ -0,0 +1,5 @@
+/**
+ * Parses and analyzes the regular expressions of RegexQuery's so they can be matched without running the regular
+ * expression engine on every address.
+ */
+package co.bitsquared.vanitygenerator.core.regex;
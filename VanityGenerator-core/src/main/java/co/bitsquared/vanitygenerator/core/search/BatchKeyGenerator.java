@@ -0,0 +1,246 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import co.bitsquared.vanitygenerator.core.query.AddressView;
+import org.bitcoinj.core.ECKey;
+import org.spongycastle.math.ec.ECCurve;
+import org.spongycastle.math.ec.ECFieldElement;
+import org.spongycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+
+/**
+ * BatchKeyGenerator produces blocks of consecutive points from a {@link KeyStream}. Points made by point addition are
+ * not normalized, and getting the affine X / Y that address hashing needs costs one field inversion per point. A batch
+ * is instead normalized all at once with Montgomery's simultaneous inversion trick (see
+ * {@link ECCurve#normalizeAll(ECPoint[])}), which costs a single inversion plus 3 multiplications per point.
+ * <p>Each normalized point is then expanded into {@link #KEYS_PER_POINT} public keys using the symmetries of secp256k1.
+ * For a point (x, y) with private key k:
+ * <pre>
+ *      Variant |   Public Key      |   Private Key
+ *      0       |   (x, y)          |   k
+ *      1       |   (x, -y)         |   n - k
+ *      2       |   (βx, y)         |   λk
+ *      3       |   (βx, -y)        |   n - λk
+ *      4       |   (β²x, y)        |   λ²k
+ *      5       |   (β²x, -y)       |   n - λ²k
+ * </pre>
+ * Each extra key costs at most one field multiplication, and negating y only flips the compressed prefix byte.
+ * <p>After {@link #fill()}, the serialized compressed public keys of the batch are held in a reusable buffer returned by
+ * {@link #getPublicKeys()}, where key i starts at {@code i * COMPRESSED_KEY_LENGTH}. The affine y coordinate of each
+ * point is kept next to them, so {@link #reset(AddressView, int)} can point a view at any key of the batch, in both
+ * forms, without building an ECPoint for it.
+ * <p><strong>NOTE</strong>: A BatchKeyGenerator is not thread safe. Each thread should own its own generator.
+ *
+ * @see KeyStream
+ * @see PoolSearch
+ * @since v1.4.0
+ */
+public class BatchKeyGenerator {
+
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int COMPRESSED_KEY_LENGTH = 33;
+    public static final int KEYS_PER_POINT = 6;
+
+    private static final ECCurve CURVE = ECKey.CURVE.getCurve();
+    private static final BigInteger CURVE_ORDER = ECKey.CURVE.getN();
+    private static final int COORDINATE_LENGTH = 32;
+    private static final ECFieldElement BETA = CURVE.fromBigInteger(
+            new BigInteger("7ae96a2b657c07106e64479eac3434e99cf0497512f58995c1396c28719501ee", 16));
+    private static final BigInteger LAMBDA =
+            new BigInteger("5363ad4cc05c30e0a5261c028812645a122e22ea20816678df02967c1b23bd72", 16);
+    private static final BigInteger LAMBDA_SQUARED = LAMBDA.multiply(LAMBDA).mod(CURVE_ORDER);
+
+    private final KeyStream stream;
+    private final ECPoint[] points;
+    private final ECFieldElement[] xCoords;
+    private final byte[] publicKeys;
+    private final byte[] yCoords;
+    private BigInteger batchBase;
+    private long firstOffset;
+    private int pointCount;
+
+    public BatchKeyGenerator() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    public BatchKeyGenerator(int batchSize) {
+        this(batchSize, new KeyStream());
+    }
+
+    /**
+     * Creates a BatchKeyGenerator that draws its points from an existing KeyStream.
+     * @param batchSize the amount of points per batch. If the value is less than 1, DEFAULT_BATCH_SIZE is used.
+     * @param stream the KeyStream to walk.
+     */
+    public BatchKeyGenerator(int batchSize, KeyStream stream) {
+        if (batchSize < 1) {
+            batchSize = DEFAULT_BATCH_SIZE;
+        }
+        this.stream = stream;
+        points = new ECPoint[batchSize];
+        xCoords = new ECFieldElement[batchSize * 3];
+        publicKeys = new byte[batchSize * KEYS_PER_POINT * COMPRESSED_KEY_LENGTH];
+        yCoords = new byte[batchSize * COORDINATE_LENGTH];
+    }
+
+    /**
+     * Generates the next batch of consecutive points, normalizes them with a single inversion, expands each point into
+     * its symmetric keys and serializes them into the public key buffer. The previous batch is overwritten.
+     * @return the amount of keys in this batch, which is KEYS_PER_POINT times the amount of points. This is only less
+     * than the full batch when the stream had to reseed.
+     */
+    public int fill() {
+        batchBase = stream.getBasePrivateKey();
+        firstOffset = stream.getCounter() + 1;
+        int count = 0;
+        while (count < points.length) {
+            ECPoint point = stream.advance();
+            if (stream.getBasePrivateKey() != batchBase) {
+                // The stream wrapped around and reseeded; the rest of this batch would belong to another base key.
+                break;
+            }
+            points[count++] = point;
+        }
+        if (count < points.length) {
+            for (int i = count; i < points.length; i++) {
+                points[i] = null;
+            }
+        }
+        normalize(count);
+        pointCount = count;
+        for (int i = 0; i < pointCount; i++) {
+            expand(i);
+        }
+        return size();
+    }
+
+    /**
+     * Discards the rest of the current batch and reseeds the stream, so the next batch starts from a new random base
+     * private key. Every key of a stream is its base plus a known offset, so once a found private key has been handed
+     * out, the keys that follow it would be known to whoever holds it.
+     * @see KeyStream#reseed()
+     */
+    public void reseed() {
+        stream.reseed();
+        pointCount = 0;
+    }
+
+    /**
+     * Returns the amount of keys in the current batch.
+     */
+    public int size() {
+        return pointCount * KEYS_PER_POINT;
+    }
+
+    /**
+     * Returns the buffer holding the compressed public keys of the current batch. This buffer is reused across batches.
+     */
+    public byte[] getPublicKeys() {
+        return publicKeys;
+    }
+
+    /**
+     * Points a view at the key at index of the current batch. The view reads the buffers of this generator in place, so
+     * it must be reset again before the next call to fill().
+     * @return the view.
+     */
+    public AddressView reset(AddressView view, int index) {
+        return view.reset(publicKeys, index * COMPRESSED_KEY_LENGTH, yCoords, (index / KEYS_PER_POINT) * COORDINATE_LENGTH);
+    }
+
+    /**
+     * Returns the normalized point of the key at index of the current batch. This builds an ECPoint for every variant
+     * but the first, so the search loop should use reset(AddressView, int) instead.
+     */
+    public ECPoint getPoint(int index) {
+        ECPoint point = points[index / KEYS_PER_POINT];
+        int variant = index % KEYS_PER_POINT;
+        if (variant == 0) {
+            return point;
+        }
+        ECFieldElement y = point.getAffineYCoord();
+        if ((variant & 1) == 1) {
+            y = y.negate();
+        }
+        return CURVE.createPoint(xCoords[xIndex(index)].toBigInteger(), y.toBigInteger());
+    }
+
+    /**
+     * Returns a public only, compressed ECKey for the key at index of the current batch.
+     */
+    public ECKey getPublicKey(int index) {
+        return ECKey.fromPublicOnly(ECKey.compressPoint(getPoint(index)));
+    }
+
+    /**
+     * Returns the private key value of the key at index of the current batch.
+     */
+    public BigInteger getPrivateKeyValue(int index) {
+        BigInteger privateKey = batchBase.add(BigInteger.valueOf(firstOffset + index / KEYS_PER_POINT));
+        int variant = index % KEYS_PER_POINT;
+        if (variant >= 4) {
+            privateKey = privateKey.multiply(LAMBDA_SQUARED);
+        } else if (variant >= 2) {
+            privateKey = privateKey.multiply(LAMBDA);
+        }
+        privateKey = privateKey.mod(CURVE_ORDER);
+        if ((variant & 1) == 1) {
+            privateKey = CURVE_ORDER.subtract(privateKey);
+        }
+        return privateKey;
+    }
+
+    /**
+     * Builds the compressed ECKey, including its private key, of the key at index of the current batch. This should
+     * only be called when a match has been found.
+     */
+    public ECKey getPrivateKey(int index) {
+        return ECKey.fromPrivateAndPrecalculatedPublic(getPrivateKeyValue(index), ECKey.compressPoint(getPoint(index)));
+    }
+
+    private void normalize(int count) {
+        if (count == points.length) {
+            CURVE.normalizeAll(points);
+        } else {
+            ECPoint[] partial = new ECPoint[count];
+            System.arraycopy(points, 0, partial, 0, count);
+            CURVE.normalizeAll(partial);
+            System.arraycopy(partial, 0, points, 0, count);
+        }
+    }
+
+    private void expand(int pointIndex) {
+        ECPoint point = points[pointIndex];
+        ECFieldElement x = point.getAffineXCoord();
+        ECFieldElement betaX = x.multiply(BETA);
+        xCoords[pointIndex * 3] = x;
+        xCoords[pointIndex * 3 + 1] = betaX;
+        xCoords[pointIndex * 3 + 2] = betaX.multiply(BETA);
+        ECFieldElement y = point.getAffineYCoord();
+        boolean odd = y.testBitZero();
+        write(y, yCoords, pointIndex * COORDINATE_LENGTH);
+        int offset = pointIndex * KEYS_PER_POINT * COMPRESSED_KEY_LENGTH;
+        for (int i = 0; i < 3; i++) {
+            serialize(xCoords[pointIndex * 3 + i], odd, publicKeys, offset);
+            offset += COMPRESSED_KEY_LENGTH;
+            System.arraycopy(publicKeys, offset - COMPRESSED_KEY_LENGTH, publicKeys, offset, COMPRESSED_KEY_LENGTH);
+            publicKeys[offset] = (byte) (odd ? 0x02 : 0x03);
+            offset += COMPRESSED_KEY_LENGTH;
+        }
+    }
+
+    private static int xIndex(int index) {
+        return (index / KEYS_PER_POINT) * 3 + (index % KEYS_PER_POINT) / 2;
+    }
+
+    private static void serialize(ECFieldElement x, boolean odd, byte[] buffer, int offset) {
+        buffer[offset] = (byte) (odd ? 0x03 : 0x02);
+        write(x, buffer, offset + 1);
+    }
+
+    private static void write(ECFieldElement coordinate, byte[] buffer, int offset) {
+        byte[] encoded = coordinate.getEncoded();
+        System.arraycopy(encoded, 0, buffer, offset + COORDINATE_LENGTH - encoded.length, encoded.length);
+    }
+
+}
@@ -0,0 +1,120 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import org.bitcoinj.core.ECKey;
+import org.spongycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+/**
+ * KeyStream is a source of candidate keys for a single searching thread. Instead of drawing a fresh random private key
+ * and doing a full scalar multiplication for every candidate (which is what {@code new ECKey()} does), a KeyStream
+ * draws one random base private key k and then walks the points kG, (k + 1)G, (k + 2)G, ... by adding the generator
+ * point G each step. A point addition is far cheaper than a scalar multiplication.
+ * <p>Only the base private key and a counter are kept, so a private key is built only when a match has been found
+ * through {@link #getPrivateKey()}.
+ * <p><strong>NOTE</strong>: A KeyStream is not thread safe. Each thread should own its own KeyStream.
+ *
+ * @see PoolSearch
+ * @since v1.4.0
+ */
+public class KeyStream {
+
+    private static final BigInteger CURVE_ORDER = ECKey.CURVE.getN();
+    private static final ECPoint GENERATOR = ECKey.CURVE.getG();
+
+    private final SecureRandom random;
+    private BigInteger basePrivateKey;
+    private ECPoint point;
+    private long counter;
+
+    public KeyStream() {
+        this(new SecureRandom());
+    }
+
+    public KeyStream(SecureRandom random) {
+        this.random = random;
+        reseed();
+    }
+
+    /**
+     * Draws a new random base private key and restarts the stream from it. This is the only scalar multiplication a
+     * KeyStream does.
+     */
+    public void reseed() {
+        BigInteger privateKey;
+        do {
+            privateKey = new BigInteger(CURVE_ORDER.bitLength(), random);
+        } while (privateKey.signum() == 0 || privateKey.compareTo(CURVE_ORDER) >= 0);
+        basePrivateKey = privateKey;
+        point = ECKey.publicPointFromPrivate(basePrivateKey);
+        counter = 0;
+    }
+
+    /**
+     * Moves the stream forward by one key by adding the generator point to the current point.
+     * @return a public only ECKey (compressed) of the new current point.
+     */
+    public ECKey next() {
+        advance();
+        return ECKey.fromPublicOnly(ECKey.compressPoint(point));
+    }
+
+    /**
+     * Moves the stream forward by one key without building an ECKey.
+     * @return the new current point. This point is not normalized.
+     */
+    public ECPoint advance() {
+        point = point.add(GENERATOR);
+        counter++;
+        if (point.isInfinity()) {
+            // k + counter wrapped around to the curve order; start over from a new base.
+            reseed();
+        }
+        return point;
+    }
+
+    /**
+     * Returns the current point of the stream. This point is not normalized.
+     */
+    public ECPoint getPoint() {
+        return point;
+    }
+
+    /**
+     * Returns the private key of the current point, which is (base + counter) mod n.
+     */
+    public BigInteger getPrivateKeyValue() {
+        return privateKeyAt(counter);
+    }
+
+    /**
+     * Builds the compressed ECKey, including its private key, of the current point. This should only be called when a
+     * match has been found.
+     */
+    public ECKey getPrivateKey() {
+        return ECKey.fromPrivateAndPrecalculatedPublic(getPrivateKeyValue(), ECKey.compressPoint(point));
+    }
+
+    /**
+     * Returns the amount of times the generator point has been added since the last reseed.
+     */
+    public long getCounter() {
+        return counter;
+    }
+
+    /**
+     * Returns the random private key this stream started from. This changes whenever the stream is reseeded.
+     */
+    protected BigInteger getBasePrivateKey() {
+        return basePrivateKey;
+    }
+
+    /**
+     * Returns the private key (base + offset) mod n where offset is relative to the base private key of this stream.
+     */
+    protected BigInteger privateKeyAt(long offset) {
+        return basePrivateKey.add(BigInteger.valueOf(offset)).mod(CURVE_ORDER);
+    }
+
+}
@@ -3,46 +3,46 @@ package co.bitsquared.vanitygenerator.core.search;
 import co.bitsquared.vanitygenerator.core.listeners.BaseSearchListener;
 import co.bitsquared.vanitygenerator.core.listeners.QueryPoolListener;
 import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.query.AddressView;
 import co.bitsquared.vanitygenerator.core.query.QueryPool;
 import co.bitsquared.vanitygenerator.core.query.RegexQuery;
+import co.bitsquared.vanitygenerator.core.tools.StripedCounter;
 import co.bitsquared.vanitygenerator.core.tools.Utils;
 import org.bitcoinj.core.ECKey;
 
-import java.util.ArrayList;
-
 /**
  * PoolSearch is a Runnable that takes a {@code BaseSearchListener} and searches for Query's defined in a {@code QueryPool}. The user
  * can define multiple PoolSearch's in separate threads to achieve a more multi-threaded approach of searching.
+ * PoolSearch's that search together belong to the same {@link SearchSession}, which holds their listeners and the
+ * amount of addresses they generated.
  *
  * Android implementation can be found in the android module.
  */
 public class PoolSearch implements Runnable, QueryPoolListener {
 
-    private static final int DEFAULT_UPDATE_AMOUNT = 1000;
-    private static final ArrayList<BaseSearchListener> listeners = new ArrayList<BaseSearchListener>();
+    static final int DEFAULT_UPDATE_AMOUNT = 1000;
     private GlobalNetParams netParams;
     private QueryPool pool;
+    private SearchSession session;
     private long updateAmount = DEFAULT_UPDATE_AMOUNT;
-    private volatile static long startTime = 0;
-    private volatile static long generated = 0;
-    private volatile static boolean taskCompleted = true;
-    private volatile static boolean burstDoneUpdating = true;
-    private volatile static boolean addressDoneUpdating = true;
-    private static final ArrayList<PoolSearch> poolSearchReferences = new ArrayList<PoolSearch>();
     private SearchMode searchMode;
-    private boolean isSearching = true;
-    private boolean forceStop = false;
+    private volatile boolean forceStop = false;
+    private int batchSize = BatchKeyGenerator.DEFAULT_BATCH_SIZE;
+    private int spread = 1;
+    private BatchKeyGenerator generator;
+    private final AddressView view = new AddressView();
+    private StripedCounter.Cell generatedCell;
 
     /**
      * Creates a PoolSearch thread from a listener, an existing QueryPool instance, and an existing GlobalNetParams
      * instance.
      * Note: if the reference to this GNP changes, it WILL affect the way this thread searches for Query's.
+     * The PoolSearch belongs to the default SearchSession of the pool.
      * @deprecated use PoolSearchBuilder. Deprecated since v1.3.0
      * @since v1.0.0
      */
     @Deprecated
     public PoolSearch(BaseSearchListener listener, QueryPool pool, GlobalNetParams netParams) {
-        registerListener(listener);
         synchronized (this) {
             if (this.pool == null) {
                 this.pool = pool;
@@ -50,8 +50,10 @@ public class PoolSearch implements Runnable, QueryPoolListener {
             if (this.netParams == null) {
                 this.netParams = netParams;
             }
+            session = SearchSession.getDefault(pool);
             searchMode = SearchMode.SEARCH_ALL;
         }
+        registerListener(listener);
     }
 
     /**
@@ -59,185 +61,160 @@ public class PoolSearch implements Runnable, QueryPoolListener {
      * @since v1.3.0
      */
     protected PoolSearch(PoolSearchBuilder builder) {
-        registerListener(builder.listener);
         pool = builder.pool;
+        session = builder.session;
         netParams = builder.netParams;
         searchMode = builder.searchMode;
-        poolSearchReferences.add(this);
+        batchSize = builder.batchSize;
+        spread = builder.spread;
+        registerListener(builder.listener);
     }
 
     @Override
     public void run() {
-        pool.registerListener(this);
-        setStartTimeToNow();
-        switch (searchMode) {
-            case SEARCH_ALL:
-                searchAll();
-                break;
-            case EASIEST_HARDEST:
-            case HARDEST_EASIEST:
-            case SHORTEST_LONGEST:
-            case LONGEST_SHORTEST:
-                customSearch();
-                break;
+        if (generator == null) {
+            generator = new BatchKeyGenerator(batchSize);
         }
-        if (!pool.containsQueries()) {
-            taskCompleted(generated, getGeneratedPerSecond());
+        generatedCell = session.searchStarted(this);
+        try {
+            switch (searchMode) {
+                case SEARCH_ALL:
+                    searchAll();
+                    break;
+                case EASIEST_HARDEST:
+                case HARDEST_EASIEST:
+                case SHORTEST_LONGEST:
+                case LONGEST_SHORTEST:
+                case QUICKEST_FIRST:
+                    customSearch();
+                    break;
+            }
+        } finally {
+            session.searchStopped(this, generatedCell);
         }
-        pool.unregisterListener(this);
     }
 
+    /**
+     * PoolSearch's pick up changes to the pool by checking its epoch every batch, so nothing needs to be done here.
+     * @deprecated since v1.4.0. PoolSearch no longer needs to be registered to the QueryPool.
+     */
+    @Deprecated
     @Override
     public void onQueryRemoved(RegexQuery query) {
-        boolean forceStopAll = !pool.containsQueries();
-        synchronized (poolSearchReferences) {
-            for (PoolSearch search: poolSearchReferences) {
-                search.isSearching = false;
-                search.forceStop = forceStopAll;
-            }
-        }
+
     }
 
+    /**
+     * PoolSearch's pick up changes to the pool by checking its epoch every batch, so nothing needs to be done here.
+     * @deprecated since v1.4.0. PoolSearch no longer needs to be registered to the QueryPool.
+     */
+    @Deprecated
     @Override
     public void onQueryAdded(RegexQuery query) {
-        synchronized (poolSearchReferences){
-            for (PoolSearch search: poolSearchReferences) {
-                search.isSearching = false;
-            }
-        }
+
     }
 
+    /**
+     * Searches for every query at once. Matching always uses the latest snapshot of the pool, so the epoch is only
+     * checked to stop once the pool runs out of queries.
+     */
     private void searchAll() {
-        ECKey key;
         RegexQuery query;
         long localGen;
+        int batched;
+        long epoch = -1;
         while (!(forceStop || threadKilled())) {
-            key = new ECKey();
-            localGen = ++generated;
-            if ((query = pool.matches(key, netParams)) != null) {
-                addressFound(key, query.getNetworkParameters(netParams), generated, getGeneratedPerSecond(), query);
-                if (!query.isFindUnlimited()) {
-                    pool.removeQuery(query);
+            long currentEpoch = pool.getEpoch();
+            if (currentEpoch != epoch) {
+                epoch = currentEpoch;
+                if (!pool.containsQueries()) {
+                    break;
                 }
             }
-            if (canBurstUpdate(localGen)) {
-                burstGenerated(generated, updateAmount, getGeneratedPerSecond());
+            batched = generator.fill();
+            for (int i = 0; i < batched && !(forceStop || threadKilled()); i++) {
+                generator.reset(view, i);
+                localGen = generatedCell.increment();
+                if ((query = pool.matches(view, netParams)) != null) {
+                    ECKey key = generator.getPrivateKey(i);
+                    if (query.isFindUnlimited() || pool.tryRemoveQuery(query)) {
+                        addressFound(key, query.getNetworkParameters(netParams), query);
+                        generator.reseed();
+                        break;
+                    }
+                }
+                if (canBurstUpdate(localGen)) {
+                    burstGenerated();
+                }
             }
         }
     }
 
+    /**
+     * Searches for one query at a time. The query is selected again whenever the epoch of the pool changes, which
+     * covers the query being found by another PoolSearch as well as queries being added.
+     * @see QueryScheduler
+     */
     private void customSearch() {
-        RegexQuery query = getNextQuery();
-        if (query == null) return;
-        ECKey key;
+        QueryScheduler scheduler = new QueryScheduler(pool, searchMode, spread);
+        int slot = session.nextSlot();
+        RegexQuery query = null;
         long localGen;
-        isSearching = true;
-        while (isSearching && !threadKilled()) {
-            key = new ECKey();
-            localGen = ++generated;
-            if (query.matches(key, netParams)) {
-                addressFound(key, netParams, localGen, getGeneratedPerSecond(), query);
-                pool.removeQuery(query);
-                break;
+        int batched;
+        long epoch = -1;
+        while (!(forceStop || threadKilled())) {
+            long currentEpoch = pool.getEpoch();
+            if (currentEpoch != epoch) {
+                epoch = currentEpoch;
+                query = scheduler.next(slot);
+                if (query == null) {
+                    break;
+                }
             }
-            if (canBurstUpdate(localGen)) {
-                burstGenerated(localGen, updateAmount, getGeneratedPerSecond());
+            batched = generator.fill();
+            for (int i = 0; i < batched && !(forceStop || threadKilled()); i++) {
+                generator.reset(view, i);
+                localGen = generatedCell.increment();
+                if (query.matches(view, netParams)) {
+                    ECKey key = generator.getPrivateKey(i);
+                    if (pool.tryRemoveQuery(query)) {
+                        addressFound(key, netParams, query);
+                        generator.reseed();
+                    }
+                    break;
+                }
+                if (canBurstUpdate(localGen)) {
+                    burstGenerated();
+                }
             }
         }
-        if (!forceStop) {
-            customSearch();
-        }
     }
 
     private boolean canBurstUpdate(long generated) {
         return generated % updateAmount == 0;
     }
 
-    /**
-     * Gets the next query based on the search mode. If for some reason the search mode is not defined, this returns the
-     * easiest query.
-     * @since v1.3.0
-     */
-    private RegexQuery getNextQuery() {
-        RegexQuery query;
-        if (searchMode == SearchMode.EASIEST_HARDEST) {
-            query = pool.getEasiestQuery();
-        } else if (searchMode == SearchMode.HARDEST_EASIEST) {
-            query = pool.getHardestQuery();
-        } else if (searchMode == SearchMode.SHORTEST_LONGEST) {
-            query = pool.getShortestQuery();
-        } else if (searchMode == SearchMode.LONGEST_SHORTEST) {
-            query = pool.getLongestQuery();
-        } else {
-            query = pool.getEasiestQuery();
-        }
-        return query;
-    }
-
     private boolean threadKilled() {
         return Thread.currentThread().isInterrupted();
     }
 
     public void stop() {
         forceStop = true;
-        isSearching = false;
-    }
-
-    private void addressFound(final ECKey key, final GlobalNetParams netParams, final long generated, final long speed, final RegexQuery query) {
-        synchronized (this) {
-            if (!addressDoneUpdating) return;
-            addressDoneUpdating = false;
-        }
-        synchronized (listeners) {
-            for (final BaseSearchListener listener: listeners) {
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onAddressFound(key, netParams, generated, speed, query);
-                    }
-                }).start();
-            }
-        }
-        addressDoneUpdating = true;
     }
 
-    private void taskCompleted(final long generated, final long speed) {
-        synchronized (this) {
-            if (!taskCompleted) return;
-            taskCompleted = false;
-        }
-        synchronized (listeners) {
-            for (final BaseSearchListener listener: listeners) {
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onTaskCompleted(generated, speed);
-                    }
-                }).start();
-            }
-        }
-        taskCompleted = true;
-        listeners.clear();
-        startTime = 0;
-        PoolSearch.generated = 0;
+    /**
+     * Reports a found key. The caller reseeds the generator right after, so that no two keys handed out share the base
+     * private key of a stream.
+     * <p>Claiming the query may leave the pool empty, and other PoolSearch's stop as soon as they see it empty. The key
+     * is derived before the claim so that the event is queued right after it, and this PoolSearch stays registered with
+     * its session until then, so the session can't complete and clear its listeners before the event is queued.
+     */
+    private void addressFound(ECKey key, GlobalNetParams netParams, RegexQuery query) {
+        session.getDispatcher().addressFound(key, netParams, session.getGenerated(), session.getGeneratedPerSecond(), query);
     }
 
-    private void burstGenerated(final long generated, final long burstGenerated, final long speed) {
-        synchronized (this) {
-            if (!burstDoneUpdating) return;
-            burstDoneUpdating = false;
-        }
-        synchronized (listeners) {
-            for (final BaseSearchListener listener: listeners) {
-                new Thread(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.updateBurstGenerated(generated, burstGenerated, speed);
-                    }
-                }).start();
-            }
-        }
-        burstDoneUpdating = true;
+    private void burstGenerated() {
+        session.getDispatcher().burstGenerated(session.getGenerated(), updateAmount, session.getGeneratedPerSecond());
     }
 
     /**
@@ -260,13 +237,7 @@ public class PoolSearch implements Runnable, QueryPoolListener {
      * call is implemented.
      */
     public PoolSearch registerListener(BaseSearchListener listener) {
-        if (listener != null) {
-            synchronized (listeners) {
-                if (!listeners.contains(listener)) {
-                    listeners.add(listener);
-                }
-            }
-        }
+        session.registerListener(listener);
         return this;
     }
 
@@ -274,22 +245,16 @@ public class PoolSearch implements Runnable, QueryPoolListener {
      * Unregisters a BaseSearchListener from this PoolSearch.
      */
     public PoolSearch unregisterListener(BaseSearchListener listener) {
-        synchronized (listeners) {
-            listeners.remove(listener);
-        }
+        session.unregisterListener(listener);
         return this;
     }
 
-    private long getGeneratedPerSecond() {
-        return generated / ((System.currentTimeMillis() - startTime) / 1000);
-    }
-
-    private void setStartTimeToNow() {
-        synchronized (this) {
-            if (startTime == 0) {
-                startTime = System.currentTimeMillis() - 1000;
-            }
-        }
+    /**
+     * Returns the SearchSession this PoolSearch belongs to.
+     * @since v1.4.0
+     */
+    public SearchSession getSession() {
+        return session;
     }
 
     /**
@@ -300,8 +265,11 @@ public class PoolSearch implements Runnable, QueryPoolListener {
 
         private BaseSearchListener listener;
         private QueryPool pool;
+        private SearchSession session;
         private SearchMode searchMode;
         private GlobalNetParams netParams;
+        private int batchSize = BatchKeyGenerator.DEFAULT_BATCH_SIZE;
+        private int spread = 1;
 
         /**
          * Create a PoolSearchBuilder from a QueryPool.
@@ -343,7 +311,56 @@ public class PoolSearch implements Runnable, QueryPoolListener {
             return this;
         }
 
+        /**
+         * Sets the amount of consecutive points that are generated and normalized together before they are checked against
+         * the pool. Larger batches amortize the field inversion over more points. Each point yields
+         * BatchKeyGenerator.KEYS_PER_POINT keys. Default is set to 256.
+         *
+         * @see co.bitsquared.vanitygenerator.core.search.BatchKeyGenerator
+         */
+        public PoolSearchBuilder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the amount of queries that PoolSearch's of the same session are spread across in the one query at a time
+         * SearchModes. With a spread of 1, every PoolSearch searches for the same query; with a spread of k, each
+         * PoolSearch takes one of the first k queries in the order of the SearchMode. Default is set to 1.
+         *
+         * @throws IllegalArgumentException if spread is not positive.
+         * @since v1.4.0
+         */
+        public PoolSearchBuilder spread(int spread) {
+            if (spread <= 0) {
+                throw new IllegalArgumentException("Spread must be positive: " + spread);
+            }
+            this.spread = spread;
+            return this;
+        }
+
+        /**
+         * Sets the SearchSession the PoolSearch belongs to. PoolSearch's of the same session share their listeners and
+         * their amount of generated addresses. Default is the default session of the QueryPool.
+         *
+         * @throws NullPointerException if session is null.
+         * @throws IllegalArgumentException if the session searches a different QueryPool.
+         * @see co.bitsquared.vanitygenerator.core.search.SearchSession
+         * @since v1.4.0
+         */
+        public PoolSearchBuilder session(SearchSession session) {
+            Utils.checkNotNull(session, "SearchSession cannot be null.");
+            if (session.getPool() != pool) {
+                throw new IllegalArgumentException("SearchSession must search the same QueryPool.");
+            }
+            this.session = session;
+            return this;
+        }
+
         public PoolSearch build() {
+            if (session == null) {
+                session = SearchSession.getDefault(pool);
+            }
             if (netParams == null) {
                 netParams = pool.getNetwork().toGlobalNetParams();
             }
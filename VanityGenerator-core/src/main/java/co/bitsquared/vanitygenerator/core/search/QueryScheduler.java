@@ -0,0 +1,78 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import co.bitsquared.vanitygenerator.core.query.QueryPool;
+import co.bitsquared.vanitygenerator.core.query.RegexQuery;
+
+import java.util.List;
+
+/**
+ * QueryScheduler picks the query a PoolSearch searches for next in the one query at a time SearchModes. The pool keeps
+ * its queries sorted by difficulty, by expected keys and by length, so the next query is found in O(log n) instead of scanning the pool.
+ * <p>Without spreading every PoolSearch searches for the first query of the order. With a spread of k, the PoolSearch's
+ * of a session are spread across the first k queries of the order by their slot, so that k queries are searched for in
+ * parallel.
+ *
+ * @see SearchMode
+ * @since v1.4.0
+ */
+class QueryScheduler {
+
+    private final QueryPool pool;
+    private final SearchMode searchMode;
+    private final int spread;
+
+    /**
+     * @param spread the amount of queries at the front of the order to spread PoolSearch's across. Must be positive.
+     */
+    QueryScheduler(QueryPool pool, SearchMode searchMode, int spread) {
+        this.pool = pool;
+        this.searchMode = searchMode;
+        this.spread = spread;
+    }
+
+    /**
+     * Returns the query a PoolSearch should search for, or null if there is none left.
+     * @param slot the slot of the PoolSearch within its session.
+     */
+    RegexQuery next(int slot) {
+        if (spread == 1) {
+            return first();
+        }
+        List<RegexQuery> front = front();
+        if (front.isEmpty()) {
+            return null;
+        }
+        return front.get(slot % front.size());
+    }
+
+    private RegexQuery first() {
+        switch (searchMode) {
+            case HARDEST_EASIEST:
+                return pool.getHardestQuery();
+            case SHORTEST_LONGEST:
+                return pool.getShortestQuery();
+            case LONGEST_SHORTEST:
+                return pool.getLongestQuery();
+            case QUICKEST_FIRST:
+                return pool.getQuickestQuery();
+            default:
+                return pool.getEasiestQuery();
+        }
+    }
+
+    private List<RegexQuery> front() {
+        switch (searchMode) {
+            case HARDEST_EASIEST:
+                return pool.getHardestQueries(spread);
+            case SHORTEST_LONGEST:
+                return pool.getShortestQueries(spread);
+            case LONGEST_SHORTEST:
+                return pool.getLongestQueries(spread);
+            case QUICKEST_FIRST:
+                return pool.getQuickestQueries(spread);
+            default:
+                return pool.getEasiestQueries(spread);
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package co.bitsquared.vanitygenerator.core.search;
 
 import co.bitsquared.vanitygenerator.core.listeners.BaseSearchListener;
 import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.query.AddressView;
 import co.bitsquared.vanitygenerator.core.query.RegexQuery;
 import org.bitcoinj.core.ECKey;
 
@@ -52,11 +53,13 @@ public class Search implements Runnable {
     public void run() {
         startTime = System.currentTimeMillis() - 1000;
         ECKey key;
+        AddressView view = new AddressView();
         while (!Thread.interrupted() && queries.size() > 0) {
             key = new ECKey();
+            view.reset(key);
             generated++;
             for (RegexQuery query: queries) {
-                if (query.matches(key, netParams)) {
+                if (query.matches(view, netParams)) {
                     if (listener != null) {
                         listener.onAddressFound(key, query.getNetworkParameters(netParams), generated, getGeneratedPerSecond(), query);
                     }
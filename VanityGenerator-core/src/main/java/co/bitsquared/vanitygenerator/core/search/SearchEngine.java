@@ -0,0 +1,512 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import co.bitsquared.vanitygenerator.core.listeners.BaseSearchListener;
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.query.QueryPool;
+import co.bitsquared.vanitygenerator.core.query.RegexQuery;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SearchEngine runs the PoolSearch's of a {@link SearchSession} on worker threads that it owns. The amount of threads,
+ * whether they are daemon threads, their priority and their names are defined by a {@link ThreadPolicy}, so there is no
+ * need to create PoolSearch's and an ExecutorService by hand.
+ * <p>Each worker runs one PoolSearch at a time. If a PoolSearch throws, the worker logs it and starts a new one in its
+ * place, up to ThreadPolicy.getMaxRestarts() times. A worker finishes when the pool runs out of queries or the engine is
+ * drained.
+ * <p>When the ThreadPolicy is auto tuned, the amount of workers is chosen by a {@link ThreadTuner} when the engine starts,
+ * and optionally re-tuned at an interval while searching.
+ * <p>A SearchEngine can only be started once. The only way to create a SearchEngine is through
+ * {@code SearchEngineBuilder}.
+ *
+ * @see ThreadPolicy
+ * @see SearchSession
+ * @since v1.4.0
+ */
+public class SearchEngine {
+
+    private static final Logger LOGGER = LogManager.getLogger(SearchEngine.class);
+
+    private final SearchSession session;
+    private final ThreadPolicy policy;
+    private final SearchMode searchMode;
+    private final GlobalNetParams netParams;
+    private final int batchSize;
+    private final int spread;
+    private final long updateAmount;
+    private final ExecutorService executor;
+    private final List<Worker> workers = new CopyOnWriteArrayList<Worker>();
+    private volatile boolean draining = false;
+    private SearchHandle handle;
+    private ScheduledExecutorService retuneExecutor;
+
+    private SearchEngine(SearchEngineBuilder builder) {
+        session = builder.session;
+        policy = builder.policy;
+        searchMode = builder.searchMode;
+        netParams = builder.netParams;
+        batchSize = builder.batchSize;
+        spread = builder.spread;
+        updateAmount = builder.updateAmount;
+        executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new WorkerThreadFactory(policy));
+        session.registerListener(builder.listener);
+    }
+
+    /**
+     * Starts one worker per thread of the ThreadPolicy. When the policy is auto tuned, the amount of threads is probed
+     * first, which blocks for a few seconds at most.
+     * @return a handle to follow the workers with.
+     * @throws IllegalStateException if this engine was already started or has been drained.
+     */
+    public synchronized SearchHandle start() {
+        if (handle != null) {
+            throw new IllegalStateException("SearchEngine has already been started.");
+        }
+        if (draining) {
+            throw new IllegalStateException("SearchEngine has been drained.");
+        }
+        handle = new SearchHandle();
+        if (policy.isAutoTune()) {
+            ThreadTuner tuner = newTuner();
+            setThreads(tuner.tune());
+            if (policy.getRetuneMillis() > 0) {
+                retuneExecutor = new ScheduledThreadPoolExecutor(1, new WorkerThreadFactory(policy, "retune"));
+                retuneExecutor.scheduleWithFixedDelay(new Retuner(tuner), policy.getRetuneMillis(),
+                        policy.getRetuneMillis(), TimeUnit.MILLISECONDS);
+            }
+        } else {
+            setThreads(policy.getThreads());
+        }
+        return handle;
+    }
+
+    /**
+     * Creates the ThreadTuner of this engine. Its probing threads encode the addresses of the easiest query of the pool,
+     * on the version byte and with the compression the workers will search it with.
+     */
+    private ThreadTuner newTuner() {
+        QueryPool pool = session.getPool();
+        GlobalNetParams searchParams = netParams != null ? netParams : pool.getNetwork().toGlobalNetParams();
+        RegexQuery query = pool.getEasiestQuery();
+        int version = query != null ? query.getVersion(searchParams) : searchParams.getAddressHeader();
+        boolean compressed = query == null || query.isCompressed();
+        return new ThreadTuner(policy.getMaxThreads(), ThreadTuner.DEFAULT_PROBE_MILLIS, ThreadTuner.DEFAULT_KNEE,
+                new WorkerThreadFactory(policy, "probe"), version, compressed);
+    }
+
+    /**
+     * Returns the amount of workers that are currently running.
+     */
+    public int getThreads() {
+        return workers.size();
+    }
+
+    /**
+     * Starts or retires workers until the amount of running workers is threads. Retired workers finish the candidates
+     * they are checking first.
+     */
+    private synchronized void setThreads(int threads) {
+        while (workers.size() < threads && !draining && session.getPool().containsQueries()) {
+            Worker worker = new Worker();
+            workers.add(worker);
+            handle.futures.add(executor.submit(worker));
+        }
+        while (workers.size() > threads) {
+            workers.remove(workers.size() - 1).retire();
+        }
+    }
+
+    /**
+     * Stops every worker once it is done with the candidates it is currently checking. Found addresses are still
+     * reported. The worker threads exit afterwards; use {@link #awaitTermination(long, TimeUnit)} to wait for them.
+     */
+    public void drain() {
+        draining = true;
+        stopRetuning();
+        for (Worker worker: workers) {
+            worker.retire();
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Drains this engine and waits for the worker threads to exit.
+     * @return true if every worker exited, false if the timeout elapsed first.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        drain();
+        return awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Drains this engine and interrupts the worker threads.
+     */
+    public void shutdownNow() {
+        draining = true;
+        stopRetuning();
+        for (Worker worker: workers) {
+            worker.retire();
+        }
+        executor.shutdownNow();
+    }
+
+    private synchronized void stopRetuning() {
+        if (retuneExecutor != null) {
+            retuneExecutor.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    public SearchSession getSession() {
+        return session;
+    }
+
+    public ThreadPolicy getThreadPolicy() {
+        return policy;
+    }
+
+    private PoolSearch newSearch() {
+        PoolSearch.PoolSearchBuilder builder = session.newSearch().searchMode(searchMode).batchSize(batchSize)
+                .spread(spread);
+        if (netParams != null) {
+            builder.netParams(netParams);
+        }
+        return builder.build().setUpdateAmount(updateAmount);
+    }
+
+    /**
+     * SearchHandle follows the workers of a started SearchEngine.
+     */
+    public class SearchHandle {
+
+        private final List<Future<?>> futures = new CopyOnWriteArrayList<Future<?>>();
+
+        private SearchHandle() {
+
+        }
+
+        /**
+         * Returns one future per worker that was started, including workers started by re-tuning. A future completes
+         * when its worker finishes, and fails if the worker gave up after too many restarts.
+         */
+        public List<Future<?>> getFutures() {
+            return Collections.unmodifiableList(futures);
+        }
+
+        /**
+         * Returns true if every worker has finished.
+         */
+        public boolean isDone() {
+            for (Future<?> future: futures) {
+                if (!future.isDone()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Waits for every worker to finish.
+         * @return true if every worker finished, false if the timeout elapsed first.
+         */
+        public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int awaited = 0;
+            while (awaited < futures.size()) {
+                try {
+                    futures.get(awaited).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    return false;
+                } catch (ExecutionException ignored) {
+                    // The worker finished, its failure is available from its future.
+                } catch (CancellationException ignored) {
+                    // The worker finished without running.
+                }
+                awaited++;
+            }
+            return true;
+        }
+
+        /**
+         * Drains the SearchEngine this handle belongs to.
+         */
+        public void stop() {
+            drain();
+        }
+
+        public SearchEngine getEngine() {
+            return SearchEngine.this;
+        }
+
+    }
+
+    private class Worker implements Runnable {
+
+        private volatile PoolSearch current;
+        private volatile boolean retired = false;
+
+        @Override
+        public void run() {
+            try {
+                work();
+            } finally {
+                workers.remove(this);
+            }
+        }
+
+        private void work() {
+            int restarts = 0;
+            while (!(draining || retired)) {
+                PoolSearch search = newSearch();
+                current = search;
+                if (draining || retired) {
+                    return;
+                }
+                try {
+                    search.run();
+                    return;
+                } catch (RuntimeException e) {
+                    if (draining || retired || restarts >= policy.getMaxRestarts()) {
+                        LOGGER.error("Search worker " + Thread.currentThread().getName() + " failed.", e);
+                        throw e;
+                    }
+                    restarts++;
+                    LOGGER.warn("Search worker " + Thread.currentThread().getName() + " failed, restarting ("
+                            + restarts + "/" + policy.getMaxRestarts() + ").", e);
+                }
+            }
+        }
+
+        void retire() {
+            retired = true;
+            PoolSearch search = current;
+            if (search != null) {
+                search.stop();
+            }
+        }
+
+    }
+
+    /**
+     * Retuner adjusts the amount of workers while searching. Every other interval it tries one worker more or one
+     * worker less, alternately, and measures the session's throughput over the next interval. An added worker is kept
+     * if it contributes at least the knee fraction of the average throughput per worker, and a removed worker stays
+     * removed if it contributed less than that.
+     */
+    private class Retuner implements Runnable {
+
+        private final ThreadTuner tuner;
+        private long lastGenerated = -1;
+        private long lastTime;
+        private boolean trying = false;
+        private boolean tryMore = true;
+        private int baseThreads;
+        private double baseRate;
+
+        Retuner(ThreadTuner tuner) {
+            this.tuner = tuner;
+        }
+
+        @Override
+        public void run() {
+            if (draining || workers.isEmpty()) {
+                stopRetuning();
+                return;
+            }
+            long generated = session.getGenerated();
+            long now = System.nanoTime();
+            if (lastGenerated < 0 || generated < lastGenerated) {
+                lastGenerated = generated;
+                lastTime = now;
+                return;
+            }
+            double rate = (generated - lastGenerated) * 1e9 / (now - lastTime);
+            lastGenerated = generated;
+            lastTime = now;
+            int threads = workers.size();
+            if (trying) {
+                trying = false;
+                tryMore = !tryMore;
+                double perThread = baseRate / baseThreads;
+                boolean keep = threads > baseThreads
+                        ? tuner.contributes(baseThreads, baseRate, threads, rate, perThread)
+                        : !tuner.contributes(threads, rate, baseThreads, baseRate, perThread);
+                if (keep) {
+                    LOGGER.info("Re-tuned from " + baseThreads + " to " + threads + " search threads generating "
+                            + (long) rate + " keys/s.");
+                } else {
+                    setThreads(baseThreads);
+                    // The next interval includes the change back, so it is not measured.
+                    lastGenerated = -1;
+                }
+                return;
+            }
+            int trial = tryMore ? threads + 1 : threads - 1;
+            if (trial < 1 || trial > policy.getMaxThreads()) {
+                tryMore = !tryMore;
+                return;
+            }
+            baseThreads = threads;
+            baseRate = rate;
+            trying = true;
+            setThreads(trial);
+            lastGenerated = session.getGenerated();
+            lastTime = System.nanoTime();
+        }
+
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+
+        private final ThreadPolicy policy;
+        private final String namePrefix;
+        private final AtomicInteger threadIds = new AtomicInteger();
+
+        WorkerThreadFactory(ThreadPolicy policy) {
+            this(policy, "");
+        }
+
+        WorkerThreadFactory(ThreadPolicy policy, String role) {
+            this.policy = policy;
+            this.namePrefix = role.isEmpty() ? policy.getNamePrefix() : policy.getNamePrefix() + role + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadIds.incrementAndGet());
+            thread.setDaemon(policy.isDaemon());
+            thread.setPriority(policy.isLowPriority() ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY);
+            return thread;
+        }
+
+    }
+
+    /**
+     * SearchEngineBuilder is a builder for SearchEngine that requires a QueryPool or a SearchSession. Every other
+     * setting is optional.
+     */
+    public static class SearchEngineBuilder {
+
+        private SearchSession session;
+        private ThreadPolicy policy = ThreadPolicy.getDefault();
+        private SearchMode searchMode = SearchMode.SEARCH_ALL;
+        private GlobalNetParams netParams;
+        private BaseSearchListener listener;
+        private int batchSize = BatchKeyGenerator.DEFAULT_BATCH_SIZE;
+        private int spread = 1;
+        private long updateAmount = PoolSearch.DEFAULT_UPDATE_AMOUNT;
+
+        /**
+         * Create a SearchEngineBuilder searching a QueryPool in a new SearchSession.
+         * @throws NullPointerException if pool is null.
+         */
+        public SearchEngineBuilder(QueryPool pool) {
+            this(new SearchSession(pool));
+        }
+
+        /**
+         * Create a SearchEngineBuilder searching in an existing SearchSession.
+         * @throws NullPointerException if session is null.
+         */
+        public SearchEngineBuilder(SearchSession session) {
+            Utils.checkNotNull(session, "SearchSession cannot be null.");
+            this.session = session;
+        }
+
+        /**
+         * Sets the worker threads to search with. Default is set to ThreadPolicy.getDefault().
+         * @throws NullPointerException if policy is null.
+         */
+        public SearchEngineBuilder threadPolicy(ThreadPolicy policy) {
+            Utils.checkNotNull(policy, "ThreadPolicy cannot be null.");
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Sets the SearchMode of every worker. Default is set to SEARCH_ALL.
+         * @throws NullPointerException if searchMode is null.
+         */
+        public SearchEngineBuilder searchMode(SearchMode searchMode) {
+            Utils.checkNotNull(searchMode, "SearchMode cannot be null.");
+            this.searchMode = searchMode;
+            return this;
+        }
+
+        /**
+         * Sets the default network parameters to be used if queries in the QueryPool do not define their own network.
+         * @throws NullPointerException if the network provided is null
+         */
+        public SearchEngineBuilder netParams(GlobalNetParams netParams) {
+            Utils.checkNotNull(netParams, "GlobalNetParams cannot be null.");
+            this.netParams = netParams;
+            return this;
+        }
+
+        /**
+         * Sets a BaseSearchListener to be registered to the session of the engine.
+         */
+        public SearchEngineBuilder searchListener(BaseSearchListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * @see PoolSearch.PoolSearchBuilder#batchSize(int)
+         */
+        public SearchEngineBuilder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @see PoolSearch.PoolSearchBuilder#spread(int)
+         */
+        public SearchEngineBuilder spread(int spread) {
+            if (spread <= 0) {
+                throw new IllegalArgumentException("Spread must be positive: " + spread);
+            }
+            this.spread = spread;
+            return this;
+        }
+
+        /**
+         * @see PoolSearch#setUpdateAmount(long)
+         */
+        public SearchEngineBuilder updateAmount(long updateAmount) {
+            this.updateAmount = updateAmount;
+            return this;
+        }
+
+        public SearchEngine build() {
+            return new SearchEngine(this);
+        }
+
+    }
+
+}
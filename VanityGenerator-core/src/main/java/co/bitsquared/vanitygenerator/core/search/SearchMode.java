@@ -38,6 +38,18 @@ public enum SearchMode {
      * search mode, findUnlimited setting of each query will be ignored.
      * <br /><b>NOTE:</b> This only works with queries that are defined via {@link co.bitsquared.vanitygenerator.core.query.Query}
      */
-    LONGEST_SHORTEST;
+    LONGEST_SHORTEST,
+
+    /**
+     * Search for one query at a time in terms of the exact expected amount of keys until it is found, from fewest to most.
+     * Finishing the quickest queries first minimizes the average time until each query is found, and finds the most
+     * queries per CPU-second at any point of the search. Due to the semantics of this search mode, findUnlimited setting
+     * of each query will be ignored.
+     * <br /><b>NOTE:</b> Only queries defined via {@link co.bitsquared.vanitygenerator.core.query.Query} have a known
+     * probability; any other RegexQuery is searched for after them.
+     * @see co.bitsquared.vanitygenerator.core.query.RegexQuery#getExpectedKeys(co.bitsquared.vanitygenerator.core.network.GlobalNetParams)
+     * @since v1.4.0
+     */
+    QUICKEST_FIRST;
 
 }
@@ -0,0 +1,177 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import co.bitsquared.vanitygenerator.core.listeners.BaseSearchListener;
+import co.bitsquared.vanitygenerator.core.listeners.SearchEventDispatcher;
+import co.bitsquared.vanitygenerator.core.network.Network;
+import co.bitsquared.vanitygenerator.core.query.QueryPool;
+import co.bitsquared.vanitygenerator.core.tools.StripedCounter;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SearchSession is one logical search: a {@link QueryPool} along with the PoolSearch's searching it, the amount of
+ * addresses they generated, and the BaseSearchListeners they report to. Nothing is shared between sessions, so several
+ * sessions can search at the same time in one process without interfering with each other; changing the queries of
+ * one session's pool only affects the PoolSearch's of that session.
+ * <p>PoolSearch's that are created without a session (through the deprecated constructor, or a PoolSearchBuilder without
+ * {@link PoolSearch.PoolSearchBuilder#session(SearchSession)}) share the default session of their pool, which behaves
+ * the same way PoolSearch did before sessions existed.
+ *
+ * @see PoolSearch
+ * @since v1.4.0
+ */
+public class SearchSession {
+
+    private final QueryPool pool;
+    private final SearchEventDispatcher dispatcher;
+    private final StripedCounter generated = new StripedCounter();
+    private final CopyOnWriteArrayList<PoolSearch> searches = new CopyOnWriteArrayList<PoolSearch>();
+    private final AtomicInteger slots = new AtomicInteger();
+    private volatile long startTime = 0;
+    private boolean taskCompleted = true;
+
+    /**
+     * Creates a session searching a new QueryPool on a network.
+     * @throws NullPointerException if network is null.
+     */
+    public SearchSession(Network network) {
+        this(QueryPool.newInstance(network));
+    }
+
+    /**
+     * Creates a session searching an existing QueryPool.
+     * @throws NullPointerException if pool is null.
+     */
+    public SearchSession(QueryPool pool) {
+        this(pool, new SearchEventDispatcher());
+    }
+
+    /**
+     * Creates a session searching an existing QueryPool and reporting to listeners through a dispatcher.
+     * @throws NullPointerException if pool or dispatcher is null.
+     */
+    public SearchSession(QueryPool pool, SearchEventDispatcher dispatcher) {
+        Utils.checkNotNull(pool, "QueryPool cannot be null.");
+        Utils.checkNotNull(dispatcher, "SearchEventDispatcher cannot be null.");
+        this.pool = pool;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Returns the session shared by every PoolSearch of a pool that was not given a session of its own.
+     * @throws NullPointerException if pool is null.
+     * @see QueryPool#getDefaultSession()
+     */
+    public static SearchSession getDefault(QueryPool pool) {
+        Utils.checkNotNull(pool, "QueryPool cannot be null.");
+        return pool.getDefaultSession();
+    }
+
+    /**
+     * Returns a PoolSearchBuilder for a PoolSearch of this session.
+     */
+    public PoolSearch.PoolSearchBuilder newSearch() {
+        return new PoolSearch.PoolSearchBuilder(pool).session(this);
+    }
+
+    public QueryPool getPool() {
+        return pool;
+    }
+
+    public SearchEventDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * Registers a BaseSearchListener to receive the updates of every PoolSearch in this session.
+     */
+    public void registerListener(BaseSearchListener listener) {
+        dispatcher.registerListener(listener);
+    }
+
+    public void unregisterListener(BaseSearchListener listener) {
+        dispatcher.unregisterListener(listener);
+    }
+
+    /**
+     * Returns the total amount of addresses generated in this session since it last completed.
+     */
+    public long getGenerated() {
+        return generated.sum();
+    }
+
+    /**
+     * Returns the amount of addresses generated per second across every PoolSearch of this session.
+     */
+    public long getGeneratedPerSecond() {
+        return generated.sum() / ((System.currentTimeMillis() - startTime) / 1000);
+    }
+
+    /**
+     * Returns true if a PoolSearch of this session is currently running.
+     */
+    public boolean isSearching() {
+        return !searches.isEmpty();
+    }
+
+    /**
+     * Stops every running PoolSearch of this session.
+     */
+    public void stop() {
+        for (PoolSearch search: searches) {
+            search.stop();
+        }
+    }
+
+    /**
+     * Called by a PoolSearch when it starts running.
+     * @return the cell the PoolSearch counts its generated addresses in.
+     */
+    StripedCounter.Cell searchStarted(PoolSearch search) {
+        synchronized (this) {
+            if (startTime == 0) {
+                startTime = System.currentTimeMillis() - 1000;
+            }
+            searches.addIfAbsent(search);
+        }
+        return generated.newCell();
+    }
+
+    /**
+     * Returns a slot number for a PoolSearch, used to spread PoolSearch's across queries.
+     * @see QueryScheduler
+     */
+    int nextSlot() {
+        return slots.getAndIncrement() & Integer.MAX_VALUE;
+    }
+
+    /**
+     * Called by a PoolSearch when it stops running. Once the pool runs out of queries and the last PoolSearch stopped,
+     * the listeners are told the task completed and the session is reset for the next task. Waiting for the last one
+     * makes sure every address found by another PoolSearch was queued before the completion and the listeners are
+     * cleared.
+     */
+    void searchStopped(PoolSearch search, StripedCounter.Cell cell) {
+        generated.retire(cell);
+        synchronized (this) {
+            searches.remove(search);
+            if (!searches.isEmpty() || pool.containsQueries()) {
+                return;
+            }
+            if (!taskCompleted) {
+                return;
+            }
+            taskCompleted = false;
+        }
+        dispatcher.taskCompleted(generated.sum(), getGeneratedPerSecond());
+        dispatcher.clearListeners();
+        synchronized (this) {
+            startTime = 0;
+            generated.reset();
+            taskCompleted = true;
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ThreadPolicy describes the worker threads a {@link SearchEngine} searches with: how many there are, whether they
+ * keep the JVM alive, their priority and their name. The amount of threads can either be fixed or auto tuned by a
+ * {@link ThreadTuner} when the engine starts. The only way to create a ThreadPolicy is through
+ * {@code ThreadPolicyBuilder}.
+ *
+ * @see SearchEngine
+ * @since v1.4.0
+ */
+public class ThreadPolicy {
+
+    public static final String DEFAULT_NAME_PREFIX = "VanityGenerator-search-";
+    public static final int DEFAULT_MAX_RESTARTS = 3;
+
+    private final int threads;
+    private final boolean daemon;
+    private final boolean lowPriority;
+    private final String namePrefix;
+    private final int maxRestarts;
+    private final boolean autoTune;
+    private final int maxThreads;
+    private final long retuneMillis;
+
+    private ThreadPolicy(ThreadPolicyBuilder builder) {
+        threads = builder.threads;
+        daemon = builder.daemon;
+        lowPriority = builder.lowPriority;
+        namePrefix = builder.namePrefix;
+        maxRestarts = builder.maxRestarts;
+        autoTune = builder.autoTune;
+        maxThreads = builder.maxThreads;
+        retuneMillis = builder.retuneMillis;
+    }
+
+    /**
+     * Returns a policy with one daemon thread per available processor at normal priority.
+     */
+    public static ThreadPolicy getDefault() {
+        return new ThreadPolicyBuilder().build();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public boolean isDaemon() {
+        return daemon;
+    }
+
+    public boolean isLowPriority() {
+        return lowPriority;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public int getMaxRestarts() {
+        return maxRestarts;
+    }
+
+    public boolean isAutoTune() {
+        return autoTune;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Returns the interval in milliseconds at which the amount of threads is re-tuned while searching, or 0 if it is
+     * only tuned when the engine starts.
+     */
+    public long getRetuneMillis() {
+        return retuneMillis;
+    }
+
+    public static class ThreadPolicyBuilder {
+
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private boolean daemon = true;
+        private boolean lowPriority = false;
+        private String namePrefix = DEFAULT_NAME_PREFIX;
+        private int maxRestarts = DEFAULT_MAX_RESTARTS;
+        private boolean autoTune = false;
+        private int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        private long retuneMillis = 0;
+
+        /**
+         * Sets the amount of worker threads. Default is set to the amount of available processors.
+         * @throws IllegalArgumentException if threads is not positive.
+         */
+        public ThreadPolicyBuilder threads(int threads) {
+            if (threads <= 0) {
+                throw new IllegalArgumentException("Threads must be positive: " + threads);
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Sets whether worker threads are daemon threads, which do not keep the JVM alive. Default is set to true.
+         */
+        public ThreadPolicyBuilder daemon(boolean daemon) {
+            this.daemon = daemon;
+            return this;
+        }
+
+        /**
+         * Sets whether worker threads run at the minimum priority so searching yields to the rest of the process.
+         * Default is set to false.
+         */
+        public ThreadPolicyBuilder lowPriority(boolean lowPriority) {
+            this.lowPriority = lowPriority;
+            return this;
+        }
+
+        /**
+         * Sets the prefix of worker thread names. Each thread is named with the prefix followed by its number.
+         * @throws NullPointerException if namePrefix is null.
+         */
+        public ThreadPolicyBuilder namePrefix(String namePrefix) {
+            Utils.checkNotNull(namePrefix, "Name prefix cannot be null.");
+            this.namePrefix = namePrefix;
+            return this;
+        }
+
+        /**
+         * Sets how many times a worker is restarted after its search throws before the worker gives up. Default is
+         * set to 3.
+         * @throws IllegalArgumentException if maxRestarts is negative.
+         */
+        public ThreadPolicyBuilder maxRestarts(int maxRestarts) {
+            if (maxRestarts < 0) {
+                throw new IllegalArgumentException("Max restarts cannot be negative: " + maxRestarts);
+            }
+            this.maxRestarts = maxRestarts;
+            return this;
+        }
+
+        /**
+         * Sets whether the amount of threads is chosen by measuring the throughput of the host when the engine starts,
+         * instead of using threads(int). Default is set to false.
+         * @see ThreadTuner
+         */
+        public ThreadPolicyBuilder autoTune(boolean autoTune) {
+            this.autoTune = autoTune;
+            return this;
+        }
+
+        /**
+         * Sets the largest amount of threads auto tuning may choose. Default is set to twice the amount of available
+         * processors, since that amount is not reliable inside of containers.
+         * @throws IllegalArgumentException if maxThreads is not positive.
+         */
+        public ThreadPolicyBuilder maxThreads(int maxThreads) {
+            if (maxThreads <= 0) {
+                throw new IllegalArgumentException("Max threads must be positive: " + maxThreads);
+            }
+            this.maxThreads = maxThreads;
+            return this;
+        }
+
+        /**
+         * Sets the interval at which an auto tuned engine re-tunes while searching, by trying one thread more or less
+         * and keeping the change if it pays off. Default is set to 0, which never re-tunes.
+         * @throws IllegalArgumentException if interval is negative.
+         */
+        public ThreadPolicyBuilder retuneInterval(long interval, TimeUnit unit) {
+            if (interval < 0) {
+                throw new IllegalArgumentException("Retune interval cannot be negative: " + interval);
+            }
+            this.retuneMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        public ThreadPolicy build() {
+            return new ThreadPolicy(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,214 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import co.bitsquared.vanitygenerator.core.query.AddressView;
+import co.bitsquared.vanitygenerator.core.tools.StripedCounter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ThreadTuner finds how many search threads a host can actually make use of. Runtime.availableProcessors() counts
+ * hyperthreads as full cores and, on older JVMs, ignores container CPU limits, so the amount of keys generated per
+ * second stops growing well before it is reached on many hosts.
+ * <p>{@link #tune()} measures the keys generated per second at an increasing amount of threads, doubling it as long as
+ * every added thread still contributes, then narrowing the range down. A thread contributes when it adds at least
+ * the knee fraction of what a single thread generates on its own; the largest amount of threads that does is the knee
+ * of the throughput curve and is the chosen amount.
+ *
+ * @see ThreadPolicy.ThreadPolicyBuilder#autoTune(boolean)
+ * @since v1.4.0
+ */
+public class ThreadTuner {
+
+    public static final long DEFAULT_PROBE_MILLIS = 300;
+    public static final double DEFAULT_KNEE = 0.5;
+
+    private static final int MAX_WARM_UP_PROBES = 15;
+    private static final double WARM_UP_TOLERANCE = 1.05;
+
+    private static final Logger LOGGER = LogManager.getLogger(ThreadTuner.class);
+
+    private final int maxThreads;
+    private final long probeMillis;
+    private final double knee;
+    private final ThreadFactory threadFactory;
+    private final int version;
+    private final boolean compressed;
+
+    /**
+     * Creates a ThreadTuner probing up to maxThreads threads for 300 milliseconds each, with a knee fraction of 0.5.
+     */
+    public ThreadTuner(int maxThreads) {
+        this(maxThreads, DEFAULT_PROBE_MILLIS, DEFAULT_KNEE, Executors.defaultThreadFactory());
+    }
+
+    /**
+     * Creates a ThreadTuner whose probing threads encode compressed addresses on version byte 0.
+     * @see #ThreadTuner(int, long, double, ThreadFactory, int, boolean)
+     */
+    public ThreadTuner(int maxThreads, long probeMillis, double knee, ThreadFactory threadFactory) {
+        this(maxThreads, probeMillis, knee, threadFactory, 0, true);
+    }
+
+    /**
+     * @param maxThreads the largest amount of threads to probe.
+     * @param probeMillis how long each amount of threads is measured for.
+     * @param knee the fraction of a single thread's throughput an added thread must contribute, in range (0, 1].
+     * @param threadFactory the factory of the probing threads.
+     * @param version the version byte the probing threads encode addresses with, the one of the searched queries.
+     * @param compressed whether the probing threads encode compressed or uncompressed addresses, since uncompressed
+     * ones hash a public key twice as long.
+     * @throws IllegalArgumentException if maxThreads or probeMillis is not positive, or knee is out of range.
+     */
+    public ThreadTuner(int maxThreads, long probeMillis, double knee, ThreadFactory threadFactory, int version,
+                       boolean compressed) {
+        if (maxThreads <= 0) {
+            throw new IllegalArgumentException("Max threads must be positive: " + maxThreads);
+        }
+        if (probeMillis <= 0) {
+            throw new IllegalArgumentException("Probe millis must be positive: " + probeMillis);
+        }
+        if (knee <= 0 || knee > 1) {
+            throw new IllegalArgumentException("Knee must be in range (0, 1]: " + knee);
+        }
+        this.maxThreads = maxThreads;
+        this.probeMillis = probeMillis;
+        this.knee = knee;
+        this.threadFactory = threadFactory;
+        this.version = version;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Probes the throughput curve and returns the amount of threads at its knee. This blocks for a few probe periods,
+     * plus the time the JIT takes to warm up on a cold JVM.
+     */
+    public int tune() {
+        // Warms up the JIT until the single thread baseline stops growing, so that it is not underestimated.
+        double single = measure(1);
+        for (int i = 0; i < MAX_WARM_UP_PROBES; i++) {
+            double rate = measure(1);
+            boolean stable = rate < single * WARM_UP_TOLERANCE;
+            single = Math.max(single, rate);
+            if (stable) {
+                break;
+            }
+        }
+        int low = 1;
+        double lowRate = single;
+        int high = low;
+        while (low < maxThreads) {
+            high = Math.min(low * 2, maxThreads);
+            double rate = measure(high);
+            if (!contributes(low, lowRate, high, rate, single)) {
+                break;
+            }
+            low = high;
+            lowRate = rate;
+        }
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            double rate = measure(middle);
+            if (contributes(low, lowRate, middle, rate, single)) {
+                low = middle;
+                lowRate = rate;
+            } else {
+                high = middle;
+            }
+        }
+        LOGGER.info("Chose " + low + " search threads generating " + (long) lowRate + " keys/s (" + (long) single
+                + " keys/s on one thread, probed up to " + maxThreads + ").");
+        return low;
+    }
+
+    /**
+     * Returns true if going from one amount of threads to another added at least the knee fraction of a single thread's
+     * throughput per added thread.
+     */
+    boolean contributes(int fromThreads, double fromRate, int toThreads, double toRate, double singleRate) {
+        return (toRate - fromRate) / (toThreads - fromThreads) >= knee * singleRate;
+    }
+
+    double getKnee() {
+        return knee;
+    }
+
+    /**
+     * Returns the keys generated per second by an amount of probing threads.
+     */
+    private double measure(int threads) {
+        final StripedCounter counter = new StripedCounter();
+        final CountDownLatch started = new CountDownLatch(threads);
+        final Probe[] probes = new Probe[threads];
+        Thread[] probeThreads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            probes[i] = new Probe(counter, started, version, compressed);
+            probeThreads[i] = threadFactory.newThread(probes[i]);
+            probeThreads[i].start();
+        }
+        try {
+            started.await();
+            long startCount = counter.sum();
+            long startTime = System.nanoTime();
+            Thread.sleep(probeMillis);
+            long count = counter.sum() - startCount;
+            long elapsed = System.nanoTime() - startTime;
+            return count * 1e9 / elapsed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            for (Probe probe: probes) {
+                probe.stopped = true;
+            }
+            for (Thread thread: probeThreads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * Probe does the same work a PoolSearch does for each candidate, without matching against any query.
+     */
+    private static class Probe implements Runnable {
+
+        private final StripedCounter counter;
+        private final CountDownLatch started;
+        private final int version;
+        private final boolean compressed;
+        private volatile boolean stopped = false;
+
+        Probe(StripedCounter counter, CountDownLatch started, int version, boolean compressed) {
+            this.counter = counter;
+            this.started = started;
+            this.version = version;
+            this.compressed = compressed;
+        }
+
+        @Override
+        public void run() {
+            StripedCounter.Cell cell = counter.newCell();
+            BatchKeyGenerator generator = new BatchKeyGenerator();
+            AddressView view = new AddressView();
+            started.countDown();
+            while (!stopped) {
+                int batched = generator.fill();
+                for (int i = 0; i < batched && !stopped; i++) {
+                    generator.reset(view, i);
+                    view.getAddressChars(version, compressed);
+                    cell.increment();
+                }
+            }
+            counter.retire(cell);
+        }
+
+    }
+
+}
@@ -0,0 +1,171 @@
+package co.bitsquared.vanitygenerator.core.tools;
+
+import java.util.Arrays;
+
+/**
+ * AhoCorasick is a multi-pattern matcher over the Base58 alphabet. Every pattern is compiled into one automaton whose
+ * transitions (including the failure links) are resolved ahead of time into a flat {@code int[]} table, so a text is
+ * scanned once, one table lookup per character, no matter how many patterns are loaded.
+ * <p>When ignoring case, patterns and text are folded to lower case before they are matched, which is the same
+ * folding {@code (?i)} does on the Base58 alphabet.
+ * <p>An AhoCorasick is immutable once built and can be shared between threads.
+ *
+ * @since v1.4.0
+ */
+public class AhoCorasick {
+
+    private static final int ROOT = 0;
+    private static final int NO_PATTERN = -1;
+
+    private final boolean ignoreCase;
+    private final int[] symbols = new int[128];
+    private final int alphabetSize;
+    private final int[] transitions;
+    private final int[] outputs;
+
+    /**
+     * Builds an automaton from a set of Base58 patterns.
+     * @param patterns the patterns to find. The index of a pattern is its id.
+     * @param ignoreCase whether patterns should match regardless of letter case.
+     */
+    public AhoCorasick(String[] patterns, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        Arrays.fill(symbols, -1);
+        int size = 0;
+        for (int i = 0; i < Utils.ALPHABET.length(); i++) {
+            char c = fold(Utils.ALPHABET.charAt(i));
+            if (symbols[c] == -1) {
+                symbols[c] = size++;
+            }
+        }
+        alphabetSize = size;
+
+        int maxStates = 1;
+        for (String pattern: patterns) {
+            maxStates += pattern.length();
+        }
+        int[] trie = new int[maxStates * alphabetSize];
+        int[] patternOutputs = new int[maxStates];
+        Arrays.fill(trie, -1);
+        Arrays.fill(patternOutputs, NO_PATTERN);
+        int states = 1;
+        for (int id = 0; id < patterns.length; id++) {
+            int state = ROOT;
+            String pattern = patterns[id];
+            for (int i = 0; i < pattern.length(); i++) {
+                int symbol = symbolOf(pattern.charAt(i));
+                if (symbol < 0) {
+                    throw new IllegalArgumentException(pattern + " is not valid Base58.");
+                }
+                int index = state * alphabetSize + symbol;
+                if (trie[index] == -1) {
+                    trie[index] = states++;
+                }
+                state = trie[index];
+            }
+            if (patternOutputs[state] == NO_PATTERN) {
+                patternOutputs[state] = id;
+            }
+        }
+
+        transitions = new int[states * alphabetSize];
+        outputs = new int[states];
+        int[] failures = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        outputs[ROOT] = patternOutputs[ROOT];
+        for (int symbol = 0; symbol < alphabetSize; symbol++) {
+            int next = trie[symbol];
+            if (next == -1) {
+                transitions[symbol] = ROOT;
+            } else {
+                transitions[symbol] = next;
+                failures[next] = ROOT;
+                queue[tail++] = next;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            int failure = failures[state];
+            outputs[state] = firstPattern(patternOutputs[state], outputs[failure]);
+            for (int symbol = 0; symbol < alphabetSize; symbol++) {
+                int next = trie[state * alphabetSize + symbol];
+                if (next == -1) {
+                    transitions[state * alphabetSize + symbol] = transitions[failure * alphabetSize + symbol];
+                } else {
+                    transitions[state * alphabetSize + symbol] = next;
+                    failures[next] = transitions[failure * alphabetSize + symbol];
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Scans a text and returns the id of the first pattern found, ending at the earliest position. When several
+     * patterns end at that position, the lowest id is returned.
+     * @return the id of a found pattern, or -1 if no pattern occurs in the text.
+     */
+    public int find(CharSequence text) {
+        int state = ROOT;
+        if (outputs[state] != NO_PATTERN) {
+            return outputs[state];
+        }
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (outputs[state] != NO_PATTERN) {
+                return outputs[state];
+            }
+        }
+        return NO_PATTERN;
+    }
+
+    /**
+     * Same as {@link #find(CharSequence)} on length characters of a char array starting at offset.
+     */
+    public int find(char[] text, int offset, int length) {
+        int state = ROOT;
+        if (outputs[state] != NO_PATTERN) {
+            return outputs[state];
+        }
+        for (int i = offset; i < offset + length; i++) {
+            state = step(state, text[i]);
+            if (outputs[state] != NO_PATTERN) {
+                return outputs[state];
+            }
+        }
+        return NO_PATTERN;
+    }
+
+    /**
+     * Returns the amount of states in this automaton.
+     */
+    public int getStateCount() {
+        return outputs.length;
+    }
+
+    private int step(int state, char c) {
+        int symbol = symbolOf(c);
+        return symbol < 0 ? ROOT : transitions[state * alphabetSize + symbol];
+    }
+
+    private int symbolOf(char c) {
+        c = fold(c);
+        return c < symbols.length ? symbols[c] : -1;
+    }
+
+    private char fold(char c) {
+        return ignoreCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    private static int firstPattern(int left, int right) {
+        if (left == NO_PATTERN) {
+            return right;
+        }
+        if (right == NO_PATTERN) {
+            return left;
+        }
+        return Math.min(left, right);
+    }
+
+}
@@ -0,0 +1,132 @@
+package co.bitsquared.vanitygenerator.core.tools;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Base58Encoder writes Base58Check addresses (version byte | hash160 | checksum) into a caller owned buffer without
+ * allocating. The payload, digest and division buffers are kept by the encoder and reused for every address, which
+ * removes the Address, byte array, division buffer, char array and String that {@code key.toAddress(params).toString()}
+ * creates for every candidate.
+ * <p>The payload is divided by 58^5 per step instead of by 58 per character. The payload is held as 32 bit limbs in
+ * longs so the remainder carried into each limb (less than 58^5, which is below 2^30) never overflows 64 bits, and each
+ * step produces five characters at once.
+ * <p><strong>NOTE</strong>: A Base58Encoder is not thread safe. Each thread should own its own encoder.
+ *
+ * @since v1.4.0
+ */
+public class Base58Encoder {
+
+    public static final int HASH_LENGTH = 20;
+    public static final int PAYLOAD_LENGTH = 25;
+    public static final int MAX_ADDRESS_LENGTH = 35;
+
+    private static final int CHECKSUM_LENGTH = 4;
+    private static final int LIMBS = 7;
+    private static final int CHARS_PER_STEP = 5;
+    private static final long STEP_DIVISOR = 58L * 58L * 58L * 58L * 58L;
+    private static final char[] ALPHABET = Utils.ALPHABET.toCharArray();
+
+    private final MessageDigest sha256;
+    private final byte[] payload = new byte[PAYLOAD_LENGTH];
+    private final byte[] digest = new byte[32];
+    private final long[] limbs = new long[LIMBS];
+    private final char[] digits = new char[LIMBS * CHARS_PER_STEP];
+
+    public Base58Encoder() {
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Encodes a Base58Check address from a version byte and a hash160.
+     * @param version the version byte in range [0, 255].
+     * @param hash an array holding the 20 byte hash160.
+     * @param hashOffset the offset of the hash160 in hash.
+     * @param out the buffer to write the address to, starting at index 0. Must hold at least MAX_ADDRESS_LENGTH chars.
+     * @return the amount of characters written.
+     */
+    public int encode(int version, byte[] hash, int hashOffset, char[] out) {
+        fillPayload(version, hash, hashOffset);
+        return encodePayload(payload, out);
+    }
+
+    /**
+     * Builds the 25 byte payload (version byte | hash160 | checksum) of an address without encoding it. The result can
+     * be read with {@link #getPayload()} until the next call to this encoder.
+     */
+    public void fillPayload(int version, byte[] hash, int hashOffset) {
+        payload[0] = (byte) version;
+        System.arraycopy(hash, hashOffset, payload, 1, HASH_LENGTH);
+        try {
+            sha256.update(payload, 0, 1 + HASH_LENGTH);
+            sha256.digest(digest, 0, digest.length);
+            sha256.update(digest, 0, digest.length);
+            sha256.digest(digest, 0, digest.length);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+        System.arraycopy(digest, 0, payload, 1 + HASH_LENGTH, CHECKSUM_LENGTH);
+    }
+
+    /**
+     * Returns the payload of the last encoded address. The returned array is reused by this encoder and must not be
+     * modified.
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Encodes a 25 byte payload (version byte | hash160 | checksum) that was already built, for example by a previous
+     * call to {@link #fillPayload(int, byte[], int)}, so that its checksum is not computed again.
+     * @param payload the payload of the address. It is not modified.
+     * @param out the buffer to write the address to, starting at index 0. Must hold at least MAX_ADDRESS_LENGTH chars.
+     * @return the amount of characters written.
+     */
+    public int encodePayload(byte[] payload, char[] out) {
+        int leadingZeros = 0;
+        while (leadingZeros < PAYLOAD_LENGTH && payload[leadingZeros] == 0) {
+            leadingZeros++;
+        }
+        // 25 bytes: one leading byte followed by six 32 bit limbs.
+        limbs[0] = payload[0] & 0xff;
+        for (int i = 1; i < LIMBS; i++) {
+            int offset = 1 + (i - 1) * 4;
+            limbs[i] = ((payload[offset] & 0xffL) << 24) | ((payload[offset + 1] & 0xffL) << 16)
+                    | ((payload[offset + 2] & 0xffL) << 8) | (payload[offset + 3] & 0xffL);
+        }
+        int digitStart = digits.length;
+        int firstLimb = 0;
+        while (firstLimb < LIMBS) {
+            long remainder = 0;
+            for (int i = firstLimb; i < LIMBS; i++) {
+                long current = (remainder << 32) | limbs[i];
+                limbs[i] = current / STEP_DIVISOR;
+                remainder = current - limbs[i] * STEP_DIVISOR;
+            }
+            for (int i = 0; i < CHARS_PER_STEP; i++) {
+                digits[--digitStart] = ALPHABET[(int) (remainder % 58)];
+                remainder /= 58;
+            }
+            while (firstLimb < LIMBS && limbs[firstLimb] == 0) {
+                firstLimb++;
+            }
+        }
+        while (digitStart < digits.length && digits[digitStart] == ALPHABET[0]) {
+            digitStart++;
+        }
+        int length = 0;
+        for (int i = 0; i < leadingZeros; i++) {
+            out[length++] = ALPHABET[0];
+        }
+        int digitCount = digits.length - digitStart;
+        System.arraycopy(digits, digitStart, out, length, digitCount);
+        return length + digitCount;
+    }
+
+}
@@ -0,0 +1,97 @@
+package co.bitsquared.vanitygenerator.core.tools;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * StripedCounter is a counter that many threads can increment without contending on a shared cache line. Each thread
+ * takes its own {@link Cell} and is the only writer of that cell, so an increment is a plain ordered store with no
+ * compare-and-set. Cells are padded so that two of them never share a cache line. The cells are only summed when the
+ * total is read, which is meant to happen when progress is reported rather than on every increment.
+ *
+ * @since v1.4.0
+ */
+public class StripedCounter {
+
+    private final CopyOnWriteArrayList<Cell> cells = new CopyOnWriteArrayList<Cell>();
+    private final AtomicLong retired = new AtomicLong();
+    private volatile long offset;
+
+    /**
+     * Creates a new cell for the calling thread. The cell should be retired once the thread is done counting.
+     */
+    public Cell newCell() {
+        Cell cell = new Cell();
+        cells.add(cell);
+        return cell;
+    }
+
+    /**
+     * Folds the count of a cell into this counter and stops tracking the cell.
+     */
+    public void retire(Cell cell) {
+        if (cells.remove(cell)) {
+            retired.addAndGet(cell.get());
+        }
+    }
+
+    /**
+     * Returns the sum of every cell since the last reset. This is not an atomic snapshot while cells are being
+     * incremented, but it never misses a completed increment.
+     */
+    public long sum() {
+        long sum = retired.get();
+        for (Cell cell: cells) {
+            sum += cell.get();
+        }
+        return sum - offset;
+    }
+
+    /**
+     * Sets the sum of this counter back to 0 without touching the cells that other threads are writing to.
+     */
+    public synchronized void reset() {
+        offset += sum();
+    }
+
+    /**
+     * Cell is a padded, single writer slot of a StripedCounter.
+     */
+    public static final class Cell {
+
+        private static final AtomicLongFieldUpdater<Cell> VALUE = AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+        // Padding that keeps value on its own cache line.
+        long p0, p1, p2, p3, p4, p5, p6;
+        private volatile long value;
+        long q0, q1, q2, q3, q4, q5, q6;
+
+        private Cell() {
+
+        }
+
+        /**
+         * Adds one to this cell. Must only be called by the thread owning this cell.
+         * @return the value of this cell after the increment.
+         */
+        public long increment() {
+            long next = value + 1;
+            VALUE.lazySet(this, next);
+            return next;
+        }
+
+        /**
+         * Adds an amount to this cell. Must only be called by the thread owning this cell.
+         */
+        public void add(long amount) {
+            VALUE.lazySet(this, value + amount);
+        }
+
+        public long get() {
+            return value;
+        }
+
+    }
+
+}
@@ -13,7 +13,18 @@ public class Utils {
 
     public static final int BASE = 58;
     public static final char[] NON_REPEAT_CHARS = new char[]{'i', 'L', 'o'};
-    public static final Pattern BASE_58 = Pattern.compile("^[123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz]*$");
+    public static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+    public static final Pattern BASE_58 = Pattern.compile("^[" + ALPHABET + "]*$");
+    private static final int[] ALPHABET_INDEXES = new int[128];
+
+    static {
+        for (int i = 0; i < ALPHABET_INDEXES.length; i++) {
+            ALPHABET_INDEXES[i] = -1;
+        }
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            ALPHABET_INDEXES[ALPHABET.charAt(i)] = i;
+        }
+    }
 
     /**
      * This is a pseudo odds calculator. This returns a number based off of search case, search placement, and the
@@ -66,6 +77,13 @@ public class Utils {
         return BASE_58.matcher(input).find();
     }
 
+    /**
+     * Returns the value [0, 57] of a Base58 character, or -1 if the character is not part of the Base58 alphabet.
+     */
+    public static int indexOfBase58(char c) {
+        return c < ALPHABET_INDEXES.length ? ALPHABET_INDEXES[c] : -1;
+    }
+
     public static void checkBase58(String input) throws Base58FormatException {
         if (!isBase58(input)) {
             throw new Base58FormatException(input);
@@ -0,0 +1,132 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.regex.RandomText;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds ContainsIndexes out of case sensitive and case insensitive contains queries on several headers and both
+ * compressions, and checks each seeded key against {@code Pattern.find} on the addresses bitcoinj derives for it. The
+ * index may report any query that occurs, but it must report one whenever a query occurs.
+ */
+public class ContainsIndexTest {
+
+    private static final int INDEXES = 30;
+    private static final int QUERIES = 25;
+    private static final int KEYS = 60;
+    private static final GlobalNetParams[] NETWORKS = {
+            GlobalNetParams.get(0, 128, 5), GlobalNetParams.get(111, 239, 196)
+    };
+
+    @Test
+    public void findsAQueryWheneverOneOccurs() {
+        Random random = new Random(92);
+        GlobalNetParams netParams = NETWORKS[0];
+        for (int i = 0; i < INDEXES; i++) {
+            List<RegexQuery> queries = new ArrayList<RegexQuery>();
+            for (int j = 0; j < QUERIES; j++) {
+                queries.add(randomQuery(random, keyPair(random), netParams));
+            }
+            ContainsIndex index = ContainsIndex.build(queries, netParams);
+            for (int j = 0; j < KEYS; j++) {
+                ECKey[] pair = keyPair(random);
+                List<RegexQuery> occurring = new ArrayList<RegexQuery>();
+                for (RegexQuery query: queries) {
+                    if (occurs(query, pair, netParams)) {
+                        occurring.add(query);
+                    }
+                }
+                RegexQuery found = index.matches(new AddressView(pair[0]));
+                if (occurring.isEmpty()) {
+                    assertNull(String.valueOf(found), found);
+                } else {
+                    assertNotNull(occurring.toString(), found);
+                    assertTrue(found + " in " + occurring, occurring.contains(found));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void matchCaseQueriesAreReportedBeforeIgnoreCaseQueries() {
+        ECKey[] pair = keyPair(new Random(93));
+        String address = addressOf(0, pair[0].getPubKeyHash());
+        String text = address.substring(5, 8);
+        List<RegexQuery> queries = new ArrayList<RegexQuery>();
+        Query ignoreCase = new Query.QueryBuilder(text).matchCase(false).build();
+        Query matchCase = new Query.QueryBuilder(text).build();
+        queries.add(ignoreCase);
+        queries.add(matchCase);
+        assertEquals(matchCase, ContainsIndex.build(queries, NETWORKS[0]).matches(new AddressView(pair[0])));
+        // Uncompressed queries look at another address.
+        queries.clear();
+        queries.add(new Query.QueryBuilder(text).compressed(false).build());
+        assertNull(ContainsIndex.build(queries, NETWORKS[0]).matches(new AddressView(pair[0])));
+    }
+
+    private static boolean occurs(RegexQuery query, ECKey[] pair, GlobalNetParams netParams) {
+        Query containsQuery = (Query) query;
+        GlobalNetParams params = query.getNetworkParameters(netParams);
+        int version = query.isP2SH() ? params.getP2SHHeader() : params.getAddressHeader();
+        String address = addressOf(version, pair[query.isCompressed() ? 0 : 1].getPubKeyHash());
+        Pattern pattern = Pattern.compile(Pattern.quote(containsQuery.getPlainQuery()),
+                containsQuery.isMatchCase() ? 0 : Pattern.CASE_INSENSITIVE);
+        return pattern.matcher(address).find();
+    }
+
+    /**
+     * Returns a contains query that is either a few random characters or part of an address of another key, with its
+     * case changed when the query ignores case.
+     */
+    private static Query randomQuery(Random random, ECKey[] pair, GlobalNetParams netParams) {
+        boolean compressed = random.nextBoolean();
+        boolean matchCase = random.nextBoolean();
+        GlobalNetParams target = random.nextBoolean() ? null : NETWORKS[random.nextInt(NETWORKS.length)];
+        boolean p2sh = random.nextInt(4) == 0;
+        String text;
+        if (random.nextBoolean()) {
+            text = RandomText.string(random, Utils.ALPHABET, 2 + random.nextInt(2));
+        } else {
+            GlobalNetParams params = target == null ? netParams : target;
+            int version = p2sh ? params.getP2SHHeader() : params.getAddressHeader();
+            String address = addressOf(version, pair[compressed ? 0 : 1].getPubKeyHash());
+            int start = 1 + random.nextInt(address.length() - 4);
+            text = address.substring(start, start + 1 + random.nextInt(3));
+        }
+        if (!matchCase) {
+            text = RandomText.caseVariant(text, random);
+        }
+        return new Query.QueryBuilder(text).compressed(compressed).matchCase(matchCase).searchForP2SH(p2sh)
+                .targetNetwork(target).build();
+    }
+
+    private static ECKey[] keyPair(Random random) {
+        BigInteger privateKey = new BigInteger(256, random).mod(ECKey.CURVE.getN().subtract(BigInteger.ONE))
+                .add(BigInteger.ONE);
+        return new ECKey[] {ECKey.fromPrivate(privateKey, true), ECKey.fromPrivate(privateKey, false)};
+    }
+
+    private static String addressOf(int version, byte[] hash) {
+        byte[] payload = new byte[25];
+        payload[0] = (byte) version;
+        System.arraycopy(hash, 0, payload, 1, hash.length);
+        System.arraycopy(Sha256Hash.hashTwice(payload, 0, 1 + hash.length), 0, payload, 1 + hash.length, 4);
+        return Base58.encode(payload);
+    }
+
+}
@@ -0,0 +1,91 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.regex.RandomText;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a hash160 lies inside the HashRangeSet of a begins query exactly when bitcoinj encodes its address with
+ * the query right after the leading character. Queries are taken both at random and from the address of the hash itself,
+ * and version byte 0 is checked separately for the leading '1' characters its zero bytes are written as.
+ */
+public class HashRangeSetTest {
+
+    private static final int QUERIES = 300;
+    private static final int HASHES = 40;
+    private static final int[] VERSIONS = {0, 5, 48, 111};
+
+    @Test
+    public void containsTheHashesWhoseAddressBeginsWithTheQuery() {
+        Random random = new Random(70);
+        for (int i = 0; i < QUERIES; i++) {
+            int version = VERSIONS[random.nextInt(VERSIONS.length)];
+            byte[] hash = randomHash(random);
+            String address = addressOf(version, hash);
+            // Half of the queries are taken from an address, so that some hashes are inside of the set.
+            String query = random.nextBoolean() ? address.substring(1, 2 + random.nextInt(3))
+                    : RandomText.string(random, Utils.ALPHABET, 1 + random.nextInt(2));
+            HashRangeSet set = HashRangeSet.forBeginsQuery(query, version);
+            assertTrue(set.contains(hash) || !address.substring(1).startsWith(query));
+            for (int j = 0; j < HASHES; j++) {
+                hash = randomHash(random);
+                address = addressOf(version, hash);
+                assertEquals(query + " on " + address, address.substring(1).startsWith(query), set.contains(hash));
+            }
+        }
+    }
+
+    @Test
+    public void zeroBytesAreLeadingOnesOnVersionZero() {
+        Random random = new Random(71);
+        for (int zeros = 0; zeros < 4; zeros++) {
+            byte[] hash = randomHash(random);
+            Arrays.fill(hash, 0, zeros, (byte) 0);
+            hash[zeros] = (byte) (1 + random.nextInt(255));
+            String address = addressOf(0, hash);
+            String ones = "111".substring(0, zeros);
+            assertTrue(address.startsWith("1" + ones) && address.charAt(1 + zeros) != '1');
+            for (int compared = 1; compared <= 3; compared++) {
+                String query = "111".substring(0, compared);
+                assertEquals(query + " on " + address, compared <= zeros, HashRangeSet.forBeginsQuery(query, 0).contains(hash));
+            }
+            // The digit after the leading ones is compared like any other.
+            String query = ones + address.charAt(1 + zeros);
+            assertTrue(query + " on " + address, HashRangeSet.forBeginsQuery(query, 0).contains(hash));
+        }
+    }
+
+    @Test
+    public void unreachableQueriesHaveAnEmptySet() {
+        // Every address on version byte 5 is a 3 followed by a character no higher than R.
+        assertTrue(HashRangeSet.forBeginsQuery("z", 5).isEmpty());
+        assertTrue(HashRangeSet.forBeginsQuery("zzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzzz", 0).isEmpty());
+        assertFalse(HashRangeSet.forBeginsQuery("1", 0).isEmpty());
+        assertTrue(HashRangeSet.forBeginsQuery("z", 5).getProbability() == 0);
+        assertFalse(HashRangeSet.forBeginsQuery("R", 5).isEmpty());
+    }
+
+    private static byte[] randomHash(Random random) {
+        byte[] hash = new byte[HashRangeSet.HASH_LENGTH];
+        random.nextBytes(hash);
+        return hash;
+    }
+
+    private static String addressOf(int version, byte[] hash) {
+        byte[] payload = new byte[25];
+        payload[0] = (byte) version;
+        System.arraycopy(hash, 0, payload, 1, hash.length);
+        System.arraycopy(Sha256Hash.hashTwice(payload, 0, 1 + hash.length), 0, payload, 1 + hash.length, 4);
+        return Base58.encode(payload);
+    }
+
+}
@@ -0,0 +1,168 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.network.GlobalNetParams;
+import co.bitsquared.vanitygenerator.core.regex.RandomText;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs seeded keys through a PrefixIndex and compares the query it reports with a scan over every begins query, where
+ * each query is compared with the address bitcoinj's hash160 of the key encodes to. The queries mix compressions,
+ * network and P2SH headers, and version byte 0 queries made of '1' characters that only match hashes starting with
+ * zero bytes.
+ */
+public class PrefixIndexTest {
+
+    private static final int INDEXES = 20;
+    private static final int QUERIES = 60;
+    private static final int KEYS = 100;
+    private static final GlobalNetParams[] NETWORKS = {
+            GlobalNetParams.get(0, 128, 5), GlobalNetParams.get(111, 239, 196), GlobalNetParams.get(48, 176, 50)
+    };
+
+    @Test
+    public void reportsTheQueryAScanFinds() {
+        Random random = new Random(80);
+        GlobalNetParams netParams = NETWORKS[0];
+        for (int i = 0; i < INDEXES; i++) {
+            List<ECKey[]> keys = new ArrayList<ECKey[]>();
+            for (int j = 0; j < KEYS; j++) {
+                keys.add(keyPair(random));
+            }
+            List<RegexQuery> queries = new ArrayList<RegexQuery>();
+            for (int j = 0; j < QUERIES; j++) {
+                queries.add(randomQuery(random, keys.get(random.nextInt(KEYS)), netParams));
+            }
+            PrefixIndex index = PrefixIndex.build(queries, netParams);
+            assertEquals(QUERIES, index.getIndexedCount());
+            for (ECKey[] pair: keys) {
+                assertFoundLikeAScan(index, queries, pair, netParams);
+            }
+            for (int j = 0; j < KEYS; j++) {
+                assertFoundLikeAScan(index, queries, keyPair(random), netParams);
+            }
+        }
+    }
+
+    @Test
+    public void leadingOnesOnlyMatchZeroBytes() {
+        Random random = new Random(81);
+        GlobalNetParams netParams = NETWORKS[0];
+        List<RegexQuery> queries = new ArrayList<RegexQuery>();
+        queries.add(new Query.QueryBuilder("1").begins(true).build());
+        queries.add(new Query.QueryBuilder("1").begins(true).compressed(false).build());
+        PrefixIndex index = PrefixIndex.build(queries, netParams);
+        int found = 0;
+        // About one hash in 256 starts with a zero byte.
+        for (int i = 0; i < 3000; i++) {
+            ECKey[] pair = keyPair(random);
+            if (assertFoundLikeAScan(index, queries, pair, netParams) != null) {
+                found++;
+            }
+        }
+        assertTrue(found > 0);
+    }
+
+    @Test
+    public void emptyIndexFindsNothing() {
+        PrefixIndex index = PrefixIndex.build(Collections.<RegexQuery>emptyList(), NETWORKS[0]);
+        assertEquals(0, index.getIndexedCount());
+        AddressView view = new AddressView(keyPair(new Random(82))[0]);
+        assertNull(index.matches(view, NETWORKS[0]));
+    }
+
+    /**
+     * Checks the index against the lowest matching query of the scan. Compressed queries are reported before
+     * uncompressed ones.
+     */
+    private static RegexQuery assertFoundLikeAScan(PrefixIndex index, List<RegexQuery> queries, ECKey[] pair,
+                                                   GlobalNetParams netParams) {
+        RegexQuery expected = null;
+        for (int compression = 0; compression < 2 && expected == null; compression++) {
+            boolean compressed = compression == 0;
+            for (RegexQuery query: queries) {
+                if (query.isCompressed() == compressed && begins(query, pair, netParams)) {
+                    expected = query;
+                    break;
+                }
+            }
+        }
+        AddressView view = AddressView.acquire(pair[0]);
+        try {
+            RegexQuery found = index.matches(view, netParams);
+            assertEquals(String.valueOf(expected), expected, found);
+            return found;
+        } finally {
+            AddressView.release(view);
+        }
+    }
+
+    private static boolean begins(RegexQuery query, ECKey[] pair, GlobalNetParams netParams) {
+        String address = addressOf(version(query, netParams), pair[query.isCompressed() ? 0 : 1].getPubKeyHash());
+        return address.substring(1).startsWith(((Query) query).getPlainQuery());
+    }
+
+    /**
+     * Returns a begins query that is either made of the characters after the leading one of a key's address, random
+     * characters, or a few '1' characters on version byte 0.
+     */
+    private static Query randomQuery(Random random, ECKey[] pair, GlobalNetParams netParams) {
+        boolean compressed = random.nextBoolean();
+        GlobalNetParams target = random.nextBoolean() ? null : NETWORKS[random.nextInt(NETWORKS.length)];
+        boolean p2sh = random.nextInt(4) == 0;
+        String text;
+        switch (random.nextInt(4)) {
+            case 0:
+                text = RandomText.string(random, Utils.ALPHABET, 1 + random.nextInt(2));
+                break;
+            case 1:
+                target = NETWORKS[0];
+                p2sh = false;
+                text = "11".substring(0, 1 + random.nextInt(2));
+                break;
+            default:
+                GlobalNetParams params = target == null ? netParams : target;
+                int version = p2sh ? params.getP2SHHeader() : params.getAddressHeader();
+                String address = addressOf(version, pair[compressed ? 0 : 1].getPubKeyHash());
+                text = address.substring(1, 2 + random.nextInt(3));
+        }
+        return new Query.QueryBuilder(text).begins(true).compressed(compressed).searchForP2SH(p2sh)
+                .targetNetwork(target).build();
+    }
+
+    private static int version(RegexQuery query, GlobalNetParams netParams) {
+        GlobalNetParams params = query.getNetworkParameters(netParams);
+        return query.isP2SH() ? params.getP2SHHeader() : params.getAddressHeader();
+    }
+
+    /**
+     * Returns the compressed and the uncompressed ECKey of a random private key.
+     */
+    private static ECKey[] keyPair(Random random) {
+        BigInteger privateKey = new BigInteger(256, random).mod(ECKey.CURVE.getN().subtract(BigInteger.ONE))
+                .add(BigInteger.ONE);
+        return new ECKey[] {ECKey.fromPrivate(privateKey, true), ECKey.fromPrivate(privateKey, false)};
+    }
+
+    private static String addressOf(int version, byte[] hash) {
+        byte[] payload = new byte[25];
+        payload[0] = (byte) version;
+        System.arraycopy(hash, 0, payload, 1, hash.length);
+        System.arraycopy(Sha256Hash.hashTwice(payload, 0, 1 + hash.length), 0, payload, 1 + hash.length, 4);
+        return Base58.encode(payload);
+    }
+
+}
@@ -0,0 +1,114 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.regex.RandomText;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the QueryMatcher of a Query agrees with the regular expression Query builds for the same placement and
+ * case, on random addresses that often hold a case variant of the query, and on addresses too short for it. The
+ * Boyer-Moore-Horspool scan of contains queries is also checked on repeated characters, where its shifts are shortest.
+ */
+public class QueryMatcherTest {
+
+    private static final String POOL = "1abcABCxyzLo";
+    private static final int QUERIES = 3000;
+    private static final int ADDRESSES = 40;
+
+    @Test
+    public void matchesLikeThePatternOfTheQuery() {
+        Random random = new Random(50);
+        for (int i = 0; i < QUERIES; i++) {
+            String text = RandomText.string(random, POOL, 1 + random.nextInt(5));
+            int placement = random.nextInt(3);
+            boolean matchCase = random.nextBoolean();
+            Query query = new Query.QueryBuilder(text).begins(placement == 1).ends(placement == 2).matchCase(matchCase).build();
+            for (int j = 0; j < ADDRESSES; j++) {
+                String address = placed(random, RandomText.caseVariant(text, random));
+                assertMatchesLikeThePattern(query, address);
+            }
+        }
+    }
+
+    @Test
+    public void beginsNeedsACharacterAfterTheLeadingOne() {
+        Query query = new Query.QueryBuilder("1").begins(true).build();
+        assertMatchesLikeThePattern(query, "1");
+        assertMatchesLikeThePattern(query, "11");
+        assertFalse(query.getMatcher().matches("1"));
+        assertTrue(query.getMatcher().matches("11"));
+    }
+
+    @Test
+    public void endsLongerThanTheAddressNeverMatches() {
+        Query query = new Query.QueryBuilder("x1ab").ends(true).build();
+        assertMatchesLikeThePattern(query, "1ab");
+        assertMatchesLikeThePattern(query, "x1ab");
+        assertFalse(query.getMatcher().matches("1ab"));
+    }
+
+    @Test
+    public void emptyContainsQueryMatchesEveryAddress() {
+        QueryMatcher matcher = QueryMatcher.of("", false, false, true);
+        assertTrue(matcher.matches("1"));
+        assertTrue(matcher.matches(new char[0], 0));
+    }
+
+    @Test
+    public void horspoolShiftsOverRepeatedCharacters() {
+        String[] queries = {"aab", "aaa", "abab", "baa", "aaab"};
+        String[] addresses = {"1aaab", "1aabaa", "1abaabab", "1aaaaaaab", "1baaaa", "1ababab", "1aaaa"};
+        for (String text: queries) {
+            Query query = new Query.QueryBuilder(text).build();
+            for (String address: addresses) {
+                assertMatchesLikeThePattern(query, address);
+                assertEquals(text + " in " + address, address.contains(text), query.getMatcher().matches(address));
+            }
+        }
+    }
+
+    @Test
+    public void beginsIsComparedAfterTheLeadingCharacter() {
+        QueryMatcher matcher = QueryMatcher.of("abc", true, false, true);
+        assertTrue(matcher.matches("1abcxyz"));
+        assertFalse(matcher.matches("abcxyz1"));
+        assertFalse(matcher.matches("1xabc"));
+    }
+
+    @Test
+    public void ignoringCaseOnlyFoldsAsciiLetters() {
+        QueryMatcher matcher = QueryMatcher.of("Ab", false, true, false);
+        assertTrue(matcher.matches("1xyzaB"));
+        assertFalse(matcher.matches("1xyzaBc"));
+        assertFalse(QueryMatcher.of("Ab", false, false, true).matches("1xyzaB"));
+    }
+
+    private static void assertMatchesLikeThePattern(Query query, String address) {
+        assertEquals(query.getPattern() + " on " + address, query.getPattern().matcher(address).find(),
+                query.getMatcher().matches(address));
+    }
+
+    /**
+     * Builds a random address, sometimes with text placed at the beginning, at the end or anywhere in between.
+     */
+    private static String placed(Random random, String text) {
+        String address = RandomText.address(random, POOL);
+        switch (random.nextInt(4)) {
+            case 0:
+                return address;
+            case 1:
+                return "1" + text + address.substring(1 + text.length());
+            case 2:
+                return address.substring(0, address.length() - text.length()) + text;
+            default:
+                int offset = 1 + random.nextInt(address.length() - text.length());
+                return address.substring(0, offset) + text + address.substring(offset + text.length());
+        }
+    }
+
+}
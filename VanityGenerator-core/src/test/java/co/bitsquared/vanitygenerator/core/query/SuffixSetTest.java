@@ -0,0 +1,123 @@
+package co.bitsquared.vanitygenerator.core.query;
+
+import co.bitsquared.vanitygenerator.core.regex.RandomText;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+import org.bitcoinj.core.Base58;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks SuffixSet against the Base58 encoding of random payloads, half of which are shifted to end with a case variant
+ * of their query, and against the edges of the encoding: '1' as the zero digit and queries longer than MAX_DIGITS.
+ */
+public class SuffixSetTest {
+
+    private static final int QUERIES = 2000;
+    private static final int PAYLOADS = 40;
+    private static final int PAYLOAD_LENGTH = 25;
+    private static final BigInteger BASE = BigInteger.valueOf(Utils.BASE);
+
+    @Test
+    public void residueIsThePayloadModuloTheLargestPower() {
+        Random random = new Random(40);
+        BigInteger modulus = BASE.pow(SuffixSet.MAX_DIGITS);
+        for (int i = 0; i < 10000; i++) {
+            byte[] payload = new byte[PAYLOAD_LENGTH];
+            random.nextBytes(payload);
+            assertEquals(new BigInteger(1, payload).mod(modulus).longValue(), SuffixSet.residueOf(payload));
+        }
+    }
+
+    @Test
+    public void containsMatchesTheEncodedSuffix() {
+        Random random = new Random(41);
+        for (int i = 0; i < QUERIES; i++) {
+            String query = RandomText.string(random, Utils.ALPHABET, 1 + random.nextInt(12));
+            boolean matchCase = random.nextBoolean();
+            SuffixSet set = SuffixSet.forEndsQuery(query, matchCase);
+            assertEquals(query.length() <= SuffixSet.MAX_DIGITS, set.isExact());
+            for (int j = 0; j < PAYLOADS; j++) {
+                byte[] payload = new byte[PAYLOAD_LENGTH];
+                random.nextBytes(payload);
+                if (random.nextBoolean()) {
+                    payload = endingWith(payload, matchCase ? query : RandomText.caseVariant(query, random));
+                }
+                String address = Base58.encode(payload);
+                boolean endsWith = matchCase ? address.endsWith(query) : address.toLowerCase().endsWith(query.toLowerCase());
+                boolean contains = set.contains(SuffixSet.residueOf(payload));
+                if (set.isExact()) {
+                    assertEquals(query + " " + matchCase + " on " + address, endsWith, contains);
+                } else if (endsWith) {
+                    assertTrue(query + " " + matchCase + " on " + address, contains);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void onesAreZeroDigits() {
+        Random random = new Random(42);
+        SuffixSet set = SuffixSet.forEndsQuery("111", true);
+        assertEquals(1, set.getValues().length);
+        for (int i = 0; i < 100; i++) {
+            byte[] payload = new byte[PAYLOAD_LENGTH];
+            random.nextBytes(payload);
+            payload = endingWith(payload, "111");
+            assertTrue(Base58.encode(payload).endsWith("111"));
+            assertTrue(set.contains(SuffixSet.residueOf(payload)));
+            assertFalse(SuffixSet.forEndsQuery("211", true).contains(SuffixSet.residueOf(payload)));
+        }
+    }
+
+    @Test
+    public void longerQueriesOnlyKeepTheirLastDigits() {
+        SuffixSet set = SuffixSet.forEndsQuery("abcdefghijkm", true);
+        assertFalse(set.isExact());
+        assertTrue(set.contains(residueOf("1xyzabcdefghijkm")));
+        // Only the last MAX_DIGITS characters are compared, so the caller still has to check the whole query.
+        assertTrue(set.contains(residueOf("1xyzzzzdefghijkm")));
+        assertFalse(set.contains(residueOf("1xyzabcdefghijkz")));
+    }
+
+    @Test
+    public void ignoringCaseHoldsEveryValidVariant() {
+        SuffixSet set = SuffixSet.forEndsQuery("ab", false);
+        assertEquals(4, set.getValues().length);
+        // L only has an upper case form in Base58.
+        assertEquals(2, SuffixSet.forEndsQuery("La", false).getValues().length);
+        assertFalse(SuffixSet.forEndsQuery("ab", true).contains(residueOf("1xyzAb")));
+        assertTrue(set.contains(residueOf("1xyzAb")));
+    }
+
+    private static long residueOf(String address) {
+        return new BigInteger(1, Base58.decode(address)).mod(BASE.pow(SuffixSet.MAX_DIGITS)).longValue();
+    }
+
+    /**
+     * Replaces the last digits of a payload with the digits of a suffix, or returns it unchanged if that overflows.
+     */
+    private static byte[] endingWith(byte[] payload, String suffix) {
+        BigInteger modulus = BASE.pow(suffix.length());
+        BigInteger value = BigInteger.ZERO;
+        for (char c: suffix.toCharArray()) {
+            value = value.multiply(BASE).add(BigInteger.valueOf(Utils.ALPHABET.indexOf(c)));
+        }
+        BigInteger number = new BigInteger(1, payload);
+        number = number.subtract(number.mod(modulus)).add(value);
+        if (number.bitLength() > PAYLOAD_LENGTH * 8) {
+            return payload;
+        }
+        byte[] encoded = number.toByteArray();
+        byte[] shifted = new byte[PAYLOAD_LENGTH];
+        int length = Math.min(encoded.length, PAYLOAD_LENGTH);
+        System.arraycopy(encoded, encoded.length - length, shifted, PAYLOAD_LENGTH - length, length);
+        return shifted;
+    }
+
+}
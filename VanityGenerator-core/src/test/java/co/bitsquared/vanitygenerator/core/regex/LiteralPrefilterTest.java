@@ -0,0 +1,86 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a LiteralPrefilter never rejects an address its pattern finds, over random patterns and addresses, and
+ * that it extracts the expected literals from a few typical vanity patterns.
+ */
+public class LiteralPrefilterTest {
+
+    private static final int PATTERNS = 3000;
+    private static final int ADDRESSES = 40;
+
+    @Test
+    public void neverRejectsAMatch() {
+        RandomPatterns random = new RandomPatterns(21);
+        int filtered = 0;
+        for (int i = 0; i < PATTERNS; i++) {
+            Pattern pattern = Pattern.compile(random.pattern());
+            LiteralPrefilter prefilter = LiteralPrefilter.of(pattern);
+            if (prefilter == null) {
+                continue;
+            }
+            for (int j = 0; j < ADDRESSES; j++) {
+                String address = random.address();
+                boolean mayMatch = prefilter.mayMatch(address.toCharArray(), address.length());
+                if (pattern.matcher(address).find()) {
+                    assertTrue(pattern + " on " + address, mayMatch);
+                } else if (!mayMatch) {
+                    filtered++;
+                }
+            }
+        }
+        assertTrue("the prefilters should reject some addresses", filtered > 0);
+    }
+
+    @Test
+    public void requiresTheLiteralOfAContainsPattern() {
+        LiteralPrefilter prefilter = LiteralPrefilter.of(Pattern.compile(".*Bitcoin.*"));
+        assertNotNull(prefilter);
+        assertEquals(new HashSet<String>(Arrays.asList("Bitcoin")), new HashSet<String>(Arrays.asList(prefilter.getLiterals())));
+        assertFalse(prefilter.isIgnoreCase());
+    }
+
+    @Test
+    public void requiresOneLiteralOfAnAlternation() {
+        LiteralPrefilter prefilter = LiteralPrefilter.of(Pattern.compile("(fun|test).*"));
+        assertNotNull(prefilter);
+        assertEquals(new HashSet<String>(Arrays.asList("fun", "test")), new HashSet<String>(Arrays.asList(prefilter.getLiterals())));
+    }
+
+    @Test
+    public void anchorsALiteralAfterAFixedAmountOfCharacters() {
+        LiteralPrefilter prefilter = LiteralPrefilter.of(Pattern.compile("^.abc"));
+        assertNotNull(prefilter);
+        assertEquals("abc", prefilter.getAnchored());
+        assertEquals(1, prefilter.getAnchorOffset());
+        assertTrue(prefilter.mayMatch("1abcxyz".toCharArray(), 7));
+        assertFalse(prefilter.mayMatch("1xabcyz".toCharArray(), 7));
+    }
+
+    @Test
+    public void foldsLiteralsOfCaseInsensitivePatterns() {
+        LiteralPrefilter prefilter = LiteralPrefilter.of(Pattern.compile("(?i)xyz"));
+        assertNotNull(prefilter);
+        assertTrue(prefilter.isIgnoreCase());
+        assertTrue(prefilter.mayMatch("1abXyZ".toCharArray(), 6));
+    }
+
+    @Test
+    public void hasNoPrefilterWithoutARequiredLiteral() {
+        assertNull(LiteralPrefilter.of(Pattern.compile("a*")));
+        assertNull(LiteralPrefilter.of(Pattern.compile("(?=a)")));
+    }
+
+}
@@ -0,0 +1,139 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import java.util.Random;
+
+/**
+ * RandomPatterns generates random regular expressions in the part of java.util.regex that {@link RegexParser}
+ * supports, along with random Base58 addresses to match them against. Patterns and addresses mostly draw from the same
+ * few characters so that a fair share of the addresses match. Every generator is seeded, so a failure can be replayed.
+ */
+class RandomPatterns {
+
+    private static final String POOL = "1abcABC2xyzL";
+    private static final String NOT_BASE58 = "0lIO";
+
+    private final Random random;
+
+    RandomPatterns(long seed) {
+        random = new Random(seed);
+    }
+
+    String pattern() {
+        StringBuilder pattern = new StringBuilder();
+        if (random.nextInt(8) == 0) {
+            pattern.append("(?i)");
+        }
+        if (random.nextInt(3) == 0) {
+            pattern.append('^');
+        }
+        int items = 1 + random.nextInt(4);
+        for (int i = 0; i < items; i++) {
+            item(pattern, 0);
+        }
+        if (random.nextInt(5) == 0) {
+            pattern.append('$');
+        }
+        return pattern.toString();
+    }
+
+    String address() {
+        return RandomText.address(random, POOL);
+    }
+
+    Random getRandom() {
+        return random;
+    }
+
+    private void item(StringBuilder pattern, int depth) {
+        if (random.nextInt(40) == 0) {
+            pattern.append(random.nextBoolean() ? "(?i)" : "(?-i)");
+        }
+        boolean group = false;
+        switch (random.nextInt(depth < 2 ? 7 : 5)) {
+            case 0:
+            case 1:
+                pattern.append(literal());
+                break;
+            case 2:
+                pattern.append('.');
+                break;
+            case 3:
+                characterClass(pattern);
+                break;
+            case 4:
+                pattern.append(random.nextBoolean() ? "\\d" : "\\w");
+                break;
+            default:
+                group = true;
+                pattern.append(random.nextInt(8) == 0 ? "(?i:" : random.nextBoolean() ? "(" : "(?:");
+                int alternatives = 1 + random.nextInt(3);
+                for (int i = 0; i < alternatives; i++) {
+                    if (i > 0) {
+                        pattern.append('|');
+                    }
+                    int items = 1 + random.nextInt(2);
+                    for (int j = 0; j < items; j++) {
+                        item(pattern, depth + 1);
+                    }
+                }
+                pattern.append(')');
+        }
+        if (random.nextInt(3) == 0) {
+            quantifier(pattern, group || depth > 0);
+        }
+    }
+
+    private char literal() {
+        return random.nextInt(20) == 0 ? NOT_BASE58.charAt(random.nextInt(NOT_BASE58.length()))
+                : POOL.charAt(random.nextInt(POOL.length()));
+    }
+
+    private void characterClass(StringBuilder pattern) {
+        pattern.append('[');
+        if (random.nextInt(4) == 0) {
+            pattern.append('^');
+        }
+        int members = 1 + random.nextInt(3);
+        for (int i = 0; i < members; i++) {
+            char first = literal();
+            if (random.nextInt(3) == 0) {
+                char second = literal();
+                pattern.append((char) Math.min(first, second)).append('-').append((char) Math.max(first, second));
+            } else {
+                pattern.append(first);
+            }
+        }
+        pattern.append(']');
+    }
+
+    /**
+     * Appends a quantifier. Only the items at the top of a pattern get an unbounded one, since unbounded repetitions
+     * nested in repeated groups make java.util.regex backtrack for too long.
+     */
+    private void quantifier(StringBuilder pattern, boolean bounded) {
+        switch (bounded ? 2 + random.nextInt(3) : random.nextInt(6)) {
+            case 0:
+                pattern.append('*');
+                break;
+            case 1:
+                pattern.append('+');
+                break;
+            case 2:
+                pattern.append('?');
+                break;
+            case 3:
+                pattern.append('{').append(random.nextInt(3)).append('}');
+                break;
+            case 4:
+                int min = random.nextInt(3);
+                pattern.append('{').append(min).append(',').append(min + random.nextInt(3)).append('}');
+                break;
+            default:
+                pattern.append('{').append(random.nextInt(3)).append(",}");
+        }
+        if (random.nextInt(5) == 0) {
+            pattern.append('?');
+        }
+    }
+
+}
@@ -0,0 +1,55 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+
+import java.util.Random;
+
+/**
+ * RandomText builds the random strings, addresses and case variants the query and regex tests are fuzzed with. An
+ * address can lean on a small pool of characters, so that short queries and patterns drawn from the same pool occur in
+ * it by chance.
+ */
+public final class RandomText {
+
+    private RandomText() {
+    }
+
+    /**
+     * Returns a string of characters drawn uniformly from an alphabet.
+     */
+    public static String string(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Returns a leading '1' followed by 25 to 33 characters. Half of the addresses draw three characters out of four
+     * from the pool instead of the whole Base58 alphabet.
+     */
+    public static String address(Random random, String pool) {
+        StringBuilder address = new StringBuilder("1");
+        int length = 25 + random.nextInt(9);
+        boolean pooled = random.nextBoolean();
+        for (int i = 0; i < length; i++) {
+            String source = pooled && random.nextInt(4) != 0 ? pool : Utils.ALPHABET;
+            address.append(source.charAt(random.nextInt(source.length())));
+        }
+        return address.toString();
+    }
+
+    /**
+     * Returns text with the case of some letters swapped. A letter is only swapped if its other case is in Base58.
+     */
+    public static String caseVariant(String text, Random random) {
+        StringBuilder variant = new StringBuilder();
+        for (char c: text.toCharArray()) {
+            char swapped = Character.isUpperCase(c) ? Character.toLowerCase(c) : Character.toUpperCase(c);
+            variant.append(random.nextBoolean() && Utils.ALPHABET.indexOf(swapped) >= 0 ? swapped : c);
+        }
+        return variant.toString();
+    }
+
+}
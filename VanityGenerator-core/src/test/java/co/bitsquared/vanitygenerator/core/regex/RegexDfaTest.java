@@ -0,0 +1,111 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import co.bitsquared.vanitygenerator.core.exceptions.UnsupportedPatternException;
+import co.bitsquared.vanitygenerator.core.tools.Utils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a RegexDfa matches random addresses exactly like {@code Pattern.matcher(address).find()}, both for a
+ * single pattern and for the lowest matching id of a union of patterns.
+ */
+public class RegexDfaTest {
+
+    private static final int PATTERNS = 3000;
+    private static final int UNIONS = 600;
+    private static final int ADDRESSES = 40;
+    private static final int MAX_STATES = 4096;
+
+    @Test
+    public void singlePatternMatchesLikeFind() {
+        RandomPatterns random = new RandomPatterns(30);
+        int built = 0;
+        for (int i = 0; i < PATTERNS; i++) {
+            Pattern pattern = Pattern.compile(random.pattern());
+            RegexNode node;
+            try {
+                node = RegexParser.parse(pattern);
+            } catch (UnsupportedPatternException e) {
+                continue;
+            }
+            RegexDfa dfa = RegexDfa.build(Collections.singletonList(node), MAX_STATES);
+            if (dfa == null) {
+                continue;
+            }
+            built++;
+            for (int j = 0; j < ADDRESSES; j++) {
+                String address = random.address();
+                boolean found = dfa.firstMatch(address.toCharArray(), address.length()) == 0;
+                assertEquals(pattern + " on " + address, pattern.matcher(address).find(), found);
+            }
+        }
+        assertTrue("most random patterns should compile", built > PATTERNS * 3 / 4);
+    }
+
+    @Test
+    public void unionReportsTheLowestMatchingPattern() {
+        RandomPatterns random = new RandomPatterns(31);
+        int built = 0;
+        for (int i = 0; i < UNIONS; i++) {
+            List<Pattern> patterns = new ArrayList<Pattern>();
+            List<RegexNode> nodes = new ArrayList<RegexNode>();
+            int size = 2 + random.getRandom().nextInt(5);
+            while (patterns.size() < size) {
+                Pattern pattern = Pattern.compile(random.pattern());
+                try {
+                    nodes.add(RegexParser.parse(pattern));
+                    patterns.add(pattern);
+                } catch (UnsupportedPatternException e) {
+                    // Only supported patterns go into a DFA.
+                }
+            }
+            RegexDfa dfa = RegexDfa.build(nodes, MAX_STATES);
+            if (dfa == null) {
+                continue;
+            }
+            built++;
+            assertEquals(size, dfa.getPatternCount());
+            for (int j = 0; j < ADDRESSES; j++) {
+                String address = random.address();
+                int expected = RegexDfa.NO_MATCH;
+                for (int id = patterns.size() - 1; id >= 0; id--) {
+                    if (patterns.get(id).matcher(address).find()) {
+                        expected = id;
+                    }
+                }
+                assertEquals(patterns + " on " + address, expected, dfa.firstMatch(address.toCharArray(), address.length()));
+            }
+        }
+        assertTrue("most unions should compile", built > UNIONS / 2);
+    }
+
+    @Test
+    public void steppingMatchesFirstMatch() {
+        RegexDfa dfa = RegexDfa.build(Collections.singletonList(RegexParser.parse(Pattern.compile("ab$"))), MAX_STATES);
+        assertNotNull(dfa);
+        String address = "1xyzab";
+        int state = dfa.getStartState();
+        for (int i = 0; i < address.length(); i++) {
+            state = dfa.next(state, Utils.ALPHABET.indexOf(address.charAt(i)));
+        }
+        assertEquals(0, dfa.getMatch(state));
+        assertEquals(0, dfa.firstMatch(address.toCharArray(), address.length()));
+    }
+
+    @Test
+    public void givesUpPastMaxStates() {
+        RegexNode node = RegexParser.parse(Pattern.compile("a.{20}b"));
+        assertNull(RegexDfa.build(Collections.singletonList(node), 16));
+        assertNotNull(RegexDfa.build(Collections.singletonList(RegexParser.parse(Pattern.compile("ab"))), 16));
+    }
+
+}
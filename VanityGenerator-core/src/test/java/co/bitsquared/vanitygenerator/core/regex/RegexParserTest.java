@@ -0,0 +1,153 @@
+package co.bitsquared.vanitygenerator.core.regex;
+
+import co.bitsquared.vanitygenerator.core.exceptions.UnsupportedPatternException;
+import org.junit.Test;
+
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that the tree RegexParser builds matches the same addresses as the pattern it was parsed from. The tree is
+ * rendered back into a plain java.util.regex pattern made only of character sets, groups, bounded repetitions and
+ * anchors, and both patterns are matched against random addresses with find().
+ */
+public class RegexParserTest {
+
+    private static final int PATTERNS = 3000;
+    private static final int ADDRESSES = 40;
+
+    @Test
+    public void parsedTreeMatchesLikeThePattern() {
+        RandomPatterns random = new RandomPatterns(20);
+        int parsed = 0;
+        for (int i = 0; i < PATTERNS; i++) {
+            Pattern pattern = Pattern.compile(random.pattern());
+            RegexNode node;
+            try {
+                node = RegexParser.parse(pattern);
+            } catch (UnsupportedPatternException e) {
+                continue;
+            }
+            parsed++;
+            Pattern rendered = Pattern.compile(render(node));
+            for (int j = 0; j < ADDRESSES; j++) {
+                String address = random.address();
+                assertEquals(pattern + " on " + address + " rendered as " + rendered,
+                        pattern.matcher(address).find(), rendered.matcher(address).find());
+            }
+        }
+        assertTrue("most random patterns should be supported", parsed > PATTERNS * 3 / 4);
+    }
+
+    @Test
+    public void caseInsensitiveFlagMatchesBothCases() {
+        RegexNode node = RegexParser.parse(Pattern.compile("ab", Pattern.CASE_INSENSITIVE));
+        Pattern rendered = Pattern.compile(render(node));
+        assertTrue(rendered.matcher("1xAbx").find());
+        assertTrue(rendered.matcher("1xaBx").find());
+        assertFalse(rendered.matcher("1xa1bx").find());
+    }
+
+    @Test
+    public void inlineFlagOnlyAppliesAfterIt() {
+        Pattern rendered = Pattern.compile(render(RegexParser.parse("a(?i)b", false)));
+        assertTrue(rendered.matcher("1aB").find());
+        assertFalse(rendered.matcher("1AB").find());
+        rendered = Pattern.compile(render(RegexParser.parse("(?:(?i)a)b", false)));
+        assertTrue(rendered.matcher("1Ab").find());
+        assertFalse(rendered.matcher("1AB").find());
+    }
+
+    @Test
+    public void rejectsLettersBeforeTopLevelInlineFlags() {
+        // Pattern.flags() reports CASE_INSENSITIVE for this pattern, even though it was compiled without it.
+        try {
+            RegexParser.parse(Pattern.compile("a(?i)b"));
+            fail("the flags of a are unknown");
+        } catch (UnsupportedPatternException expected) {
+            // The caller falls back to java.util.regex.
+        }
+        Pattern query = Pattern.compile("^.*(?i)abc.*$");
+        Pattern rendered = Pattern.compile(render(RegexParser.parse(query)));
+        assertTrue(rendered.matcher("1xAbC").find());
+        rendered = Pattern.compile(render(RegexParser.parse(Pattern.compile("(?i:a)(?-i)b"))));
+        assertTrue(rendered.matcher("1Ab").find());
+        assertFalse(rendered.matcher("1AB").find());
+    }
+
+    @Test
+    public void rejectsUnsupportedSyntax() {
+        String[] unsupported = {"a(?=b)", "a(?!b)", "(?<=a)b", "(a)\\1", "a*+", "a++", "[a[b]]", "(?m)a$", "\\p{Lu}", "\\bab"};
+        for (String pattern: unsupported) {
+            try {
+                RegexParser.parse(Pattern.compile(pattern));
+                fail(pattern + " should not be supported");
+            } catch (UnsupportedPatternException expected) {
+                // The caller falls back to java.util.regex.
+            }
+        }
+    }
+
+    @Test
+    public void rejectsUnsupportedFlags() {
+        try {
+            RegexParser.parse(Pattern.compile("a", Pattern.MULTILINE));
+            fail("MULTILINE should not be supported");
+        } catch (UnsupportedPatternException expected) {
+            // The caller falls back to java.util.regex.
+        }
+    }
+
+    /**
+     * Renders a tree as a java.util.regex pattern that only uses the constructs the tree stands for.
+     */
+    static String render(RegexNode node) {
+        StringBuilder builder = new StringBuilder();
+        switch (node.getType()) {
+            case CHARS:
+                builder.append('[');
+                for (char c = 0; c < 128; c++) {
+                    if (node.matches(c)) {
+                        builder.append(String.format("\\x%02x", (int) c));
+                    }
+                }
+                if (node.matches('\u0080')) {
+                    builder.append("\\x{80}-\\x{10FFFF}");
+                }
+                if (builder.length() == 1) {
+                    return "(?!)";
+                }
+                return builder.append(']').toString();
+            case CONCAT:
+                builder.append("(?:");
+                for (RegexNode child: node.getChildren()) {
+                    builder.append(render(child));
+                }
+                return builder.append(')').toString();
+            case ALTERNATE:
+                builder.append("(?:");
+                for (RegexNode child: node.getChildren()) {
+                    if (builder.length() > 3) {
+                        builder.append('|');
+                    }
+                    builder.append(render(child));
+                }
+                return builder.append(')').toString();
+            case REPEAT:
+                builder.append("(?:").append(render(node.getChild())).append("){").append(node.getMin()).append(',');
+                if (node.getMax() != RegexNode.UNBOUNDED) {
+                    builder.append(node.getMax());
+                }
+                return builder.append('}').toString();
+            case BEGIN:
+                return "^";
+            default:
+                return "$";
+        }
+    }
+
+}
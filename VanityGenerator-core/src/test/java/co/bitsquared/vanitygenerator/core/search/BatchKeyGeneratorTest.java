@@ -0,0 +1,105 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import co.bitsquared.vanitygenerator.core.query.AddressView;
+import org.bitcoinj.core.ECKey;
+import org.bitcoinj.core.Utils;
+import org.junit.Test;
+import org.spongycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Derives every key of seeded batches again from its private key value and compares its compressed and uncompressed
+ * hash160 with those of an AddressView reset from the batch buffers. This covers all six β / λ variants, the negated
+ * ones whose uncompressed y the view has to flip, and batches cut short by a stream that wraps around the curve order.
+ */
+public class BatchKeyGeneratorTest {
+
+    private static final BigInteger CURVE_ORDER = ECKey.CURVE.getN();
+    private static final int BATCH_SIZE = 16;
+
+    @Test
+    public void everyKeyOfABatchDerivesFromItsPrivateKey() {
+        BatchKeyGenerator generator = new BatchKeyGenerator(BATCH_SIZE, new KeyStream(new SeededRandom(100)));
+        AddressView view = new AddressView();
+        for (int batch = 0; batch < 3; batch++) {
+            assertEquals(BATCH_SIZE * BatchKeyGenerator.KEYS_PER_POINT, generator.fill());
+            assertBatchDerives(generator, view);
+        }
+    }
+
+    @Test
+    public void variantsAreTheSymmetricKeysOfAPoint() {
+        BatchKeyGenerator generator = new BatchKeyGenerator(BATCH_SIZE, new KeyStream(new SeededRandom(101)));
+        generator.fill();
+        BigInteger lambda = new BigInteger("5363ad4cc05c30e0a5261c028812645a122e22ea20816678df02967c1b23bd72", 16);
+        for (int point = 0; point < BATCH_SIZE; point++) {
+            int first = point * BatchKeyGenerator.KEYS_PER_POINT;
+            BigInteger k = generator.getPrivateKeyValue(first);
+            BigInteger[] expected = {k, lambda.multiply(k).mod(CURVE_ORDER), lambda.pow(2).multiply(k).mod(CURVE_ORDER)};
+            for (int i = 0; i < 3; i++) {
+                assertEquals(expected[i], generator.getPrivateKeyValue(first + 2 * i));
+                assertEquals(CURVE_ORDER.subtract(expected[i]), generator.getPrivateKeyValue(first + 2 * i + 1));
+            }
+            if (point > 0) {
+                // Points of a batch are consecutive.
+                assertEquals(generator.getPrivateKeyValue(first - BatchKeyGenerator.KEYS_PER_POINT).add(BigInteger.ONE), k);
+            }
+        }
+    }
+
+    @Test
+    public void wrappingAroundTheCurveOrderCutsTheBatch() {
+        BigInteger base = CURVE_ORDER.subtract(BigInteger.valueOf(4));
+        KeyStream stream = new KeyStream(new SeededRandom(102, base));
+        BatchKeyGenerator generator = new BatchKeyGenerator(BATCH_SIZE, stream);
+        AddressView view = new AddressView();
+        // n - 3, n - 2 and n - 1 fit before the stream reaches the point at infinity.
+        assertEquals(3 * BatchKeyGenerator.KEYS_PER_POINT, generator.fill());
+        assertEquals(base.add(BigInteger.ONE), generator.getPrivateKeyValue(0));
+        assertBatchDerives(generator, view);
+        assertEquals(BATCH_SIZE * BatchKeyGenerator.KEYS_PER_POINT, generator.fill());
+        assertBatchDerives(generator, view);
+    }
+
+    @Test
+    public void reseedStartsFromANewBase() {
+        BigInteger first = BigInteger.valueOf(1000);
+        BigInteger second = BigInteger.valueOf(5000);
+        BatchKeyGenerator generator = new BatchKeyGenerator(BATCH_SIZE, new KeyStream(new SeededRandom(103, first, second)));
+        AddressView view = new AddressView();
+        generator.fill();
+        assertEquals(first.add(BigInteger.ONE), generator.getPrivateKeyValue(0));
+        generator.reseed();
+        assertEquals(0, generator.size());
+        generator.fill();
+        assertEquals(second.add(BigInteger.ONE), generator.getPrivateKeyValue(0));
+        assertBatchDerives(generator, view);
+    }
+
+    /**
+     * Checks every key of the current batch against the point bitcoinj multiplies out of its private key. That point is
+     * taken instead of ECKey.fromPrivate(BigInteger), which refuses the private key 1 that negating n - 1 gives.
+     */
+    private static void assertBatchDerives(BatchKeyGenerator generator, AddressView view) {
+        for (int i = 0; i < generator.size(); i++) {
+            BigInteger privateKey = generator.getPrivateKeyValue(i);
+            ECPoint point = ECKey.publicPointFromPrivate(privateKey);
+            byte[] compressed = point.getEncoded(true);
+            generator.reset(view, i);
+            String message = "key " + i + " of " + privateKey.toString(16);
+            assertArrayEquals(message, Utils.sha256hash160(compressed), view.getHash160(true));
+            assertArrayEquals(message, Utils.sha256hash160(point.getEncoded(false)), view.getHash160(false));
+            assertArrayEquals(message, compressed, generator.getPublicKey(i).getPubKey());
+            if (privateKey.compareTo(BigInteger.ONE) > 0) {
+                ECKey found = generator.getPrivateKey(i);
+                assertEquals(message, privateKey, found.getPrivKey());
+                assertArrayEquals(message, compressed, found.getPubKey());
+            }
+        }
+    }
+
+}
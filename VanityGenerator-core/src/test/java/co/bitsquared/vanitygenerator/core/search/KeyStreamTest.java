@@ -0,0 +1,61 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import org.bitcoinj.core.ECKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Walks seeded KeyStreams and checks that the point reached after each step belongs to (base + counter) mod n, across
+ * an explicit reseed and across the reseed the stream does on its own when it reaches the point at infinity.
+ */
+public class KeyStreamTest {
+
+    private static final BigInteger CURVE_ORDER = ECKey.CURVE.getN();
+
+    @Test
+    public void pointsFollowTheCounter() {
+        BigInteger base = new BigInteger("3f2e8c1a9b7d6e5f40312a1b0c9d8e7f6a5b4c3d2e1f0a9b8c7d6e5f4a3b2c1d", 16);
+        KeyStream stream = new KeyStream(new SeededRandom(110, base));
+        assertEquals(base, stream.getPrivateKeyValue());
+        for (int i = 1; i <= 20; i++) {
+            ECKey key = stream.next();
+            assertEquals((long) i, stream.getCounter());
+            assertEquals(base.add(BigInteger.valueOf(i)), stream.getPrivateKeyValue());
+            assertArrayEquals(ECKey.fromPrivate(stream.getPrivateKeyValue()).getPubKey(), key.getPubKey());
+            assertArrayEquals(key.getPubKey(), stream.getPrivateKey().getPubKey());
+        }
+    }
+
+    @Test
+    public void reseedRestartsTheCounter() {
+        BigInteger first = BigInteger.valueOf(77);
+        BigInteger second = BigInteger.valueOf(7777);
+        KeyStream stream = new KeyStream(new SeededRandom(111, first, second));
+        stream.advance();
+        stream.advance();
+        stream.reseed();
+        assertEquals(0L, stream.getCounter());
+        assertEquals(second, stream.getPrivateKeyValue());
+        assertArrayEquals(ECKey.fromPrivate(second.add(BigInteger.ONE)).getPubKey(), stream.next().getPubKey());
+    }
+
+    @Test
+    public void reseedsAtTheCurveOrder() {
+        BigInteger base = CURVE_ORDER.subtract(BigInteger.valueOf(3));
+        BigInteger next = BigInteger.valueOf(123456789);
+        KeyStream stream = new KeyStream(new SeededRandom(112, base, next));
+        stream.advance();
+        assertEquals(CURVE_ORDER.subtract(BigInteger.valueOf(2)), stream.getPrivateKeyValue());
+        stream.advance();
+        // n - 1 is a valid key, but n is the point at infinity.
+        stream.advance();
+        assertEquals(0L, stream.getCounter());
+        assertEquals(next, stream.getPrivateKeyValue());
+        assertArrayEquals(ECKey.fromPrivate(next).getPubKey(), stream.getPrivateKey().getPubKey());
+    }
+
+}
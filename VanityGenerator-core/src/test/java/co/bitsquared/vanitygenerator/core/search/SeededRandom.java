@@ -0,0 +1,46 @@
+package co.bitsquared.vanitygenerator.core.search;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * SeededRandom is a SecureRandom that replays a java.util.Random, so that a KeyStream draws the same base private keys
+ * on every run. Base keys can also be queued ahead of the random ones, which is how a stream is started right below the
+ * curve order.
+ */
+class SeededRandom extends SecureRandom {
+
+    private static final int BASE_LENGTH = 32;
+
+    private final Random random;
+    private final Queue<BigInteger> bases = new ArrayDeque<BigInteger>();
+
+    SeededRandom(long seed, BigInteger... bases) {
+        random = new Random(seed);
+        for (BigInteger base: bases) {
+            this.bases.add(base);
+        }
+    }
+
+    /**
+     * Fills bytes with the next queued base key if a 256 bit number is being drawn, and with random bytes otherwise.
+     */
+    @Override
+    public void nextBytes(byte[] bytes) {
+        BigInteger base = bytes.length == BASE_LENGTH ? bases.poll() : null;
+        if (base == null) {
+            random.nextBytes(bytes);
+            return;
+        }
+        byte[] encoded = base.toByteArray();
+        int length = Math.min(encoded.length, BASE_LENGTH);
+        for (int i = 0; i < BASE_LENGTH; i++) {
+            bytes[i] = 0;
+        }
+        System.arraycopy(encoded, encoded.length - length, bytes, BASE_LENGTH - length, length);
+    }
+
+}
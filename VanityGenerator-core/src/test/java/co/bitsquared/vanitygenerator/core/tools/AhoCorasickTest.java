@@ -0,0 +1,126 @@
+package co.bitsquared.vanitygenerator.core.tools;
+
+import co.bitsquared.vanitygenerator.core.regex.RandomText;
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares AhoCorasick with one {@code Pattern.find} per pattern on addresses bitcoinj encodes from seeded hash160s.
+ * The expected id is the pattern whose first occurrence ends earliest, the lowest id winning a tie. Case insensitive
+ * automatons are compared with patterns compiled with CASE_INSENSITIVE.
+ */
+public class AhoCorasickTest {
+
+    private static final int AUTOMATONS = 400;
+    private static final int ADDRESSES = 50;
+
+    @Test
+    public void findsThePatternThatEndsFirst() {
+        checkRandomAutomatons(new Random(90), false);
+    }
+
+    @Test
+    public void ignoringCaseFindsLikeCaseInsensitivePatterns() {
+        checkRandomAutomatons(new Random(91), true);
+    }
+
+    @Test
+    public void scansPartOfACharArray() {
+        AhoCorasick automaton = new AhoCorasick(new String[] {"abc", "xy"}, false);
+        char[] text = "xyzabcxy".toCharArray();
+        assertEquals(1, automaton.find(text, 0, text.length));
+        assertEquals(0, automaton.find(text, 1, 5));
+        assertEquals(-1, automaton.find(text, 1, 4));
+        assertEquals(-1, automaton.find(text, 0, 0));
+    }
+
+    @Test
+    public void samePatternTwiceReportsTheFirstId() {
+        AhoCorasick automaton = new AhoCorasick(new String[] {"bc", "abc", "bc"}, false);
+        assertEquals(0, automaton.find("1abc"));
+        // abc and c end at the same position, so the lower id wins over the shorter pattern.
+        automaton = new AhoCorasick(new String[] {"abc", "c"}, false);
+        assertEquals(0, automaton.find("1abc"));
+        assertEquals(0, new AhoCorasick(new String[] {""}, false).find("1abc"));
+    }
+
+    @Test
+    public void foldsOnlyWhenIgnoringCase() {
+        assertEquals(-1, new AhoCorasick(new String[] {"ABC"}, false).find("1abc"));
+        assertEquals(0, new AhoCorasick(new String[] {"ABC"}, true).find("1abc"));
+        assertEquals(0, new AhoCorasick(new String[] {"abc"}, true).find("1AbC"));
+        // There is no upper case l in Base58, yet L matches it once folded.
+        assertEquals(0, new AhoCorasick(new String[] {"L"}, true).find("1l"));
+    }
+
+    @Test
+    public void rejectsPatternsOutsideOfBase58() {
+        try {
+            new AhoCorasick(new String[] {"a0"}, false);
+            fail("0 is not Base58");
+        } catch (IllegalArgumentException expected) {
+            // Contains queries are checked against Base58 before they are indexed.
+        }
+        // Text outside of Base58 restarts the scan.
+        assertEquals(-1, new AhoCorasick(new String[] {"ab"}, false).find("1a0b"));
+    }
+
+    private static void checkRandomAutomatons(Random random, boolean ignoreCase) {
+        for (int i = 0; i < AUTOMATONS; i++) {
+            String[] patterns = new String[1 + random.nextInt(8)];
+            Pattern[] compiled = new Pattern[patterns.length];
+            for (int id = 0; id < patterns.length; id++) {
+                String pattern;
+                if (random.nextBoolean()) {
+                    String address = randomAddress(random);
+                    int start = random.nextInt(address.length() - 4);
+                    pattern = address.substring(start, start + 1 + random.nextInt(4));
+                    if (ignoreCase) {
+                        pattern = RandomText.caseVariant(pattern, random);
+                    }
+                } else {
+                    pattern = RandomText.string(random, Utils.ALPHABET, 1 + random.nextInt(3));
+                }
+                patterns[id] = pattern;
+                compiled[id] = Pattern.compile(Pattern.quote(pattern), ignoreCase ? Pattern.CASE_INSENSITIVE : 0);
+            }
+            AhoCorasick automaton = new AhoCorasick(patterns, ignoreCase);
+            for (int j = 0; j < ADDRESSES; j++) {
+                String address = randomAddress(random);
+                int expected = -1;
+                int expectedEnd = Integer.MAX_VALUE;
+                for (int id = 0; id < compiled.length; id++) {
+                    Matcher matcher = compiled[id].matcher(address);
+                    if (matcher.find() && matcher.end() < expectedEnd) {
+                        expected = id;
+                        expectedEnd = matcher.end();
+                    }
+                }
+                String message = Arrays.toString(patterns) + " on " + address;
+                assertEquals(message, expected, automaton.find(address));
+                assertEquals(message, expected, automaton.find(address.toCharArray(), 0, address.length()));
+            }
+        }
+    }
+
+    private static String randomAddress(Random random) {
+        byte[] payload = new byte[Base58Encoder.PAYLOAD_LENGTH];
+        payload[0] = (byte) random.nextInt(256);
+        for (int i = 1; i <= Base58Encoder.HASH_LENGTH; i++) {
+            payload[i] = (byte) random.nextInt(256);
+        }
+        byte[] checksum = Sha256Hash.hashTwice(payload, 0, 1 + Base58Encoder.HASH_LENGTH);
+        System.arraycopy(checksum, 0, payload, 1 + Base58Encoder.HASH_LENGTH, 4);
+        return Base58.encode(payload);
+    }
+
+}
@@ -0,0 +1,85 @@
+package co.bitsquared.vanitygenerator.core.tools;
+
+import org.bitcoinj.core.Base58;
+import org.bitcoinj.core.Sha256Hash;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks Base58Encoder against bitcoinj's Base58.encode of the same payload, for random hash160s on a few version bytes
+ * and for hash160s starting with zero bytes, which version byte 0 writes as extra leading '1' characters.
+ */
+public class Base58EncoderTest {
+
+    private static final int HASHES = 5000;
+    private static final int[] VERSIONS = {0, 5, 48, 111, 196, 255};
+
+    @Test
+    public void encodesLikeBitcoinj() {
+        Random random = new Random(60);
+        Base58Encoder encoder = new Base58Encoder();
+        char[] out = new char[Base58Encoder.MAX_ADDRESS_LENGTH];
+        for (int i = 0; i < HASHES; i++) {
+            int version = VERSIONS[random.nextInt(VERSIONS.length)];
+            byte[] hash = new byte[Base58Encoder.HASH_LENGTH];
+            random.nextBytes(hash);
+            int length = encoder.encode(version, hash, 0, out);
+            assertEquals(expected(version, hash), new String(out, 0, length));
+            assertArrayEquals(payloadOf(version, hash), encoder.getPayload());
+        }
+    }
+
+    @Test
+    public void writesLeadingZeroBytesAsOnes() {
+        Random random = new Random(61);
+        Base58Encoder encoder = new Base58Encoder();
+        char[] out = new char[Base58Encoder.MAX_ADDRESS_LENGTH];
+        for (int zeros = 0; zeros <= Base58Encoder.HASH_LENGTH; zeros++) {
+            byte[] hash = new byte[Base58Encoder.HASH_LENGTH];
+            random.nextBytes(hash);
+            Arrays.fill(hash, 0, zeros, (byte) 0);
+            if (zeros < hash.length && hash[zeros] == 0) {
+                hash[zeros] = 1;
+            }
+            String address = new String(out, 0, encoder.encode(0, hash, 0, out));
+            assertEquals(expected(0, hash), address);
+            int ones = 0;
+            while (ones < address.length() && address.charAt(ones) == '1') {
+                ones++;
+            }
+            assertEquals(1 + zeros, ones);
+        }
+    }
+
+    @Test
+    public void encodesAnExistingPayload() {
+        Random random = new Random(62);
+        Base58Encoder encoder = new Base58Encoder();
+        char[] out = new char[Base58Encoder.MAX_ADDRESS_LENGTH];
+        byte[] hash = new byte[Base58Encoder.HASH_LENGTH];
+        random.nextBytes(hash);
+        byte[] payload = payloadOf(111, hash);
+        assertEquals(Base58.encode(payload), new String(out, 0, encoder.encodePayload(payload, out)));
+        byte[] zeros = new byte[Base58Encoder.PAYLOAD_LENGTH];
+        assertEquals(Base58.encode(zeros), new String(out, 0, encoder.encodePayload(zeros, out)));
+    }
+
+    private static String expected(int version, byte[] hash) {
+        return Base58.encode(payloadOf(version, hash));
+    }
+
+    private static byte[] payloadOf(int version, byte[] hash) {
+        byte[] payload = new byte[Base58Encoder.PAYLOAD_LENGTH];
+        payload[0] = (byte) version;
+        System.arraycopy(hash, 0, payload, 1, Base58Encoder.HASH_LENGTH);
+        byte[] checksum = Sha256Hash.hashTwice(payload, 0, 1 + Base58Encoder.HASH_LENGTH);
+        System.arraycopy(checksum, 0, payload, 1 + Base58Encoder.HASH_LENGTH, 4);
+        return payload;
+    }
+
+}
@@ -11,7 +11,7 @@ import co.bitsquared.vanitygenerator.core.query.Query;
  */
 public class ParcelableQuery extends Query implements Parcelable {
 
-    private static final int BOOLEAN_ARRAY_SIZE = 5;
+    private static final int BOOLEAN_ARRAY_SIZE = 6;
 
     public ParcelableQuery(QueryBuilder builder) {
         super(builder);
@@ -23,7 +23,7 @@ public class ParcelableQuery extends Query implements Parcelable {
 
     public void writeToParcel(Parcel dest, int flags) {
         dest.writeString(getPlainQuery());
-        dest.writeBooleanArray(new boolean[]{isBegins(), isMatchCase(), isCompressed(), isFindUnlimited(), isP2SH()});
+        dest.writeBooleanArray(new boolean[]{isBegins(), isMatchCase(), isCompressed(), isFindUnlimited(), isP2SH(), isEnds()});
         dest.writeSerializable(getNetworkParameters(null));
     }
 
@@ -38,6 +38,7 @@ public class ParcelableQuery extends Query implements Parcelable {
             queryBuilder.compressed(params[2]);
             queryBuilder.findUnlimited(params[3]);
             queryBuilder.searchForP2SH(params[4]);
+            queryBuilder.ends(params[5]);
             queryBuilder.targetNetwork((GlobalNetParams) source.readSerializable());
             return new ParcelableQuery(queryBuilder);
         }
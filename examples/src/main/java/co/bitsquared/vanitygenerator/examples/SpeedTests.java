@@ -5,11 +5,10 @@ import co.bitsquared.vanitygenerator.core.network.Network;
 import co.bitsquared.vanitygenerator.core.query.QueryPool;
 import co.bitsquared.vanitygenerator.core.query.RegexQuery;
 import co.bitsquared.vanitygenerator.core.listeners.BaseSearchListener;
-import co.bitsquared.vanitygenerator.core.search.PoolSearch;
+import co.bitsquared.vanitygenerator.core.search.SearchEngine;
+import co.bitsquared.vanitygenerator.core.search.ThreadPolicy;
 import org.bitcoinj.core.ECKey;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
@@ -25,16 +24,17 @@ public class SpeedTests {
         QueryPool pool = QueryPool.getInstance(network, false);
         MaxSpeed listener = new MaxSpeed();
         pool.addQuery(query);
-        ExecutorService service = Executors.newFixedThreadPool(threads);
-        for (int i = 0; i < threads; i++) {
-            service.execute(new PoolSearch(listener, pool, network.toGlobalNetParams()).setUpdateAmount(5000));
-        }
+        SearchEngine engine = new SearchEngine.SearchEngineBuilder(pool).
+                threadPolicy(new ThreadPolicy.ThreadPolicyBuilder().threads(threads).build()).
+                netParams(network.toGlobalNetParams()).
+                searchListener(listener).
+                updateAmount(5000).build();
         try {
-            service.awaitTermination(1, TimeUnit.MINUTES);
+            engine.start().awaitCompletion(1, TimeUnit.MINUTES);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
-        service.shutdownNow();
+        engine.shutdownNow();
         System.out.println("Max Speed: " + listener.maxSearchSpeed);
     }
 